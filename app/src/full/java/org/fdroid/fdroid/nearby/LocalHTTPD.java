@@ -36,17 +36,20 @@ package org.fdroid.fdroid.nearby;
 import android.content.Context;
 import android.net.Uri;
 
+import org.apache.commons.io.input.ProxyInputStream;
 import org.fdroid.fdroid.BuildConfig;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
+import java.net.Socket;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
@@ -82,7 +85,23 @@ public class LocalHTTPD extends NanoHTTPD {
      */
     public static final String[] INDEX_FILE_NAMES = {"index.html"};
 
+    /**
+     * The number of connections that are served at the same time, the rest
+     * wait in line, see {@link LocalHTTPDRunner}.
+     */
+    static final int MAX_WORKER_THREADS = 6;
+    static final int MAX_WAITING_CONNECTIONS = 64;
+
+    /**
+     * Every response closes its connection, so a worker only waits this long
+     * for a client that connected but does not send a request, instead of
+     * NanoHTTPD's {@link NanoHTTPD#SOCKET_READ_TIMEOUT}.
+     */
+    static final int SOCKET_READ_TIMEOUT_MILLIS = 2000;
+
     private final WeakReference<Context> context;
+    private final LocalHTTPDStats stats = new LocalHTTPDStats();
+    private final LocalHTTPDRunner runner = new LocalHTTPDRunner(MAX_WORKER_THREADS, MAX_WAITING_CONNECTIONS, stats);
 
     protected List<File> rootDirs;
 
@@ -104,6 +123,7 @@ public class LocalHTTPD extends NanoHTTPD {
         super(hostname, port);
         rootDirs = Collections.singletonList(webRoot);
         this.context = new WeakReference<>(context.getApplicationContext());
+        setAsyncRunner(runner);
         if (useHttps) {
             enableHTTPS();
         }
@@ -114,6 +134,22 @@ public class LocalHTTPD extends NanoHTTPD {
         MIME_TYPES.put("xml", "application/xml");
     }
 
+    @Override
+    public void start() throws IOException {
+        start(SOCKET_READ_TIMEOUT_MILLIS);
+    }
+
+    public LocalHTTPDStats getStats() {
+        return stats;
+    }
+
+    @Override
+    protected ClientHandler createClientHandler(Socket finalAccept, InputStream inputStream) {
+        ClientHandler clientHandler = super.createClientHandler(finalAccept, inputStream);
+        runner.setClientAddress(clientHandler, finalAccept.getInetAddress().getHostAddress());
+        return clientHandler;
+    }
+
     private boolean canServeUri(String uri, File homeDir) {
         boolean canServeUri;
         File f = new File(homeDir, uri);
@@ -380,15 +416,20 @@ public class LocalHTTPD extends NanoHTTPD {
 
     /**
      * Serves file from homeDir and its' subdirectories (only). Uses only URI,
-     * ignores all headers and HTTP parameters.
+     * ignores all headers and HTTP parameters except for the ones needed for
+     * caching and resuming downloads: {@code Range}, {@code If-Range} and
+     * {@code If-None-Match}.
      */
     Response serveFile(String uri, Map<String, String> header, File file, String mime) {
+        stats.onRequest(uri);
         Response res;
         try {
             // Calculate etag
-            String etag = Integer.toHexString((file.getAbsolutePath() + file.lastModified() + "" + file.length()).hashCode());
+            String etag = "\"" + Integer.toHexString((file.getAbsolutePath() + file.lastModified() + ""
+                    + file.length()).hashCode()) + "\"";
+            long fileLen = file.length();
 
-            // Support (simple) skipping:
+            // Support (simple) skipping, only a single range is supported:
             long startFrom = 0;
             long endAt = -1;
             String range = header.get("range");
@@ -397,28 +438,39 @@ public class LocalHTTPD extends NanoHTTPD {
                     range = range.substring("bytes=".length());
                     int minus = range.indexOf('-');
                     try {
-                        if (minus > 0) {
+                        if (minus == 0) {
+                            // suffix range, e.g. the last 500 bytes
+                            long suffixLength = Long.parseLong(range.substring(1));
+                            startFrom = Math.max(0, fileLen - suffixLength);
+                        } else if (minus > 0) {
                             startFrom = Long.parseLong(range.substring(0, minus));
-                            endAt = Long.parseLong(range.substring(minus + 1));
+                            if (minus < range.length() - 1) {
+                                endAt = Long.parseLong(range.substring(minus + 1));
+                            }
                         }
                     } catch (NumberFormatException ignored) {
+                        range = null;
                     }
+                } else {
+                    range = null;
                 }
             }
+            if (endAt < 0 || endAt >= fileLen) {
+                endAt = fileLen - 1;
+            }
 
             // get if-range header. If present, it must match etag or else we
             // should ignore the range request
             String ifRange = header.get("if-range");
-            boolean headerIfRangeMissingOrMatching = (ifRange == null || etag.equals(ifRange));
+            boolean headerIfRangeMissingOrMatching = ifRange == null || etag.equals(ifRange);
 
             String ifNoneMatch = header.get("if-none-match");
-            boolean headerIfNoneMatchPresentAndMatching = ifNoneMatch != null && ("*".equals(ifNoneMatch) || ifNoneMatch.equals(etag));
+            boolean headerIfNoneMatchPresentAndMatching = ifNoneMatch != null && etagMatches(ifNoneMatch, etag);
 
             // Change return code and add Content-Range header when skipping is
             // requested
-            long fileLen = file.length();
-
-            if (headerIfRangeMissingOrMatching && range != null && startFrom >= 0 && startFrom < fileLen) {
+            if (headerIfRangeMissingOrMatching && range != null && startFrom >= 0 && startFrom < fileLen
+                    && startFrom <= endAt) {
                 // range request that matches current etag
                 // and the startFrom of the range is satisfiable
                 if (headerIfNoneMatchPresentAndMatching) {
@@ -429,19 +481,8 @@ public class LocalHTTPD extends NanoHTTPD {
                     res = newFixedLengthResponse(Response.Status.NOT_MODIFIED, mime, "");
                     res.addHeader("ETag", etag);
                 } else {
-                    if (endAt < 0) {
-                        endAt = fileLen - 1;
-                    }
                     long newLen = endAt - startFrom + 1;
-                    if (newLen < 0) {
-                        newLen = 0;
-                    }
-
-                    FileInputStream fis = new FileInputStream(file);
-                    fis.skip(startFrom);
-
-                    res = newFixedLengthResponse(Response.Status.PARTIAL_CONTENT, mime, fis, newLen);
-                    res.addHeader("Accept-Ranges", "bytes");
+                    res = newFixedFileResponse(Response.Status.PARTIAL_CONTENT, file, mime, startFrom, newLen);
                     res.addHeader("Content-Length", "" + newLen);
                     res.addHeader("Content-Range", "bytes " + startFrom + "-" + endAt + "/" + fileLen);
                     res.addHeader("ETag", etag);
@@ -449,7 +490,7 @@ public class LocalHTTPD extends NanoHTTPD {
                 }
             } else {
 
-                if (headerIfRangeMissingOrMatching && range != null && startFrom >= fileLen) {
+                if (headerIfRangeMissingOrMatching && range != null && (startFrom >= fileLen || startFrom > endAt)) {
                     // return the size of the file
                     // 4xx responses are not trumped by if-none-match
                     res = newFixedLengthResponse(Response.Status.RANGE_NOT_SATISFIABLE, NanoHTTPD.MIME_PLAINTEXT, "");
@@ -470,7 +511,7 @@ public class LocalHTTPD extends NanoHTTPD {
                     res.addHeader("ETag", etag);
                 } else {
                     // supply the file
-                    res = newFixedFileResponse(file, mime);
+                    res = newFixedFileResponse(Response.Status.OK, file, mime, 0, fileLen);
                     res.addHeader("Content-Length", "" + fileLen);
                     res.addHeader("ETag", etag);
                     res.addHeader("Last-Modified", RFC_1123.format(new Date(file.lastModified())));
@@ -483,9 +524,43 @@ public class LocalHTTPD extends NanoHTTPD {
         return addResponseHeaders(res);
     }
 
-    private Response newFixedFileResponse(File file, String mime) throws FileNotFoundException {
-        Response res;
-        res = newFixedLengthResponse(Response.Status.OK, mime, new FileInputStream(file), (int) file.length());
+    /**
+     * {@code If-None-Match} can be {@code *} or a comma-separated list of
+     * {@code ETag}s, which might be marked as weak with {@code W/}.
+     */
+    static boolean etagMatches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || etag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Serve {@code length} bytes of {@code file} starting at {@code offset}.
+     * The file is read through a {@link FileChannel} positioned at
+     * {@code offset} rather than {@link InputStream#skip(long)}, which may
+     * skip fewer bytes than requested, and the length is kept as a
+     * {@code long} so that files over 2 GB can be served.
+     */
+    private Response newFixedFileResponse(Response.IStatus status, File file, String mime, long offset, long length)
+            throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        channel.position(offset);
+        InputStream inputStream = new ProxyInputStream(Channels.newInputStream(channel)) {
+            @Override
+            protected void afterRead(int n) {
+                if (n > 0) {
+                    stats.onBytesSent(n);
+                }
+            }
+        };
+        Response res = newFixedLengthResponse(status, mime, inputStream, length);
         addResponseHeaders(res);
         res.addHeader("Accept-Ranges", "bytes");
         return res;
@@ -14,6 +14,7 @@ import org.fdroid.fdroid.Preferences;
 import java.io.IOException;
 import java.net.BindException;
 
+import androidx.annotation.Nullable;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 /**
@@ -124,4 +125,16 @@ public class LocalHTTPDManager {
     public static boolean isAlive() {
         return handlerThread != null && handlerThread.isAlive();
     }
+
+    /**
+     * @return the live counters of the running webserver, or {@code null} if it is not running
+     */
+    @Nullable
+    public static LocalHTTPDStats getStats() {
+        LocalHTTPD httpd = localHttpd;
+        if (!isAlive() || httpd == null) {
+            return null;
+        }
+        return httpd.getStats();
+    }
 }
@@ -0,0 +1,171 @@
+package org.fdroid.fdroid.nearby;
+
+import android.os.Process;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * Runs the connections of {@link LocalHTTPD} on a bounded pool of threads,
+ * replacing NanoHTTPD's default of one new thread per connection.  When a
+ * whole classroom of devices swaps from a single device, that default means
+ * dozens of threads all competing to read big APKs from the same storage.
+ * <p>
+ * Connections waiting for a free thread are queued per client IP address and
+ * then served round robin, so a single device requesting lots of files cannot
+ * starve the others.  When too many connections are waiting,
+ * {@link #exec(NanoHTTPD.ClientHandler)} blocks NanoHTTPD's accept thread
+ * until there is room again, leaving new connections in the socket's backlog.
+ */
+final class LocalHTTPDRunner implements NanoHTTPD.AsyncRunner {
+
+    private final ThreadPoolExecutor executor;
+    private final int maxWaiting;
+    private final LocalHTTPDStats stats;
+
+    // all guarded by this
+    private final Map<NanoHTTPD.ClientHandler, String> clientAddresses = new HashMap<>();
+    private final LinkedHashMap<String, ArrayDeque<NanoHTTPD.ClientHandler>> waiting = new LinkedHashMap<>();
+    private final List<NanoHTTPD.ClientHandler> running = new ArrayList<>();
+    private int waitingCount;
+
+    LocalHTTPDRunner(int maxThreads, int maxWaiting, LocalHTTPDStats stats) {
+        this.maxWaiting = maxWaiting;
+        this.stats = stats;
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "LocalHTTPD Worker #" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Called by {@link LocalHTTPD} for each accepted connection, before
+     * {@link #exec(NanoHTTPD.ClientHandler)}, since {@link NanoHTTPD.ClientHandler}
+     * does not expose its socket.
+     */
+    synchronized void setClientAddress(NanoHTTPD.ClientHandler clientHandler, String address) {
+        clientAddresses.put(clientHandler, address);
+        stats.onConnect(address);
+    }
+
+    @Override
+    public void exec(NanoHTTPD.ClientHandler clientHandler) {
+        synchronized (this) {
+            while (waitingCount >= maxWaiting) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    clientHandler.close();
+                    closed(clientHandler);
+                    return;
+                }
+            }
+            String address = clientAddresses.get(clientHandler);
+            ArrayDeque<NanoHTTPD.ClientHandler> queue = waiting.get(address);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                waiting.put(address, queue);
+            }
+            queue.add(clientHandler);
+            waitingCount++;
+            stats.setWaitingConnections(waitingCount);
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runNext();
+            }
+        });
+    }
+
+    /**
+     * Each call to {@link #exec(NanoHTTPD.ClientHandler)} submits one of
+     * these, but it runs whichever connection is next in round robin order.
+     */
+    private void runNext() {
+        NanoHTTPD.ClientHandler clientHandler;
+        synchronized (this) {
+            clientHandler = pollNextClient();
+            if (clientHandler == null) {
+                return;
+            }
+            running.add(clientHandler);
+            notifyAll();
+        }
+        Process.setThreadPriority(Process.THREAD_PRIORITY_LESS_FAVORABLE);
+        clientHandler.run(); // calls closed() when done
+    }
+
+    /**
+     * Take the first connection of the client at the head of the line, then
+     * move that client to the back of the line if it has more waiting.
+     */
+    private NanoHTTPD.ClientHandler pollNextClient() {
+        Iterator<Map.Entry<String, ArrayDeque<NanoHTTPD.ClientHandler>>> iterator = waiting.entrySet().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        Map.Entry<String, ArrayDeque<NanoHTTPD.ClientHandler>> entry = iterator.next();
+        iterator.remove();
+        NanoHTTPD.ClientHandler clientHandler = entry.getValue().poll();
+        if (!entry.getValue().isEmpty()) {
+            waiting.put(entry.getKey(), entry.getValue());
+        }
+        waitingCount--;
+        stats.setWaitingConnections(waitingCount);
+        return clientHandler;
+    }
+
+    @Override
+    public synchronized void closed(NanoHTTPD.ClientHandler clientHandler) {
+        running.remove(clientHandler);
+        String address = clientAddresses.remove(clientHandler);
+        if (address != null) {
+            stats.onDisconnect(address);
+        }
+    }
+
+    @Override
+    public void closeAll() {
+        List<NanoHTTPD.ClientHandler> waitingHandlers = new ArrayList<>();
+        List<NanoHTTPD.ClientHandler> runningHandlers;
+        synchronized (this) {
+            for (ArrayDeque<NanoHTTPD.ClientHandler> queue : waiting.values()) {
+                waitingHandlers.addAll(queue);
+            }
+            waiting.clear();
+            waitingCount = 0;
+            stats.setWaitingConnections(0);
+            runningHandlers = new ArrayList<>(running);
+            notifyAll();
+        }
+        for (NanoHTTPD.ClientHandler clientHandler : waitingHandlers) {
+            clientHandler.close();
+            closed(clientHandler); // these never ran, so never called closed()
+        }
+        for (NanoHTTPD.ClientHandler clientHandler : runningHandlers) {
+            clientHandler.close();
+        }
+    }
+}
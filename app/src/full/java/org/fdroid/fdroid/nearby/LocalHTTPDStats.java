@@ -0,0 +1,110 @@
+package org.fdroid.fdroid.nearby;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of what {@link LocalHTTPD} is serving, so that the swap
+ * screens can show how busy this device is when lots of other devices are
+ * swapping from it at the same time.
+ */
+public final class LocalHTTPDStats {
+
+    /**
+     * Open connections per client IP address, guarded by {@code this}.
+     */
+    private final Map<String, Integer> connections = new HashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicInteger waitingConnections = new AtomicInteger();
+
+    private long lastSampleTime;
+    private long lastSampleBytes;
+    private long bytesPerSecond;
+
+    synchronized void onConnect(String address) {
+        Integer count = connections.get(address);
+        connections.put(address, count == null ? 1 : count + 1);
+    }
+
+    synchronized void onDisconnect(String address) {
+        Integer count = connections.get(address);
+        if (count == null || count <= 1) {
+            connections.remove(address);
+        } else {
+            connections.put(address, count - 1);
+        }
+    }
+
+    void onRequest(String uri) {
+        AtomicInteger count = requestCounts.get(uri);
+        if (count == null) {
+            AtomicInteger newCount = new AtomicInteger();
+            count = requestCounts.putIfAbsent(uri, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    void onBytesSent(long count) {
+        bytesSent.addAndGet(count);
+    }
+
+    void setWaitingConnections(int count) {
+        waitingConnections.set(count);
+    }
+
+    /**
+     * @return the number of different devices that currently have a connection open
+     */
+    public synchronized int getActiveClients() {
+        return connections.size();
+    }
+
+    /**
+     * @return the number of connections that were accepted but are waiting for a free worker
+     */
+    public int getWaitingConnections() {
+        return waitingConnections.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * The throughput since the last time this was sampled, this is meant to
+     * be polled about once a second, e.g. to update the UI.
+     */
+    public synchronized long getBytesPerSecond() {
+        long now = SystemClock.elapsedRealtime();
+        long bytes = bytesSent.get();
+        if (lastSampleTime == 0) {
+            lastSampleTime = now;
+            lastSampleBytes = bytes;
+        } else if (now - lastSampleTime >= 1000) {
+            bytesPerSecond = (bytes - lastSampleBytes) * 1000 / (now - lastSampleTime);
+            lastSampleTime = now;
+            lastSampleBytes = bytes;
+        }
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return a snapshot of how many times each file was requested
+     */
+    public Map<String, Integer> getRequestCounts() {
+        Map<String, Integer> counts = new HashMap<>(requestCounts.size());
+        for (Map.Entry<String, AtomicInteger> entry : requestCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+}
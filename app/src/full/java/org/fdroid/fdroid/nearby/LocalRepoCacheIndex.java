@@ -0,0 +1,135 @@
+package org.fdroid.fdroid.nearby;
+
+import android.util.Log;
+
+import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The hashes of the installed APKs that were shared by swap, so that sharing
+ * them again after F-Droid was restarted does not have to read every APK
+ * again.  Keyed like the icons in {@link LocalRepoManager}, so an entry is
+ * never used for an app that has been updated or reinstalled since.
+ * <p>
+ * This is small enough to be kept in memory completely, changes are only
+ * written to disk by {@link #flush()}, once the repo is prepared.
+ */
+final class LocalRepoCacheIndex {
+    private static final String TAG = "LocalRepoCacheIndex";
+
+    private static final int VERSION = 1;
+
+    interface KeyFilter {
+        boolean isCurrent(String key);
+    }
+
+    static final class Entry {
+        final String hashType;
+        final String hash;
+
+        Entry(String hashType, String hash) {
+            this.hashType = hashType;
+            this.hash = hash;
+        }
+    }
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean changed;
+
+    LocalRepoCacheIndex(File file) {
+        this.file = file;
+        read();
+    }
+
+    @Nullable
+    synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(String key, String hashType, String hash) {
+        entries.put(key, new Entry(hashType, hash));
+        changed = true;
+    }
+
+    /**
+     * Remove all entries of apps that have been updated or uninstalled.
+     */
+    synchronized void trim(KeyFilter filter) {
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (!filter.isCurrent(iterator.next())) {
+                iterator.remove();
+                changed = true;
+            }
+        }
+    }
+
+    synchronized void flush() {
+        if (changed) {
+            write();
+        }
+    }
+
+    private void read() {
+        if (!file.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                entries.put(in.readUTF(), new Entry(in.readUTF(), in.readUTF()));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read " + file + ": " + e.getMessage());
+            entries.clear();
+        } finally {
+            Utils.closeQuietly(in);
+        }
+    }
+
+    private void write() {
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().hashType);
+                out.writeUTF(entry.getValue().hash);
+            }
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + tmpFile + " to " + file);
+            }
+            changed = false;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write " + file + ": " + e.getMessage());
+            FileUtils.deleteQuietly(tmpFile);
+        } finally {
+            Utils.closeQuietly(out);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.fdroid.fdroid.nearby;
 
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
@@ -10,8 +11,10 @@ import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Process;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.LruCache;
 
 import org.fdroid.fdroid.FDroidApp;
 import org.fdroid.fdroid.Hasher;
@@ -45,7 +48,13 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
@@ -72,8 +81,31 @@ public final class LocalRepoManager {
             "swap-tick-not-done.png",
     };
 
+    /**
+     * The maximum number of apps that are prepared at the same time, each one
+     * might be hashing a big APK and rendering its icon.
+     */
+    private static final int MAX_PREPARE_THREADS = 4;
+
+    private static final int MAX_CACHED_APPS = 100;
+
+    /**
+     * {@link App} instances generated from installed packages, kept across
+     * swap sessions since {@link App#getInstance(Context, PackageManager, String, String, String)}
+     * needs to read the APK.  Keyed by {@link #getCacheKey(PackageInfo)},
+     * only the {@link #MAX_CACHED_APPS} most recently shared are kept.  The
+     * hashes are also kept on disk in {@link #cacheIndex}, so they survive
+     * F-Droid being restarted.
+     */
+    private static final LruCache<String, App> APP_CACHE = new LruCache<>(MAX_CACHED_APPS);
+
     private final Map<String, App> apps = new ConcurrentHashMap<>();
 
+    /**
+     * The rendered PNG icon in {@link #iconCacheDir} for each app in {@link #apps}.
+     */
+    private final Map<String, SanitizedFile> cachedIcons = new ConcurrentHashMap<>();
+
     private final SanitizedFile xmlIndexJar;
     private final SanitizedFile xmlIndexJarUnsigned;
     private final SanitizedFile webRoot;
@@ -82,6 +114,8 @@ public final class LocalRepoManager {
     private final SanitizedFile repoDir;
     private final SanitizedFile repoDirCaps;
     private final SanitizedFile iconsDir;
+    private final SanitizedFile iconCacheDir;
+    private final LocalRepoCacheIndex cacheIndex;
 
     @Nullable
     private static LocalRepoManager localRepoManager;
@@ -109,6 +143,8 @@ public final class LocalRepoManager {
         iconsDir = new SanitizedFile(repoDir, "icons");
         xmlIndexJar = new SanitizedFile(repoDir, IndexUpdater.SIGNED_FILE_NAME);
         xmlIndexJarUnsigned = new SanitizedFile(repoDir, "index.unsigned.jar");
+        iconCacheDir = new SanitizedFile(c.getCacheDir(), "swap-icons");
+        cacheIndex = new LocalRepoCacheIndex(new File(c.getCacheDir(), "swap-apps.bin"));
 
         if (!fdroidDir.exists() && !fdroidDir.mkdir()) {
             Log.e(TAG, "Unable to create empty base: " + fdroidDir);
@@ -123,6 +159,13 @@ public final class LocalRepoManager {
         }
     }
 
+    /**
+     * Called as each app is added by {@link #addApps(Context, String[], AddAppListener)}.
+     */
+    public interface AddAppListener {
+        void onAppAdded(String packageName, int done, int total);
+    }
+
     private String writeFdroidApkToWebroot() {
         ApplicationInfo appInfo;
         String fdroidClientURL = "https://f-droid.org/F-Droid.apk";
@@ -255,6 +298,8 @@ public final class LocalRepoManager {
 
     public void deleteRepo() {
         deleteContents(repoDir);
+        apps.clear();
+        cachedIcons.clear();
     }
 
     public void copyApksToRepo() {
@@ -276,13 +321,119 @@ public final class LocalRepoManager {
         }
     }
 
+    /**
+     * Adds all of {@code packageNames} to the repo using a bounded pool of
+     * threads, since each app might need its APK hashed and its icon rendered.
+     * Interrupting the calling thread cancels all pending work.  Afterwards,
+     * everything cached about apps that have been updated or uninstalled
+     * since they were last shared is removed.
+     *
+     * @throws IOException if adding any of the apps failed unexpectedly
+     */
+    public void addApps(final Context context, final String[] packageNames, @Nullable final AddAppListener listener)
+            throws InterruptedException, IOException {
+        if (packageNames.length == 0) {
+            return;
+        }
+        final AtomicInteger done = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>(packageNames.length);
+        for (final String packageName : packageNames) {
+            tasks.add(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                addApp(context, packageName);
+                if (listener != null) {
+                    listener.onAppAdded(packageName, done.incrementAndGet(), packageNames.length);
+                }
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_PREPARE_THREADS, packageNames.length));
+        try {
+            List<Future<Void>> futures = executor.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Error adding " + packageNames[i] + " to local repo", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        trimCache();
+    }
+
+    /**
+     * Runs on the thread of {@link #addApps(Context, String[], AddAppListener)},
+     * after all apps were added, so nothing is writing to the cache meanwhile.
+     */
+    private void trimCache() {
+        LocalRepoCacheIndex.KeyFilter filter = this::isCurrentCacheKey;
+        File[] icons = iconCacheDir.listFiles();
+        if (icons != null) {
+            for (File icon : icons) {
+                String name = icon.getName();
+                if (!name.endsWith(".png") || !filter.isCurrent(name.substring(0, name.length() - 4))) {
+                    attemptToDelete(icon);
+                }
+            }
+        }
+        cacheIndex.trim(filter);
+        cacheIndex.flush();
+    }
+
+    /**
+     * @return whether {@code cacheKey} still describes an installed package
+     * @see #getCacheKey(PackageInfo)
+     */
+    private boolean isCurrentCacheKey(String cacheKey) {
+        int lastUpdateTimeStart = cacheKey.lastIndexOf('_');
+        int versionCodeStart = lastUpdateTimeStart > 0 ? cacheKey.lastIndexOf('_', lastUpdateTimeStart - 1) : -1;
+        if (versionCodeStart <= 0) {
+            return false;
+        }
+        try {
+            PackageInfo packageInfo = pm.getPackageInfo(cacheKey.substring(0, versionCodeStart), 0);
+            return cacheKey.equals(getCacheKey(packageInfo));
+        } catch (PackageManager.NameNotFoundException e) {
+            return false;
+        }
+    }
+
     public void addApp(Context context, String packageName) {
-        App app = null;
+        App app;
+        SanitizedFile icon;
         try {
-            InstalledApp installedApp = InstalledAppProvider.Helper.findByPackageName(context, packageName);
-            app = App.getInstance(context, pm, installedApp, packageName);
-            if (app == null || !app.isValid()) {
-                return;
+            PackageInfo packageInfo = pm.getPackageInfo(packageName, 0);
+            String cacheKey = getCacheKey(packageInfo);
+            app = APP_CACHE.get(cacheKey);
+            if (app == null) {
+                String hashType = null;
+                String hash = null;
+                InstalledApp installedApp = InstalledAppProvider.Helper.findByPackageName(context, packageName);
+                LocalRepoCacheIndex.Entry entry = cacheIndex.get(cacheKey);
+                if (installedApp != null && !TextUtils.isEmpty(installedApp.getHash())) {
+                    hashType = installedApp.getHashType();
+                    hash = installedApp.getHash();
+                } else if (entry != null) {
+                    hashType = entry.hashType;
+                    hash = entry.hash;
+                }
+                app = App.getInstance(context, pm, hashType, hash, packageName);
+                if (app == null || !app.isValid()) {
+                    return;
+                }
+                if (entry == null && !TextUtils.isEmpty(app.installedApk.hashType)
+                        && !TextUtils.isEmpty(app.installedApk.hash)) {
+                    cacheIndex.put(cacheKey, app.installedApk.hashType, app.installedApk.hash);
+                }
+                APP_CACHE.put(cacheKey, app);
+            } else {
+                Utils.debugLog(TAG, "using cached app: " + cacheKey);
+            }
+            icon = new SanitizedFile(iconCacheDir, cacheKey + ".png");
+            if (!icon.exists()) {
+                renderIcon(packageInfo.applicationInfo.loadIcon(pm), icon);
             }
         } catch (PackageManager.NameNotFoundException | CertificateEncodingException | IOException e) {
             Log.e(TAG, "Error adding app to local repo", e);
@@ -290,26 +441,38 @@ public final class LocalRepoManager {
         }
         Utils.debugLog(TAG, "apps.put: " + packageName);
         apps.put(packageName, app);
+        cachedIcons.put(packageName, icon);
+    }
+
+    /**
+     * Everything that is cached about an installed app is only valid as long
+     * as it has not been updated or reinstalled.
+     */
+    private static String getCacheKey(PackageInfo packageInfo) {
+        return packageInfo.packageName + "_" + packageInfo.versionCode + "_" + packageInfo.lastUpdateTime;
     }
 
+    /**
+     * Links the icons that were rendered by {@link #addApp(Context, String)}
+     * into the repo.
+     */
     public void copyIconsToRepo() {
-        ApplicationInfo appInfo;
         for (final App app : apps.values()) {
-            if (app.installedApk != null) {
-                try {
-                    appInfo = pm.getApplicationInfo(app.packageName, PackageManager.GET_META_DATA);
-                    copyIconToRepo(appInfo.loadIcon(pm), app.packageName, app.installedApk.versionCode);
-                } catch (PackageManager.NameNotFoundException e) {
-                    Log.e(TAG, "Error getting app icon", e);
+            SanitizedFile icon = cachedIcons.get(app.packageName);
+            if (app.installedApk != null && icon != null && icon.exists()) {
+                SanitizedFile outFile = new SanitizedFile(iconsDir,
+                        App.getIconName(app.packageName, app.installedApk.versionCode));
+                if (!Utils.symlinkOrCopyFileQuietly(icon, outFile)) {
+                    Log.e(TAG, "Error copying icon to repo: " + outFile);
                 }
             }
         }
     }
 
     /**
-     * Extracts the icon from an APK and writes it to the repo as a PNG
+     * Extracts the icon from an APK and writes it to the icon cache as a PNG
      */
-    private void copyIconToRepo(Drawable drawable, String packageName, int versionCode) {
+    private void renderIcon(Drawable drawable, File png) {
         Bitmap bitmap;
         if (drawable instanceof BitmapDrawable) {
             bitmap = ((BitmapDrawable) drawable).getBitmap();
@@ -320,21 +483,25 @@ public final class LocalRepoManager {
             drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
             drawable.draw(canvas);
         }
-        File png = getIconFile(packageName, versionCode);
+        if (!iconCacheDir.exists() && !iconCacheDir.mkdirs()) {
+            Log.e(TAG, "Unable to create icon cache: " + iconCacheDir);
+            return;
+        }
+        File tmp = new File(png.getPath() + ".tmp");
         OutputStream out;
         try {
-            out = new BufferedOutputStream(new FileOutputStream(png));
+            out = new BufferedOutputStream(new FileOutputStream(tmp));
             bitmap.compress(CompressFormat.PNG, 100, out);
             out.close();
+            if (!tmp.renameTo(png)) {
+                attemptToDelete(tmp);
+            }
         } catch (Exception e) {
-            Log.e(TAG, "Error copying icon to repo", e);
+            Log.e(TAG, "Error rendering icon", e);
+            attemptToDelete(tmp);
         }
     }
 
-    private File getIconFile(String packageName, int versionCode) {
-        return new File(iconsDir, App.getIconName(packageName, versionCode));
-    }
-
     /**
      * Helper class to aid in constructing index.xml file.
      */
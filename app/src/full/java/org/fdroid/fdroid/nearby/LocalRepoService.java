@@ -103,10 +103,9 @@ public class LocalRepoService extends IntentService {
             final LocalRepoManager lrm = LocalRepoManager.get(context);
             broadcast(context, STATUS_PROGRESS, R.string.deleting_repo);
             lrm.deleteRepo();
-            for (String app : selectedApps) {
-                broadcast(context, STATUS_PROGRESS, context.getString(R.string.adding_apks_format, app));
-                lrm.addApp(context, app);
-            }
+            lrm.addApps(context, selectedApps, (packageName, done, total) ->
+                    broadcast(context, STATUS_PROGRESS,
+                            context.getString(R.string.added_apks_progress_format, packageName, done, total)));
             String urlString = Utils.getSharingUri(FDroidApp.repo).toString();
             lrm.writeIndexPage(urlString);
             broadcast(context, STATUS_PROGRESS, R.string.writing_index_jar);
@@ -114,19 +113,14 @@ public class LocalRepoService extends IntentService {
             broadcast(context, STATUS_PROGRESS, R.string.linking_apks);
             lrm.copyApksToRepo();
             broadcast(context, STATUS_PROGRESS, R.string.copying_icons);
-            // run the icon copy without progress, its not a blocker
-            new Thread() {
-                @Override
-                public void run() {
-                    android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_LOWEST);
-                    lrm.copyIconsToRepo();
-                }
-            }.start();
+            lrm.copyIconsToRepo();
 
             broadcast(context, STATUS_STARTED, null);
         } catch (IOException | XmlPullParserException | LocalRepoKeyStore.InitException e) {
             broadcast(context, STATUS_ERROR, e.getLocalizedMessage());
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            Utils.debugLog(TAG, "interrupted, a new set of apps was selected");
         }
     }
 
@@ -78,8 +78,11 @@ public class SwapSuccessView extends SwapView implements LoaderManager.LoaderCal
         super(context, attrs, defStyleAttr, defStyleRes);
     }
 
+    private static final long SERVER_STATS_INTERVAL = 1000;
+
     private Repo repo;
     private AppListAdapter adapter;
+    private TextView serverStatsView;
 
     @Override
     protected void onFinishInflate() {
@@ -96,6 +99,14 @@ public class SwapSuccessView extends SwapView implements LoaderManager.LoaderCal
 
         LocalBroadcastManager.getInstance(getActivity()).registerReceiver(
                 pollForUpdatesReceiver, new IntentFilter(UpdateService.LOCAL_ACTION_STATUS));
+
+        serverStatsView = findViewById(R.id.server_stats);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        post(updateServerStats);
     }
 
     /**
@@ -107,8 +118,28 @@ public class SwapSuccessView extends SwapView implements LoaderManager.LoaderCal
         super.onDetachedFromWindow();
 
         LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(pollForUpdatesReceiver);
+        removeCallbacks(updateServerStats);
     }
 
+    /**
+     * Show how busy {@link LocalHTTPD} is serving other devices swapping from
+     * this one, if any.
+     */
+    private final Runnable updateServerStats = new Runnable() {
+        @Override
+        public void run() {
+            LocalHTTPDStats stats = LocalHTTPDManager.getStats();
+            if (stats == null || stats.getActiveClients() == 0) {
+                serverStatsView.setVisibility(View.GONE);
+            } else {
+                serverStatsView.setText(getContext().getString(R.string.swap_server_stats,
+                        stats.getActiveClients(), Utils.getFriendlySize(stats.getBytesPerSecond())));
+                serverStatsView.setVisibility(View.VISIBLE);
+            }
+            postDelayed(this, SERVER_STATS_INTERVAL);
+        }
+    };
+
     @NonNull
     @Override
     public CursorLoader onCreateLoader(int id, Bundle args) {
@@ -67,6 +67,8 @@ import org.fdroid.fdroid.net.Downloader;
 import org.fdroid.fdroid.net.HttpDownloader;
 import org.fdroid.fdroid.panic.HidingManager;
 import org.fdroid.fdroid.work.CleanCacheWorker;
+import org.fdroid.fdroid.work.DatabaseMaintenanceWorker;
+import org.fdroid.fdroid.work.SuggestedApksWorker;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -83,6 +85,7 @@ import androidx.collection.LongSparseArray;
 import androidx.core.content.ContextCompat;
 import info.guardianproject.netcipher.NetCipher;
 import info.guardianproject.netcipher.proxy.OrbotHelper;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 
 @ReportsCrashes(mailTo = BuildConfig.ACRA_REPORT_EMAIL,
         mode = ReportingInteractionMode.DIALOG,
@@ -302,6 +305,20 @@ public class FDroidApp extends Application implements androidx.work.Configuratio
         return urlString.replace(lastWorkingMirror, mirror);
     }
 
+    /**
+     * Switch the URL in {@code urlString} from the canonical address of
+     * {@code repo2} to the mirror that was last used for that repo, if any.
+     *
+     * @see #switchUrlToNewMirror(String, Repo)
+     */
+    public static String switchUrlToLastWorkingMirror(String urlString, Repo repo2) {
+        String lastWorkingMirror = lastWorkingMirrorArray.get(repo2.getId());
+        if (lastWorkingMirror == null) {
+            return urlString;
+        }
+        return urlString.replace(repo2.address, lastWorkingMirror);
+    }
+
     public static int getTimeout() {
         return timeout;
     }
@@ -400,7 +417,9 @@ public class FDroidApp extends Application implements androidx.work.Configuratio
             preferences.setForceOldIndex(true);
         }
 
-        InstalledAppProviderService.compareToPackageManager(this);
+        StartupTasks startupTasks = new StartupTasks(Schedulers.io()::scheduleDirect);
+        startupTasks.add("compareToPackageManager", StartupTasks.When.BACKGROUND,
+                () -> InstalledAppProviderService.compareToPackageManager(this));
 
         // If the user changes the preference to do with filtering anti-feature apps,
         // it is easier to just notify a change in the app provider,
@@ -415,11 +434,14 @@ public class FDroidApp extends Application implements androidx.work.Configuratio
         preferences.registerUnstableUpdatesChangeListener(new Preferences.ChangeListener() {
             @Override
             public void onPreferenceChange() {
-                AppProvider.Helper.calcSuggestedApks(FDroidApp.this);
+                SuggestedApksWorker.schedule(FDroidApp.this);
             }
         });
 
-        CleanCacheWorker.schedule(this);
+        startupTasks.add("CleanCacheWorker", StartupTasks.When.AFTER_FIRST_DRAW,
+                () -> CleanCacheWorker.schedule(this));
+        startupTasks.add("DatabaseMaintenanceWorker", StartupTasks.When.AFTER_FIRST_DRAW,
+                () -> DatabaseMaintenanceWorker.schedule(this));
 
         notificationHelper = new NotificationHelper(getApplicationContext());
 
@@ -429,10 +451,14 @@ public class FDroidApp extends Application implements androidx.work.Configuratio
             networkState = ConnectivityMonitorService.getNetworkState(this);
         }
         ConnectivityMonitorService.registerAndStart(this);
-        UpdateService.schedule(getApplicationContext());
+        // provisioning can add repos, which should be part of the first scheduled update
+        startupTasks.add("UpdateService", StartupTasks.When.AFTER_FIRST_DRAW,
+                () -> UpdateService.schedule(getApplicationContext()), "Provisioner");
 
+        // subnetInfo must be set before anything checks for swap URLs, only the scan can wait
         FDroidApp.initWifiSettings();
-        WifiStateChangeService.start(this, null);
+        startupTasks.add("WifiStateChangeService", StartupTasks.When.AFTER_FIRST_DRAW,
+                () -> WifiStateChangeService.start(this, null));
         // if the HTTPS pref changes, then update all affected things
         preferences.registerLocalRepoHttpsListeners(new ChangeListener() {
             @Override
@@ -457,14 +483,20 @@ public class FDroidApp extends Application implements androidx.work.Configuratio
         }
 
         // find and process provisions if any.
-        Provisioner.scanAndProcess(getApplicationContext());
+        startupTasks.add("Provisioner", StartupTasks.When.BACKGROUND,
+                () -> Provisioner.scanAndProcess(getApplicationContext()));
 
-        // if the underlying OS version has changed, then fully rebuild the database
-        SharedPreferences atStartTime = getAtStartTimeSharedPreferences();
+        // if the underlying OS version has changed, then recheck which apps are compatible,
+        // the index itself is still the same so there is no need to download it again
+        final SharedPreferences atStartTime = getAtStartTimeSharedPreferences();
         if (Build.VERSION.SDK_INT != atStartTime.getInt("build-version", Build.VERSION.SDK_INT)) {
-            UpdateService.forceUpdateRepo(this);
+            startupTasks.add("recalculateCompatibility", StartupTasks.When.AFTER_FIRST_DRAW, () -> {
+                AppProvider.Helper.recalculateCompatibility(this);
+                atStartTime.edit().putInt("build-version", Build.VERSION.SDK_INT).apply();
+            }, "compareToPackageManager");
+        } else {
+            atStartTime.edit().putInt("build-version", Build.VERSION.SDK_INT).apply();
         }
-        atStartTime.edit().putInt("build-version", Build.VERSION.SDK_INT).apply();
 
         final String queryStringKey = "http-downloader-query-string";
         if (preferences.sendVersionAndUUIDToServers()) {
@@ -491,8 +523,12 @@ public class FDroidApp extends Application implements androidx.work.Configuratio
         }
 
         if (Preferences.get().isScanRemovableStorageEnabled()) {
-            SDCardScannerService.scan(this);
+            startupTasks.add("SDCardScannerService", StartupTasks.When.AFTER_FIRST_DRAW,
+                    () -> SDCardScannerService.scan(this));
         }
+
+        startupTasks.start();
+        startupTasks.startAfterFirstDraw(this);
     }
 
     /**
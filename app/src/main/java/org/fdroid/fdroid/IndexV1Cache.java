@@ -0,0 +1,496 @@
+package org.fdroid.fdroid;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.data.Apk;
+import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.Repo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.ConfigurationCompat;
+
+/**
+ * A compact binary copy of the last {@code index-v1.json} that
+ * {@link IndexV1Updater} accepted for a repo, so that rebuilding the database
+ * after {@link org.fdroid.fdroid.data.DBHelper#resetTransient(Context)} or
+ * after the ETags were cleared does not need to parse the JSON again, and
+ * often does not even need to download it again.
+ * <p>
+ * The cache is only written after the signature of the index was verified.
+ * It is keyed by the signed timestamp of the index, the SHA-256 of the jar it
+ * came from and the HTTP ETag, and it records the signing certificate and
+ * address of the repo, so it is never used for a repo that changed keys.
+ * The whole file is covered by a SHA-256 at its end, which is checked
+ * before anything from it is used.
+ * <p>
+ * {@link App} and {@link Apk} are written field by field.  The list of fields
+ * is stored as part of the header, so any change to those classes makes
+ * older caches be ignored instead of misread.  Since {@link App} picks the
+ * localized texts while parsing, the user's locales are part of the header
+ * too.
+ */
+public final class IndexV1Cache {
+    private static final String TAG = "IndexV1Cache";
+
+    private static final int MAGIC = 0x46444931; // FDI1
+    private static final int FORMAT_VERSION = 1;
+    private static final String DIGEST = "SHA-256";
+    private static final int MAX_COUNT = 1024 * 1024;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_LIST = 6;
+    private static final byte TYPE_MAP = 7;
+
+    private static final FieldCodec APP_CODEC = new FieldCodec(App.class);
+    private static final FieldCodec APK_CODEC = new FieldCodec(Apk.class);
+
+    /**
+     * The parsed contents of an {@code index-v1.json}, plus what identifies it.
+     */
+    static final class Index {
+        final long timestamp;
+        final String jarSha256;
+        @Nullable
+        final String etag;
+        HashMap<String, Object> repoMap;
+        Map<String, String[]> requests;
+        App[] apps;
+        Map<String, List<Apk>> packages;
+
+        Index(long timestamp, String jarSha256, @Nullable String etag) {
+            this.timestamp = timestamp;
+            this.jarSha256 = jarSha256;
+            this.etag = etag;
+        }
+    }
+
+    private IndexV1Cache() {
+    }
+
+    /**
+     * Not named {@code index-*}, since those are deleted as stray downloads by
+     * {@code CleanCacheWorker.deleteStrayIndexFiles()}.
+     */
+    private static File getFile(Context context, long repoId) {
+        return new File(new File(context.getCacheDir(), "repo-index-cache"), repoId + ".bin");
+    }
+
+    private static String getLocales() {
+        if (App.systemLocaleList != null) {
+            return App.systemLocaleList.toLanguageTags();
+        }
+        return ConfigurationCompat.getLocales(Resources.getSystem().getConfiguration()).toLanguageTags();
+    }
+
+    /**
+     * Read the whole cached index and check its integrity.  This must not be
+     * called on the UI thread.
+     *
+     * @return {@code null} if there is no cache for this repo that could be used
+     */
+    @Nullable
+    static Index load(Context context, Repo repo) {
+        File file = getFile(context, repo.getId());
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST);
+            // the digest must only see what was actually read, not what was buffered
+            in = new DataInputStream(new DigestInputStream(
+                    new BufferedInputStream(new FileInputStream(file)), digest));
+            if (in.readInt() != MAGIC
+                    || in.readInt() != FORMAT_VERSION
+                    || !APP_CODEC.fingerprint.equals(in.readUTF())
+                    || !APK_CODEC.fingerprint.equals(in.readUTF())
+                    || !getLocales().equals(in.readUTF())
+                    || !TextUtils.equals(repo.address, in.readUTF())
+                    || TextUtils.isEmpty(repo.signingCertificate)
+                    || !repo.signingCertificate.equals(readLongString(in))) {
+                Utils.debugLog(TAG, "Ignoring outdated cache for " + repo.address);
+                return null;
+            }
+            long timestamp = in.readLong();
+            if (timestamp < repo.timestamp) {
+                return null;
+            }
+            Index index = new Index(timestamp, in.readUTF(), readNullable(in));
+            @SuppressWarnings("unchecked")
+            HashMap<String, Object> repoMap = (HashMap<String, Object>) readValue(in);
+            index.repoMap = repoMap;
+            int count = readCount(in);
+            index.requests = new HashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                index.requests.put(in.readUTF(), readStringArray(in));
+            }
+            index.apps = new App[readCount(in)];
+            for (int i = 0; i < index.apps.length; i++) {
+                index.apps[i] = APP_CODEC.read(in, new App());
+            }
+            count = readCount(in);
+            index.packages = new HashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                String packageName = in.readUTF();
+                int apkCount = readCount(in);
+                List<Apk> apks = new ArrayList<>(apkCount);
+                for (int j = 0; j < apkCount; j++) {
+                    apks.add(APK_CODEC.read(in, new Apk()));
+                }
+                index.packages.put(packageName, apks);
+            }
+
+            // the digest at the end is not part of the digest
+            byte[] expected = digest.digest();
+            byte[] actual = new byte[expected.length];
+            in.readFully(actual);
+            if (!MessageDigest.isEqual(expected, actual) || in.read() != -1) {
+                Log.w(TAG, "Deleting corrupt cache for " + repo.address);
+                Utils.closeQuietly(in);
+                FileUtils.deleteQuietly(file);
+                return null;
+            }
+            return index;
+        } catch (IOException | NoSuchAlgorithmException | ReflectiveOperationException | RuntimeException e) {
+            Log.w(TAG, "Could not read cache for " + repo.address + ": " + e);
+            Utils.closeQuietly(in);
+            FileUtils.deleteQuietly(file);
+            return null;
+        } finally {
+            Utils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Write the index, which must already be verified and come from a repo
+     * with a {@link Repo#signingCertificate}.  This must happen before
+     * anything modifies the parsed {@link App}s and {@link Apk}s.
+     */
+    static void write(Context context, Repo repo, Index index) {
+        Utils.Profiler profiler = new Utils.Profiler(TAG);
+        File file = getFile(context, repo.getId());
+        File dir = file.getParentFile();
+        File tmpFile = new File(dir, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            MessageDigest digest = MessageDigest.getInstance(DIGEST);
+            out = new DataOutputStream(new DigestOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)), digest));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(APP_CODEC.fingerprint);
+            out.writeUTF(APK_CODEC.fingerprint);
+            out.writeUTF(getLocales());
+            out.writeUTF(repo.address);
+            writeLongString(out, repo.signingCertificate);
+            out.writeLong(index.timestamp);
+            out.writeUTF(index.jarSha256);
+            writeNullable(out, index.etag);
+
+            writeValue(out, index.repoMap);
+            Map<String, String[]> requests = index.requests == null
+                    ? Collections.<String, String[]>emptyMap() : index.requests;
+            out.writeInt(requests.size());
+            for (Map.Entry<String, String[]> entry : requests.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeStringArray(out, entry.getValue());
+            }
+            App[] apps = index.apps == null ? new App[0] : index.apps;
+            out.writeInt(apps.length);
+            for (App app : apps) {
+                APP_CODEC.write(out, app);
+            }
+            Map<String, List<Apk>> packages = index.packages == null
+                    ? Collections.<String, List<Apk>>emptyMap() : index.packages;
+            out.writeInt(packages.size());
+            for (Map.Entry<String, List<Apk>> entry : packages.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Apk apk : entry.getValue()) {
+                    APK_CODEC.write(out, apk);
+                }
+            }
+            out.flush();
+            out.write(digest.digest());
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + tmpFile + " to " + file);
+            }
+            profiler.log("Cached " + apps.length + " apps from " + repo.address);
+        } catch (IOException | NoSuchAlgorithmException | IllegalAccessException e) {
+            Log.w(TAG, "Could not cache index of " + repo.address + ": " + e);
+            Utils.closeQuietly(out);
+            FileUtils.deleteQuietly(tmpFile);
+            FileUtils.deleteQuietly(file);
+        } finally {
+            Utils.closeQuietly(out);
+        }
+    }
+
+    public static void delete(Context context, long repoId) {
+        FileUtils.deleteQuietly(getFile(context, repoId));
+    }
+
+    /**
+     * Sizes are checked before allocating anything, since the integrity of
+     * the file is only known once it was read completely.
+     */
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_COUNT) {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * The signing certificate can be longer than what {@link DataOutputStream#writeUTF(String)} allows.
+     */
+    private static void writeLongString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readLongString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_COUNT) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeNullable(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeLongString(out, value);
+        }
+    }
+
+    @Nullable
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readLongString(in) : null;
+    }
+
+    private static void writeStringArray(DataOutputStream out, @Nullable String[] values) throws IOException {
+        out.writeBoolean(values != null);
+        if (values == null) {
+            return;
+        }
+        out.writeInt(values.length);
+        for (String value : values) {
+            writeNullable(out, value);
+        }
+    }
+
+    @Nullable
+    private static String[] readStringArray(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int length = readCount(in);
+        String[] values = new String[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = readNullable(in);
+        }
+        return values;
+    }
+
+    /**
+     * Write the generic JSON values that Jackson puts in the {@code repo} block.
+     */
+    private static void writeValue(DataOutputStream out, @Nullable Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeLongString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(TYPE_LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TYPE_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeLongString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            throw new IOException("Cannot cache " + value.getClass());
+        }
+    }
+
+    @Nullable
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readLongString(in);
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_LIST:
+                int size = readCount(in);
+                ArrayList<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            case TYPE_MAP:
+                size = readCount(in);
+                HashMap<String, Object> map = new LinkedHashMap<>(size);
+                for (int i = 0; i < size; i++) {
+                    map.put(readLongString(in), readValue(in));
+                }
+                return map;
+            default:
+                throw new IOException("Unknown type " + type);
+        }
+    }
+
+    /**
+     * Reads and writes all instance fields of a class that {@link IndexV1Updater}
+     * can set.  Fields of other types, like {@link App#installedApk}, are never
+     * set from the index, so they are skipped.
+     */
+    private static final class FieldCodec {
+        private static final List<Class<?>> SUPPORTED_TYPES = Arrays.asList(
+                String.class, String[].class, int.class, long.class, boolean.class, Date.class);
+
+        final Field[] fields;
+        final String fingerprint;
+
+        FieldCodec(Class<?> clazz) {
+            List<Field> fieldList = new ArrayList<>();
+            for (Field field : clazz.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                        || !SUPPORTED_TYPES.contains(field.getType())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fieldList.add(field);
+            }
+            Collections.sort(fieldList, new Comparator<Field>() {
+                @Override
+                public int compare(Field f1, Field f2) {
+                    return f1.getName().compareTo(f2.getName());
+                }
+            });
+            fields = fieldList.toArray(new Field[0]);
+            StringBuilder builder = new StringBuilder(clazz.getSimpleName());
+            for (Field field : fields) {
+                builder.append(',').append(field.getName()).append(':').append(field.getType().getSimpleName());
+            }
+            fingerprint = builder.toString();
+        }
+
+        void write(DataOutputStream out, Object object) throws IOException, IllegalAccessException {
+            for (Field field : fields) {
+                Class<?> type = field.getType();
+                if (type == int.class) {
+                    out.writeInt(field.getInt(object));
+                } else if (type == long.class) {
+                    out.writeLong(field.getLong(object));
+                } else if (type == boolean.class) {
+                    out.writeBoolean(field.getBoolean(object));
+                } else if (type == String.class) {
+                    writeNullable(out, (String) field.get(object));
+                } else if (type == String[].class) {
+                    writeStringArray(out, (String[]) field.get(object));
+                } else {
+                    Date date = (Date) field.get(object);
+                    out.writeBoolean(date != null);
+                    if (date != null) {
+                        out.writeLong(date.getTime());
+                    }
+                }
+            }
+        }
+
+        @NonNull
+        <T> T read(DataInputStream in, T object) throws IOException, IllegalAccessException {
+            for (Field field : fields) {
+                Class<?> type = field.getType();
+                if (type == int.class) {
+                    field.setInt(object, in.readInt());
+                } else if (type == long.class) {
+                    field.setLong(object, in.readLong());
+                } else if (type == boolean.class) {
+                    field.setBoolean(object, in.readBoolean());
+                } else if (type == String.class) {
+                    field.set(object, readNullable(in));
+                } else if (type == String[].class) {
+                    field.set(object, readStringArray(in));
+                } else {
+                    field.set(object, in.readBoolean() ? new Date(in.readLong()) : null);
+                }
+            }
+            return object;
+        }
+    }
+}
@@ -74,6 +74,7 @@ import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLProtocolException;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 /**
  * Receives the index data about all available apps and packages via the V1
@@ -119,11 +120,20 @@ public class IndexV1Updater extends IndexUpdater {
             // swap repos do not support index-v1
             return false;
         }
+        String cacheTag = repo.lastetag;
+        IndexV1Cache.Index cachedIndex = null;
+        if (TextUtils.isEmpty(cacheTag)) {
+            // the database was reset, so try to rebuild it from what was last accepted
+            cachedIndex = IndexV1Cache.load(context, repo);
+            if (cachedIndex != null) {
+                cacheTag = cachedIndex.etag;
+            }
+        }
         Downloader downloader = null;
         try {
             // read file name from file
             downloader = DownloaderFactory.create(context, indexUrl);
-            downloader.setCacheTag(repo.lastetag);
+            downloader.setCacheTag(cacheTag);
             downloader.setListener(downloadListener);
             downloader.download();
             if (downloader.isNotFound()) {
@@ -132,10 +142,11 @@ public class IndexV1Updater extends IndexUpdater {
             hasChanged = downloader.hasChanged();
 
             if (!hasChanged) {
+                processCachedIndex(cachedIndex, cacheTag);
                 return true;
             }
 
-            processDownloadedIndex(downloader.outputFile, downloader.getCacheTag());
+            processDownloadedIndex(downloader, cachedIndex);
         } catch (ConnectException | HttpRetryException | NoRouteToHostException | SocketTimeoutException
                 | SSLHandshakeException | SSLKeyException | SSLPeerUnverifiedException | SSLProtocolException
                 | ProtocolException | UnknownHostException e) {
@@ -151,7 +162,7 @@ public class IndexV1Updater extends IndexUpdater {
                     mirrorUrl = FDroidApp.getNewMirrorOnError(prevMirrorUrl, repo);
                     prevMirrorUrl = mirrorUrl;
                     downloader = DownloaderFactory.create(context, mirrorUrl);
-                    downloader.setCacheTag(repo.lastetag);
+                    downloader.setCacheTag(cacheTag);
                     downloader.setListener(downloadListener);
                     downloader.setTimeout(FDroidApp.getTimeout());
                     downloader.download();
@@ -161,10 +172,11 @@ public class IndexV1Updater extends IndexUpdater {
                     hasChanged = downloader.hasChanged();
 
                     if (!hasChanged) {
+                        processCachedIndex(cachedIndex, cacheTag);
                         return true;
                     }
 
-                    processDownloadedIndex(downloader.outputFile, downloader.getCacheTag());
+                    processDownloadedIndex(downloader, cachedIndex);
                     break;
                 } catch (ConnectException | HttpRetryException | NoRouteToHostException | SocketTimeoutException
                         | SSLHandshakeException | SSLKeyException | SSLPeerUnverifiedException | SSLProtocolException
@@ -192,13 +204,42 @@ public class IndexV1Updater extends IndexUpdater {
         return true;
     }
 
-    private void processDownloadedIndex(File outputFile, String cacheTag)
+    /**
+     * The server said the index did not change since {@code cachedIndex} was
+     * downloaded, so if the database was reset in the meantime, it is rebuilt
+     * from {@link IndexV1Cache} without downloading or parsing anything.
+     */
+    private void processCachedIndex(@Nullable IndexV1Cache.Index cachedIndex, String cacheTag)
+            throws IndexUpdater.UpdateException {
+        if (cachedIndex == null) {
+            return;
+        }
+        Utils.debugLog(TAG, "Index of " + repo.address + " unchanged, restoring it from the cache");
+        hasChanged = true;
+        saveIndex(cachedIndex.timestamp, cacheTag, cachedIndex.repoMap, cachedIndex.requests,
+                cachedIndex.apps, cachedIndex.packages);
+    }
+
+    private void processDownloadedIndex(Downloader downloader, @Nullable IndexV1Cache.Index cachedIndex)
             throws IOException, IndexUpdater.UpdateException {
+        File outputFile = downloader.outputFile;
+        String cacheTag = downloader.getCacheTag();
+        String jarSha256 = downloader.getSha256();
+        if (jarSha256 == null) {
+            jarSha256 = Utils.getFileHexDigest(outputFile, "sha256");
+        }
+        if (cachedIndex != null && cachedIndex.jarSha256.equals(jarSha256)) {
+            // the same signed jar that was already verified, e.g. from a server without ETag support
+            Utils.debugLog(TAG, "Downloaded the same " + SIGNED_FILE_NAME + ", restoring it from the cache");
+            saveIndex(cachedIndex.timestamp, cacheTag, cachedIndex.repoMap, cachedIndex.requests,
+                    cachedIndex.apps, cachedIndex.packages);
+            return;
+        }
         JarFile jarFile = new JarFile(outputFile, true);
         JarEntry indexEntry = (JarEntry) jarFile.getEntry(DATA_FILE_NAME);
         InputStream indexInputStream = new ProgressBufferedInputStream(jarFile.getInputStream(indexEntry),
                 processIndexListener, (int) indexEntry.getSize());
-        processIndexV1(indexInputStream, indexEntry, cacheTag);
+        processIndexV1(indexInputStream, indexEntry, cacheTag, jarSha256);
         jarFile.close();
     }
 
@@ -236,6 +277,16 @@ public class IndexV1Updater extends IndexUpdater {
      */
     public void processIndexV1(InputStream indexInputStream, JarEntry indexEntry, String etag)
             throws IOException, UpdateException {
+        processIndexV1(indexInputStream, indexEntry, etag, null);
+    }
+
+    /**
+     * @param jarSha256 the SHA-256 of the downloaded {@link #SIGNED_FILE_NAME},
+     *                  or {@code null} to not write it to {@link IndexV1Cache}
+     * @see #processIndexV1(InputStream, JarEntry, String)
+     */
+    private void processIndexV1(InputStream indexInputStream, JarEntry indexEntry, String etag,
+                                @Nullable String jarSha256) throws IOException, UpdateException {
         Utils.Profiler profiler = new Utils.Profiler(TAG);
         profiler.log("Starting to process index-v1.json");
         ObjectMapper mapper = getObjectMapperInstance(repo.getId());
@@ -284,7 +335,28 @@ public class IndexV1Updater extends IndexUpdater {
         X509Certificate certificate = getSigningCertFromJar(indexEntry);
         verifySigningCertificate(certificate);
 
+        if (jarSha256 != null) {
+            // before saveIndex(), which modifies the apps
+            IndexV1Cache.Index index = new IndexV1Cache.Index(timestamp, jarSha256, etag);
+            index.repoMap = repoMap;
+            index.requests = requests;
+            index.apps = apps;
+            index.packages = packages;
+            IndexV1Cache.write(context, repo, index);
+        }
+
         profiler.log("Certificate verified. Now saving to database...");
+        saveIndex(timestamp, etag, repoMap, requests, apps, packages);
+    }
+
+    /**
+     * Write a verified index to the database, whether freshly parsed or from
+     * {@link IndexV1Cache}.
+     */
+    private void saveIndex(long timestamp, String etag, @NonNull HashMap<String, Object> repoMap,
+                           Map<String, String[]> requests, App[] apps, Map<String, List<Apk>> packages)
+            throws UpdateException {
+        Utils.Profiler profiler = new Utils.Profiler(TAG);
 
         // timestamp is absolutely required
         repo.timestamp = timestamp;
@@ -371,6 +443,9 @@ public class IndexV1Updater extends IndexUpdater {
         repoPersister.commit(contentValues, repo.getId());
         profiler.log("Persisted to database.");
 
+        RepoIconBundle.update(context, repo, repoMap.get(RepoIconBundle.INDEX_KEY));
+        ScreenshotThumbnails.update(context, repo, repoMap.get(ScreenshotThumbnails.INDEX_KEY));
+
         if (repo.pushRequests == Repo.PUSH_REQUEST_ACCEPT_ALWAYS) {
             processRepoPushRequests(requests);
             Utils.debugLog(TAG, "Completed Repo Push Requests: " + requests);
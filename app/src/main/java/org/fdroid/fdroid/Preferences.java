@@ -96,6 +96,7 @@ public final class Preferences implements SharedPreferences.OnSharedPreferenceCh
     public static final String PREF_FORCE_TOUCH_APPS = "ignoreTouchscreen";
     public static final String PREF_PROMPT_TO_SEND_CRASH_REPORTS = "promptToSendCrashReports";
     public static final String PREF_KEEP_CACHE_TIME = "keepCacheFor";
+    public static final String PREF_APK_CACHE_SIZE = "apkCacheSize";
     public static final String PREF_UNSTABLE_UPDATES = "unstableUpdates";
     public static final String PREF_KEEP_INSTALL_HISTORY = "keepInstallHistory";
     public static final String PREF_SEND_TO_FDROID_METRICS = "sendToFdroidMetrics";
@@ -137,6 +138,7 @@ public final class Preferences implements SharedPreferences.OnSharedPreferenceCh
     private static final boolean DEFAULT_SHOW_NFC_DURING_SWAP = true;
     private static final boolean DEFAULT_POST_PRIVILEGED_INSTALL = false;
     private static final boolean DEFAULT_PANIC_EXIT = true;
+    private static final long DEFAULT_APK_CACHE_SIZE = 524288000L; // keep in sync with preferences.xml
 
     private static final boolean IGNORED_B = false;
     private static final int IGNORED_I = -1;
@@ -336,6 +338,17 @@ public final class Preferences implements SharedPreferences.OnSharedPreferenceCh
         }
     }
 
+    /**
+     * The most space in bytes that cached APKs may take up together.
+     */
+    public long getApkCacheSize() {
+        try {
+            return Long.parseLong(preferences.getString(PREF_APK_CACHE_SIZE, null));
+        } catch (NumberFormatException e) {
+            return DEFAULT_APK_CACHE_SIZE;
+        }
+    }
+
     public long getLastUpdateCheck() {
         return preferences.getLong(PREF_LAST_UPDATE_CHECK, DEFAULT_LAST_UPDATE_CHECK);
     }
@@ -0,0 +1,237 @@
+package org.fdroid.fdroid;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.data.Repo;
+import org.fdroid.fdroid.net.Downloader;
+import org.fdroid.fdroid.net.DownloaderFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import androidx.annotation.Nullable;
+
+/**
+ * A repo can offer all of its app icons at a given density as a single ZIP
+ * archive, so a fresh install does not need hundreds of HTTP requests to show
+ * the Latest and Categories tabs.  The bundles are listed in the signed
+ * {@code index-v1.json} along with their SHA-256, which is what makes the
+ * unsigned archive trustworthy:
+ * <pre>
+ * "repo": {
+ *   "iconBundles": {
+ *     "icons-640": {"name": "icons-640.zip", "sha256": "..."},
+ *     ...
+ *   }
+ * }
+ * </pre>
+ * Only the bundle matching {@link Utils#getIconsDir(Context, double)} is
+ * downloaded.  It is unpacked into {@link #getIconsDir(Context, long, String)},
+ * which {@link org.fdroid.fdroid.net.RepoImageModelLoader} checks before
+ * going to the network.
+ */
+public final class RepoIconBundle {
+    private static final String TAG = "RepoIconBundle";
+
+    public static final String INDEX_KEY = "iconBundles";
+
+    /**
+     * Anything bigger than this is not an app icon, so it is skipped to
+     * protect against ZIP bombs.
+     */
+    static final int MAX_ICON_SIZE = 512 * 1024;
+
+    private static final String HASH_FILE = ".sha256";
+
+    private RepoIconBundle() {
+    }
+
+    private static File getBundlesDir(Context context) {
+        return new File(context.getCacheDir(), "icon-bundles");
+    }
+
+    public static File getIconsDir(Context context, long repoId, String iconsDir) {
+        return new File(new File(getBundlesDir(context), String.valueOf(repoId)), iconsDir);
+    }
+
+    /**
+     * @param path the path of the icon relative to the repo's address, e.g. {@code /icons-640/org.fdroid.fdroid.png}
+     * @return the icon from this repo's unpacked bundle, or {@code null} if it is not there
+     */
+    @Nullable
+    public static File getCachedIcon(Context context, long repoId, String path) {
+        String[] parts = path.startsWith("/") ? path.substring(1).split("/") : path.split("/");
+        if (parts.length != 2 || !parts[0].startsWith(Utils.FALLBACK_ICONS_DIR) || !isSafeFileName(parts[1])) {
+            return null;
+        }
+        File icon = new File(getIconsDir(context, repoId, parts[0]), parts[1]);
+        return icon.isFile() ? icon : null;
+    }
+
+    /**
+     * Download and unpack the bundle for this device's screen density if the
+     * index lists one and it is not already unpacked.  This never throws, the
+     * icons will then just be downloaded one by one like before.
+     *
+     * @param bundles the {@link #INDEX_KEY} value from the {@code repo} block of the index
+     */
+    public static void update(Context context, Repo repo, @Nullable Object bundles) {
+        File destDir = getIconsDir(context, repo.getId(), Utils.getIconsDir(context, 1.0));
+        if (!(bundles instanceof Map)) {
+            FileUtils.deleteQuietly(destDir);
+            return;
+        }
+        Object bundle = ((Map<?, ?>) bundles).get(destDir.getName());
+        if (!(bundle instanceof Map)) {
+            FileUtils.deleteQuietly(destDir);
+            return;
+        }
+        Object name = ((Map<?, ?>) bundle).get("name");
+        Object sha256 = ((Map<?, ?>) bundle).get("sha256");
+        if (!(name instanceof String) || !(sha256 instanceof String) || TextUtils.isEmpty((String) sha256)) {
+            Log.w(TAG, "Ignoring icon bundle without name or sha256 in " + repo.address);
+            return;
+        }
+        if (sha256.equals(readHash(destDir))) {
+            Utils.debugLog(TAG, destDir.getName() + " bundle of " + repo.address + " is already unpacked");
+            return;
+        }
+
+        Downloader downloader = null;
+        try {
+            Utils.Profiler profiler = new Utils.Profiler(TAG);
+            downloader = DownloaderFactory.create(context, repo.getFileUrl((String) name));
+            downloader.download();
+            if (downloader.isNotFound()) {
+                Log.w(TAG, "Icon bundle " + name + " not found in " + repo.address);
+                return;
+            }
+            if (!Utils.isFileMatchingHash(downloader.outputFile, (String) sha256, "sha256")) {
+                Log.e(TAG, "Icon bundle " + name + " from " + repo.address + " does not match its sha256!");
+                return;
+            }
+            int count = unpack(downloader.outputFile, destDir, (String) sha256);
+            profiler.log("Unpacked " + count + " icons from " + name);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not get icon bundle " + name + " from " + repo.address + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            // ignored if canceled, icons will be downloaded one by one
+        } finally {
+            if (downloader != null) {
+                FileUtils.deleteQuietly(downloader.outputFile);
+            }
+        }
+    }
+
+    /**
+     * Unpack {@code zip} next to {@code destDir}, then swap it in place, so
+     * icons are never read from a half-unpacked bundle.  Only plain icon file
+     * names are accepted, at the top level or in a single directory named
+     * like {@code destDir}.
+     *
+     * @return the number of icons unpacked
+     */
+    static int unpack(File zip, File destDir, String sha256) throws IOException {
+        File parent = destDir.getParentFile();
+        if (parent == null || !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        File tmpDir = new File(parent, destDir.getName() + ".tmp");
+        FileUtils.deleteQuietly(tmpDir);
+        if (!tmpDir.mkdir()) {
+            throw new IOException("Cannot create " + tmpDir);
+        }
+        int count = 0;
+        byte[] buffer = new byte[8192];
+        ZipInputStream zipInputStream = null;
+        try {
+            zipInputStream = new ZipInputStream(new BufferedInputStream(new FileInputStream(zip)));
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String name = entry.getName();
+                if (name.startsWith(destDir.getName() + "/")) {
+                    name = name.substring(destDir.getName().length() + 1);
+                }
+                if (!isSafeFileName(name)) {
+                    Utils.debugLog(TAG, "Skipping " + entry.getName() + " in " + zip);
+                    continue;
+                }
+                if (copyLimited(zipInputStream, new File(tmpDir, name), buffer)) {
+                    count++;
+                } else {
+                    Utils.debugLog(TAG, "Skipping " + entry.getName() + ", it is too big for an icon");
+                }
+            }
+            FileUtils.writeStringToFile(new File(tmpDir, HASH_FILE), sha256, "UTF-8");
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(tmpDir);
+            throw e;
+        } finally {
+            Utils.closeQuietly(zipInputStream);
+        }
+
+        FileUtils.deleteQuietly(destDir);
+        if (!tmpDir.renameTo(destDir)) {
+            FileUtils.deleteQuietly(tmpDir);
+            throw new IOException("Cannot rename " + tmpDir + " to " + destDir);
+        }
+        return count;
+    }
+
+    private static boolean copyLimited(InputStream inputStream, File file, byte[] buffer) throws IOException {
+        long total = 0;
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                total += count;
+                if (total > MAX_ICON_SIZE) {
+                    break;
+                }
+                outputStream.write(buffer, 0, count);
+            }
+        } finally {
+            outputStream.close();
+        }
+        if (total > MAX_ICON_SIZE) {
+            FileUtils.deleteQuietly(file);
+            return false;
+        }
+        return true;
+    }
+
+    @Nullable
+    private static String readHash(File dir) {
+        File hashFile = new File(dir, HASH_FILE);
+        if (!hashFile.isFile()) {
+            return null;
+        }
+        try {
+            return FileUtils.readFileToString(hashFile, "UTF-8").trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static void delete(Context context, long repoId) {
+        FileUtils.deleteQuietly(new File(getBundlesDir(context), String.valueOf(repoId)));
+    }
+
+    private static boolean isSafeFileName(String name) {
+        return !TextUtils.isEmpty(name) && !name.startsWith(".") && !name.contains("/") && !name.contains("\\");
+    }
+}
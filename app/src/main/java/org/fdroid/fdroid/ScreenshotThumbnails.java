@@ -0,0 +1,146 @@
+package org.fdroid.fdroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.Target;
+
+import org.fdroid.fdroid.data.Repo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+
+/**
+ * A repo can offer smaller versions of its screenshots, so the gallery in
+ * {@link org.fdroid.fdroid.views.AppDetailsActivity} does not need to download
+ * screenshots of several megabytes each just to show them a few hundred
+ * pixels high.  The heights in pixels which are available are listed in the
+ * signed {@code index-v1.json}:
+ * <pre>
+ * "repo": {
+ *   "screenshotThumbnails": [240, 480, 720],
+ *   ...
+ * }
+ * </pre>
+ * Each thumbnail is in a directory named after its height next to the
+ * screenshot, e.g. {@code en-US/phoneScreenshots/thumbnails-480/1.png} for
+ * {@code en-US/phoneScreenshots/1.png}.  The smallest one which is at least
+ * as high as the gallery on this device's screen is used.
+ * <p>
+ * Without thumbnails, the full size screenshot is downloaded, but only the
+ * version scaled down to the gallery is kept in Glide's disk cache, see
+ * {@link #getRequestOptions(Context)}.  Full size screenshots are only
+ * downloaded when the user opens one in {@link org.fdroid.fdroid.views.ScreenShotsActivity}.
+ */
+public final class ScreenshotThumbnails {
+    private static final String TAG = "ScreenshotThumbnails";
+
+    public static final String INDEX_KEY = "screenshotThumbnails";
+
+    private static final String PREFS_NAME = "screenshot-thumbnails";
+
+    private ScreenshotThumbnails() {
+    }
+
+    /**
+     * Remember which thumbnails {@code repo} has, or that it has none.
+     *
+     * @param heights the {@link #INDEX_KEY} value from the {@code repo} block of the index
+     */
+    public static void update(Context context, Repo repo, @Nullable Object heights) {
+        List<Integer> validHeights = new ArrayList<>();
+        if (heights instanceof List) {
+            for (Object height : (List<?>) heights) {
+                if (height instanceof Integer && (Integer) height > 0) {
+                    if (!validHeights.contains(height)) {
+                        validHeights.add((Integer) height);
+                    }
+                } else {
+                    Log.w(TAG, "Ignoring screenshot thumbnail height " + height + " in " + repo.address);
+                }
+            }
+        }
+
+        SharedPreferences.Editor editor = getPrefs(context).edit();
+        if (validHeights.isEmpty()) {
+            editor.remove(String.valueOf(repo.getId()));
+        } else {
+            Collections.sort(validHeights);
+            editor.putString(String.valueOf(repo.getId()), TextUtils.join(",", validHeights));
+        }
+        editor.apply();
+    }
+
+    public static void delete(Context context, long repoId) {
+        getPrefs(context).edit().remove(String.valueOf(repoId)).apply();
+    }
+
+    /**
+     * @return the height of the thumbnails of {@code repoId} to show in the
+     * gallery, or {@code 0} if the repo has none
+     */
+    public static int getThumbnailHeight(Context context, long repoId) {
+        String heights = getPrefs(context).getString(String.valueOf(repoId), null);
+        if (TextUtils.isEmpty(heights)) {
+            return 0;
+        }
+        int galleryHeight = getGalleryHeight(context);
+        int thumbnailHeight = 0;
+        for (String height : heights.split(",")) {
+            thumbnailHeight = Integer.parseInt(height);
+            if (thumbnailHeight >= galleryHeight) {
+                break;
+            }
+        }
+        return thumbnailHeight;
+    }
+
+    /**
+     * @param path            of a screenshot, relative to the app's directory in the repo
+     * @param thumbnailHeight from {@link #getThumbnailHeight(Context, long)}
+     * @return the path of the thumbnail of that screenshot, or {@code path}
+     * itself if there are no thumbnails
+     */
+    public static String getThumbnailPath(String path, int thumbnailHeight) {
+        if (thumbnailHeight <= 0) {
+            return path;
+        }
+        int slash = path.lastIndexOf('/');
+        return path.substring(0, slash + 1) + "thumbnails-" + thumbnailHeight + "/" + path.substring(slash + 1);
+    }
+
+    /**
+     * @return the height of screenshots in the gallery on this device, in pixels
+     */
+    public static int getGalleryHeight(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.details_screenshot_height);
+    }
+
+    /**
+     * How to load screenshots for the gallery.  This has to be the same
+     * everywhere, so {@link org.fdroid.fdroid.views.ScreenShotsActivity} can
+     * show the thumbnail from the cache while the full size screenshot is
+     * downloaded.  Screenshots are scaled to the height of the gallery, and
+     * only that scaled version is kept in the disk cache, not the downloaded
+     * file, which might be the full size screenshot.
+     */
+    public static RequestOptions getRequestOptions(Context context) {
+        return new RequestOptions()
+                .override(Target.SIZE_ORIGINAL, getGalleryHeight(context))
+                .downsample(DownsampleStrategy.CENTER_INSIDE)
+                .dontTransform()
+                .diskCacheStrategy(DiskCacheStrategy.RESOURCE);
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
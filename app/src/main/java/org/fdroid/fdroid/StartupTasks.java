@@ -0,0 +1,242 @@
+package org.fdroid.fdroid;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the initializers from {@link FDroidApp#onCreate()} which do not need
+ * to finish before the first activity is shown, so they do not delay cold
+ * start.  Each task declares the tasks it depends on and is only started
+ * once all of them are finished.  {@link When#BACKGROUND} tasks are started
+ * right away, {@link When#AFTER_FIRST_DRAW} tasks wait until the first
+ * activity has drawn a frame, or {@link #FIRST_DRAW_TIMEOUT_MS} if F-Droid
+ * was started without any UI, e.g. by a scheduled job.  Both run on the
+ * {@link Executor}, never on the UI thread.
+ * <p>
+ * How long each task took is logged and available from {@link #getTimings()}.
+ */
+final class StartupTasks {
+    private static final String TAG = "StartupTasks";
+
+    static final long FIRST_DRAW_TIMEOUT_MS = 5000;
+
+    enum When {
+        BACKGROUND,
+        AFTER_FIRST_DRAW,
+    }
+
+    private static final class Task {
+        final String name;
+        final When when;
+        final Runnable runnable;
+        final String[] dependencies;
+        final List<Task> dependents = new ArrayList<>();
+        int pendingDependencies;
+
+        Task(String name, When when, Runnable runnable, String[] dependencies) {
+            this.name = name;
+            this.when = when;
+            this.runnable = runnable;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private final Executor executor;
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+    private final List<Task> waitingForFirstDraw = new ArrayList<>();
+    private long startTime;
+    private boolean started;
+    private boolean firstDrawDone;
+
+    StartupTasks(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param dependencies the names of tasks which must be finished before this one starts,
+     *                     they must be added before {@link #start()} but can be added after this one
+     */
+    synchronized StartupTasks add(String name, When when, Runnable runnable, String... dependencies) {
+        if (started) {
+            throw new IllegalStateException("Cannot add " + name + " after start()");
+        }
+        if (tasks.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate startup task " + name);
+        }
+        tasks.put(name, new Task(name, when, runnable, dependencies));
+        return this;
+    }
+
+    /**
+     * Resolve the dependencies and start all tasks which do not have to wait
+     * for anything.
+     *
+     * @throws IllegalStateException if a dependency is missing or there is a cycle
+     */
+    synchronized void start() {
+        if (started) {
+            return;
+        }
+        for (Task task : tasks.values()) {
+            for (String name : task.dependencies) {
+                Task dependency = tasks.get(name);
+                if (dependency == null) {
+                    throw new IllegalStateException(task.name + " depends on unknown task " + name);
+                }
+                dependency.dependents.add(task);
+                task.pendingDependencies++;
+            }
+        }
+        checkForCycles();
+        started = true;
+        startTime = SystemClock.elapsedRealtime();
+        for (Task task : tasks.values()) {
+            if (task.pendingDependencies == 0) {
+                schedule(task);
+            }
+        }
+    }
+
+    /**
+     * Start all {@link When#AFTER_FIRST_DRAW} tasks as soon as the first
+     * activity of {@code application} has been drawn.
+     */
+    void startAfterFirstDraw(Application application) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        handler.postDelayed(this::onFirstDraw, FIRST_DRAW_TIMEOUT_MS);
+        application.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityResumed(Activity activity) {
+                application.unregisterActivityLifecycleCallbacks(this);
+                final View decorView = activity.getWindow().getDecorView();
+                decorView.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+                    @Override
+                    public void onDraw() {
+                        // listeners cannot be removed while the frame is being drawn
+                        handler.postAtFrontOfQueue(() -> {
+                            decorView.getViewTreeObserver().removeOnDrawListener(this);
+                            onFirstDraw();
+                        });
+                    }
+                });
+            }
+
+            @Override
+            public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            }
+
+            @Override
+            public void onActivityStarted(Activity activity) {
+            }
+
+            @Override
+            public void onActivityPaused(Activity activity) {
+            }
+
+            @Override
+            public void onActivityStopped(Activity activity) {
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            }
+
+            @Override
+            public void onActivityDestroyed(Activity activity) {
+            }
+        });
+    }
+
+    synchronized void onFirstDraw() {
+        if (firstDrawDone) {
+            return;
+        }
+        firstDrawDone = true;
+        Utils.debugLog(TAG, "[" + (SystemClock.elapsedRealtime() - startTime) + "ms] first draw");
+        for (Task task : waitingForFirstDraw) {
+            execute(task);
+        }
+        waitingForFirstDraw.clear();
+    }
+
+    /**
+     * @return how many milliseconds each finished task took to run, in the order they finished
+     */
+    synchronized Map<String, Long> getTimings() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(timings));
+    }
+
+    private void schedule(Task task) {
+        if (task.when == When.AFTER_FIRST_DRAW && !firstDrawDone) {
+            waitingForFirstDraw.add(task);
+        } else {
+            execute(task);
+        }
+    }
+
+    private void execute(final Task task) {
+        executor.execute(() -> run(task));
+    }
+
+    private void run(Task task) {
+        long taskStart = SystemClock.elapsedRealtime();
+        try {
+            task.runnable.run();
+        } catch (RuntimeException e) {
+            // the rest of the app should still work, so do not block the tasks depending on this one
+            Log.e(TAG, "Startup task " + task.name + " failed", e);
+        }
+        long now = SystemClock.elapsedRealtime();
+        Utils.debugLog(TAG, "[" + (now - startTime) + "ms] " + task.name + " took " + (now - taskStart) + "ms");
+        synchronized (this) {
+            timings.put(task.name, now - taskStart);
+            for (Task dependent : task.dependents) {
+                if (--dependent.pendingDependencies == 0) {
+                    schedule(dependent);
+                }
+            }
+        }
+    }
+
+    private void checkForCycles() {
+        Map<Task, Integer> pending = new HashMap<>();
+        List<Task> ready = new ArrayList<>();
+        for (Task task : tasks.values()) {
+            pending.put(task, task.pendingDependencies);
+            if (task.pendingDependencies == 0) {
+                ready.add(task);
+            }
+        }
+        int resolved = 0;
+        while (!ready.isEmpty()) {
+            Task task = ready.remove(ready.size() - 1);
+            resolved++;
+            for (Task dependent : task.dependents) {
+                int count = pending.get(dependent) - 1;
+                pending.put(dependent, count);
+                if (count == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (resolved != tasks.size()) {
+            throw new IllegalStateException("Startup tasks have a dependency cycle");
+        }
+    }
+}
@@ -49,6 +49,7 @@ import org.fdroid.fdroid.data.Schema;
 import org.fdroid.fdroid.installer.InstallManagerService;
 import org.fdroid.fdroid.net.BluetoothDownloader;
 import org.fdroid.fdroid.net.ConnectivityMonitorService;
+import org.fdroid.fdroid.views.main.LatestSnapshot;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -115,7 +116,7 @@ public class UpdateService extends JobIntentService {
 
     /**
      * For when an automatic process needs to force an index update, like
-     * when the system language changes, or the underlying OS was upgraded.
+     * when the system language changes.
      * This wipes the existing database before running the update!
      */
     public static void forceUpdateRepo(Context context) {
@@ -513,6 +514,7 @@ public class UpdateService extends JobIntentService {
                 Utils.debugLog(TAG, "Not checking app details or compatibility, because repos were up to date.");
             } else {
                 notifyContentProviders();
+                LatestSnapshot.write(this);
 
                 if (fdroidPrefs.isUpdateNotificationEnabled() && !fdroidPrefs.isAutoDownloadEnabled()) {
                     performUpdateNotification();
@@ -56,6 +56,7 @@ import com.google.zxing.encode.Contents;
 import com.google.zxing.encode.QRCodeEncoder;
 
 import org.fdroid.fdroid.compat.FileCompat;
+import org.fdroid.fdroid.data.AntiFeatureFlags;
 import org.fdroid.fdroid.data.App;
 import org.fdroid.fdroid.data.Repo;
 import org.fdroid.fdroid.data.SanitizedFile;
@@ -81,7 +82,6 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Formatter;
@@ -135,6 +135,9 @@ public final class Utils {
 
     public static final String FALLBACK_ICONS_DIR = "icons";
 
+    private static String antiFeatureSQLFilter;
+    private static Set<String> antiFeatureSQLFilterAcceptable;
+
     /*
      * @param dpiMultiplier Lets you grab icons for densities larger or
      * smaller than that of your device by some fraction. Useful, for example,
@@ -485,13 +488,21 @@ public final class Utils {
      * @see Preferences#isBackgroundDownloadAllowed()
      */
     public static void setIconFromRepoOrPM(@NonNull App app, ImageView iv, Context context) {
+        setIconFromUrl(app.getIconUrl(iv.getContext()), iv, context);
+    }
+
+    /**
+     * Like {@link #setIconFromRepoOrPM(App, ImageView, Context)} with an
+     * already resolved {@link App#getIconUrl(Context)}.
+     */
+    public static void setIconFromUrl(@Nullable String iconUrl, ImageView iv, Context context) {
         if (iconRequestOptions == null) {
             iconRequestOptions = new RequestOptions()
                     .error(R.drawable.ic_repo_app_default)
                     .fallback(R.drawable.ic_repo_app_default);
         }
         iconRequestOptions.onlyRetrieveFromCache(!Preferences.get().isBackgroundDownloadAllowed());
-        Glide.with(context).load(app.getIconUrl(iv.getContext())).apply(iconRequestOptions).into(iv);
+        Glide.with(context).load(iconUrl).apply(iconRequestOptions).into(iv);
     }
 
     /**
@@ -949,57 +960,20 @@ public final class Utils {
     }
 
     /**
-     * Returns a list of unwanted anti-features from a list of acceptable anti-features
-     * Basically: all anti-features minus the ones that are okay.
-     */
-    private static List<String> unwantedAntifeatures(Context context, Set<String> acceptableAntifeatures) {
-        List<String> antiFeatures = new ArrayList<>(
-                Arrays.asList(context.getResources().getStringArray(R.array.antifeaturesValues))
-        );
-
-        antiFeatures.removeAll(acceptableAntifeatures);
-
-        return antiFeatures;
-    }
-
-    /**
-     * Returns a SQL filter to use in Cursors to filter out everything with non-acceptable antifeatures
+     * Returns a SQL filter to use in Cursors to filter out everything with non-acceptable antifeatures.
+     * This is only rebuilt when {@link Preferences#PREF_SHOW_ANTI_FEATURES} changes, since that
+     * invalidates the {@link Set} cached in {@link Preferences#showAppsWithAntiFeatures()}.
      *
-     * @param context
-     * @return String
+     * @see AntiFeatureFlags
      */
-    public static String getAntifeatureSQLFilter(Context context) {
-        List<String> unwantedAntifeatures = Utils.unwantedAntifeatures(
-                context,
-                Preferences.get().showAppsWithAntiFeatures()
-        );
-
-        StringBuilder antiFeatureFilter = new StringBuilder(Schema.AppMetadataTable.NAME)
-                .append(".")
-                .append(Schema.AppMetadataTable.Cols.ANTI_FEATURES)
-                .append(" IS NULL");
-
-        if (!unwantedAntifeatures.isEmpty()) {
-            antiFeatureFilter.append(" OR (");
-
-            for (int i = 0; i < unwantedAntifeatures.size(); i++) {
-                String unwantedAntifeature = unwantedAntifeatures.get(i);
-
-                if (i > 0) {
-                    antiFeatureFilter.append(" AND ");
-                }
-
-                antiFeatureFilter.append(Schema.AppMetadataTable.NAME)
-                        .append(".")
-                        .append(Schema.AppMetadataTable.Cols.ANTI_FEATURES)
-                        .append(" NOT LIKE '%")
-                        .append(unwantedAntifeature)
-                        .append("%'");
-            }
-
-            antiFeatureFilter.append(")");
-        }
-
-        return antiFeatureFilter.toString();
+    public static synchronized String getAntifeatureSQLFilter(Context context) {
+        Set<String> acceptableAntifeatures = Preferences.get().showAppsWithAntiFeatures();
+        if (antiFeatureSQLFilter == null || acceptableAntifeatures != antiFeatureSQLFilterAcceptable) {
+            antiFeatureSQLFilter = "(" + Schema.AppMetadataTable.NAME + "."
+                    + Schema.AppMetadataTable.Cols.ANTI_FEATURE_FLAGS + " & "
+                    + AntiFeatureFlags.getUnwantedMask(acceptableAntifeatures) + ") = 0";
+            antiFeatureSQLFilterAcceptable = acceptableAntifeatures;
+        }
+        return antiFeatureSQLFilter;
     }
 }
@@ -0,0 +1,93 @@
+package org.fdroid.fdroid.data;
+
+import org.fdroid.fdroid.Utils;
+
+import java.util.Collection;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Anti-Features of an app as a bitmask, stored in
+ * {@link Schema.AppMetadataTable.Cols#ANTI_FEATURE_FLAGS} when the app is
+ * inserted, so that the app lists can filter them with a single integer test
+ * instead of a {@code NOT LIKE} for each Anti-Feature on
+ * {@link Schema.AppMetadataTable.Cols#ANTI_FEATURES}.
+ * <p>
+ * The bit of each Anti-Feature is its position in {@link #KNOWN}, so these
+ * are stored in the database and must never be reordered.  New ones can be
+ * appended, but then existing rows need to be recalculated in a migration in
+ * {@link DBHelper}.  Any Anti-Feature that is not in {@link #KNOWN} sets
+ * {@link #OTHERS}, matching {@link App#isDisabledByAntiFeatures(android.content.Context)}.
+ */
+public final class AntiFeatureFlags {
+
+    /**
+     * The values of {@code R.array.antifeaturesValues}, except for
+     * {@link #OTHERS_KEY}.  These are not read from the resources, since the
+     * positions are stored in the database, {@code AntiFeatureFlagsTest}
+     * makes sure both stay the same.
+     */
+    static final String[] KNOWN = {
+            "Ads",
+            "Tracking",
+            "NonFreeAdd",
+            "NonFreeNet",
+            "NonFreeDep",
+            "UpstreamNonFree",
+            "NonFreeAssets",
+            "DisabledAlgorithm",
+            "KnownVuln",
+            "NoSourceSince",
+    };
+
+    /**
+     * The value of {@code R.string.antiothers_key}.
+     */
+    static final String OTHERS_KEY = "_anti_others_";
+
+    static final int OTHERS = 1 << 30;
+
+    private AntiFeatureFlags() {
+    }
+
+    /**
+     * @param antiFeatures the comma separated Anti-Features of an app, as stored in the database
+     */
+    public static int fromCommaSeparated(@Nullable String antiFeatures) {
+        int flags = 0;
+        String[] values = Utils.parseCommaSeparatedString(antiFeatures);
+        if (values == null) {
+            return flags;
+        }
+        for (String value : values) {
+            flags |= getFlag(value);
+        }
+        return flags;
+    }
+
+    /**
+     * @param acceptable the Anti-Features that the user has chosen to show, including {@link #OTHERS_KEY}
+     * @return the flags of all the Anti-Features which should be filtered out
+     */
+    public static int getUnwantedMask(Collection<String> acceptable) {
+        int mask = 0;
+        for (String key : KNOWN) {
+            if (!acceptable.contains(key)) {
+                mask |= getFlag(key);
+            }
+        }
+        if (!acceptable.contains(OTHERS_KEY)) {
+            mask |= OTHERS;
+        }
+        return mask;
+    }
+
+    private static int getFlag(String antiFeature) {
+        for (int i = 0; i < KNOWN.length; i++) {
+            if (KNOWN[i].equals(antiFeature)) {
+                return 1 << i;
+            }
+        }
+        return OTHERS;
+    }
+}
@@ -26,6 +26,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import org.apache.commons.io.filefilter.RegexFileFilter;
 import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.R;
+import org.fdroid.fdroid.ScreenshotThumbnails;
 import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.data.Schema.AppMetadataTable.Cols;
 import org.xmlpull.v1.XmlPullParser;
@@ -417,17 +418,21 @@ public class App extends ValueObject implements Comparable<App>, Parcelable {
      * could in the cache, and files can disappear from the cache at any time,
      * this needs to be quite defensive ensuring that {@code apkFile} still
      * exists.
+     *
+     * @param hash the hash of the installed APK if it is already known,
+     *             otherwise the whole APK is hashed
      */
     @Nullable
-    public static App getInstance(Context context, PackageManager pm, InstalledApp installedApp, String packageName)
+    public static App getInstance(Context context, PackageManager pm, @Nullable String hashType,
+                                  @Nullable String hash, String packageName)
             throws CertificateEncodingException, IOException, PackageManager.NameNotFoundException {
         App app = new App();
         PackageInfo packageInfo = pm.getPackageInfo(packageName, PackageManager.GET_PERMISSIONS);
         SanitizedFile apkFile = SanitizedFile.knownSanitized(packageInfo.applicationInfo.publicSourceDir);
         app.installedApk = new Apk();
-        if (installedApp != null) {
-            app.installedApk.hashType = installedApp.getHashType();
-            app.installedApk.hash = installedApp.getHash();
+        if (!TextUtils.isEmpty(hash)) {
+            app.installedApk.hashType = hashType;
+            app.installedApk.hash = hash;
         } else if (apkFile.canRead()) {
             String hashType = "sha256";
             String hash = Utils.getFileHexDigest(apkFile, hashType);
@@ -727,14 +732,14 @@ public class App extends ValueObject implements Comparable<App>, Parcelable {
      */
     @NonNull
     public Uri getShareUri(Context context) {
-        Repo repo = RepoProvider.Helper.findById(context, repoId);
+        Repo repo = RepoCache.get(context, repoId);
         return Uri.parse(repo.address).buildUpon()
                 .path(String.format("/packages/%s/", packageName))
                 .build();
     }
 
     public String getIconUrl(Context context) {
-        Repo repo = RepoProvider.Helper.findById(context, repoId);
+        Repo repo = RepoCache.get(context, repoId);
         if (TextUtils.isEmpty(iconUrl)) {
             if (TextUtils.isEmpty(iconFromApk)) {
                 return null;
@@ -759,7 +764,7 @@ public class App extends ValueObject implements Comparable<App>, Parcelable {
         if (TextUtils.isEmpty(featureGraphic)) {
             return null;
         }
-        Repo repo = RepoProvider.Helper.findById(context, repoId);
+        Repo repo = RepoCache.get(context, repoId);
         return repo.getFileUrl(packageName, featureGraphic);
     }
 
@@ -767,7 +772,7 @@ public class App extends ValueObject implements Comparable<App>, Parcelable {
         if (TextUtils.isEmpty(promoGraphic)) {
             return null;
         }
-        Repo repo = RepoProvider.Helper.findById(context, repoId);
+        Repo repo = RepoCache.get(context, repoId);
         return repo.getFileUrl(packageName, promoGraphic);
     }
 
@@ -775,12 +780,24 @@ public class App extends ValueObject implements Comparable<App>, Parcelable {
         if (TextUtils.isEmpty(tvBanner)) {
             return null;
         }
-        Repo repo = RepoProvider.Helper.findById(context, repoId);
+        Repo repo = RepoCache.get(context, repoId);
         return repo.getFileUrl(packageName, tvBanner);
     }
 
     public String[] getAllScreenshots(Context context) {
-        Repo repo = RepoProvider.Helper.findById(context, repoId);
+        return getScreenshotUrls(context, 0);
+    }
+
+    /**
+     * Like {@link #getAllScreenshots(Context)}, but the thumbnails to show in
+     * the gallery if the repo has them, see {@link ScreenshotThumbnails}.
+     */
+    public String[] getAllScreenshotThumbnails(Context context) {
+        return getScreenshotUrls(context, ScreenshotThumbnails.getThumbnailHeight(context, repoId));
+    }
+
+    private String[] getScreenshotUrls(Context context, int thumbnailHeight) {
+        Repo repo = RepoCache.get(context, repoId);
         ArrayList<String> list = new ArrayList<>();
         if (phoneScreenshots != null) {
             Collections.addAll(list, phoneScreenshots);
@@ -800,7 +817,7 @@ public class App extends ValueObject implements Comparable<App>, Parcelable {
         String[] result = new String[list.size()];
         int i = 0;
         for (String url : list) {
-            result[i] = repo.getFileUrl(packageName, url);
+            result[i] = repo.getFileUrl(packageName, ScreenshotThumbnails.getThumbnailPath(url, thumbnailHeight));
             i++;
         }
         return result;
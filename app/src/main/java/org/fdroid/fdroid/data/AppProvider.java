@@ -5,10 +5,13 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.CancellationSignal;
 import android.text.TextUtils;
 import android.util.Log;
 
+import org.fdroid.fdroid.CompatibilityChecker;
 import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.data.Schema.ApkAntiFeatureJoinTable;
@@ -53,6 +56,11 @@ public class AppProvider extends FDroidProvider {
 
     private static final String TAG = "AppProvider";
 
+    /**
+     * After this many days, don't consider showing the "New" tag next to an app.
+     */
+    public static final int DAYS_TO_CONSIDER_NEW = 14;
+
     public static final class Helper {
 
         private Helper() {
@@ -130,6 +138,42 @@ public class AppProvider extends FDroidProvider {
             context.getContentResolver().update(calcSuggestedApksUri(), null, null, null);
         }
 
+        /**
+         * The first half of {@link #calcSuggestedApks(Context)}, for apps which
+         * specify an upstream version code.  Together with
+         * {@link #calcSuggestedApksFromLatest(Context)} this lets long running
+         * recalculations report progress and be stopped in between.
+         */
+        public static void calcSuggestedApksFromUpstream(Context context) {
+            Uri uri = calcSuggestedApksUri().buildUpon()
+                    .appendQueryParameter(QUERY_STEP, STEP_UPSTREAM)
+                    .build();
+            context.getContentResolver().update(uri, null, null, null);
+        }
+
+        /**
+         * The second half of {@link #calcSuggestedApks(Context)}, this must run
+         * after {@link #calcSuggestedApksFromUpstream(Context)}.
+         */
+        public static void calcSuggestedApksFromLatest(Context context) {
+            Uri uri = calcSuggestedApksUri().buildUpon()
+                    .appendQueryParameter(QUERY_STEP, STEP_LATEST)
+                    .build();
+            context.getContentResolver().update(uri, null, null, null);
+        }
+
+        /**
+         * Run {@link CompatibilityChecker} again on all the apks already in
+         * the database, then update which apps are compatible and which
+         * versions are suggested.  This is for when the device itself changed,
+         * e.g. the OS was upgraded, so it is all local: nothing is downloaded
+         * and no installed APKs are hashed again.
+         */
+        public static void recalculateCompatibility(Context context) {
+            Uri uri = Uri.withAppendedPath(AppProvider.getContentUri(), PATH_CALC_COMPATIBILITY);
+            context.getContentResolver().update(uri, null, null, null);
+        }
+
         public static List<App> findCanUpdate(Context context, String[] projection) {
             return cursorToList(context.getContentResolver().query(AppProvider.getCanUpdateUri(), projection, null, null, null));
         }
@@ -454,6 +498,12 @@ public class AppProvider extends FDroidProvider {
     private static final String PATH_HIGHEST_PRIORITY = "highestPriority";
     private static final String PATH_CALC_PREFERRED_METADATA = "calcPreferredMetadata";
     private static final String PATH_CALC_SUGGESTED_APKS = "calcNonRepoDetailsFromIndex";
+    private static final String PATH_CALC_COMPATIBILITY = "calcCompatibility";
+
+    private static final String QUERY_STEP = "step";
+    private static final String QUERY_LIMIT = "limit";
+    private static final String STEP_UPSTREAM = "upstream";
+    private static final String STEP_LATEST = "latest";
     private static final String PATH_TOP_FROM_CATEGORY = "topFromCategory";
     private static final String PATH_INSTALLED_WITH_KNOWN_VULNS = "installedWithKnownVulns";
 
@@ -470,6 +520,7 @@ public class AppProvider extends FDroidProvider {
     private static final int CALC_PREFERRED_METADATA = HIGHEST_PRIORITY + 1;
     private static final int TOP_FROM_CATEGORY = CALC_PREFERRED_METADATA + 1;
     private static final int INSTALLED_WITH_KNOWN_VULNS = TOP_FROM_CATEGORY + 1;
+    private static final int CALC_COMPATIBILITY = INSTALLED_WITH_KNOWN_VULNS + 1;
 
     static {
         MATCHER.addURI(getAuthority(), null, CODE_LIST);
@@ -488,6 +539,7 @@ public class AppProvider extends FDroidProvider {
         MATCHER.addURI(getAuthority(), PATH_CALC_PREFERRED_METADATA, CALC_PREFERRED_METADATA);
         MATCHER.addURI(getAuthority(), PATH_TOP_FROM_CATEGORY + "/#/*", TOP_FROM_CATEGORY);
         MATCHER.addURI(getAuthority(), PATH_INSTALLED_WITH_KNOWN_VULNS, INSTALLED_WITH_KNOWN_VULNS);
+        MATCHER.addURI(getAuthority(), PATH_CALC_COMPATIBILITY, CALC_COMPATIBILITY);
     }
 
     public static Uri getContentUri() {
@@ -594,6 +646,15 @@ public class AppProvider extends FDroidProvider {
         return builder.build();
     }
 
+    /**
+     * Only return the first {@code limit} apps of what {@code uri} would return.
+     */
+    public static Uri getLimitedUri(Uri uri, int limit) {
+        return uri.buildUpon()
+                .appendQueryParameter(QUERY_LIMIT, String.valueOf(limit))
+                .build();
+    }
+
     public static Uri getSearchUri(Repo repo, String query) {
         return getContentUri().buildUpon()
                 .appendPath(PATH_SEARCH_REPO)
@@ -779,6 +840,17 @@ public class AppProvider extends FDroidProvider {
 
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String customSelection, String[] selectionArgs, String sortOrder) {
+        return query(uri, projection, customSelection, selectionArgs, sortOrder, null);
+    }
+
+    /**
+     * Queries for app lists can be cancelled, e.g. when the search terms
+     * changed while the previous search is still running.  Any query can be
+     * limited to the first rows with {@link #getLimitedUri(Uri, int)}.
+     */
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String customSelection, String[] selectionArgs,
+                        String sortOrder, @Nullable CancellationSignal cancellationSignal) {
         AppQuerySelection selection = new AppQuerySelection(customSelection, selectionArgs);
 
         // Queries which are for the main list of apps should not include swap apps.
@@ -886,7 +958,12 @@ public class AppProvider extends FDroidProvider {
             selection = selection.add(queryHighestPriority());
         }
 
-        return runQuery(uri, selection, projection, includeSwap, sortOrder, limit);
+        String limitParameter = uri.getQueryParameter(QUERY_LIMIT);
+        if (limitParameter != null) {
+            limit = Integer.parseInt(limitParameter);
+        }
+
+        return runQuery(uri, selection, projection, includeSwap, sortOrder, limit, cancellationSignal);
     }
 
     /**
@@ -900,6 +977,11 @@ public class AppProvider extends FDroidProvider {
      * a {@code sortOrder} is built out into a {@code sortOrder} that includes localized sorting.
      */
     protected Cursor runQuery(Uri uri, AppQuerySelection selection, String[] projection, boolean includeSwap, String sortOrder, int limit) {
+        return runQuery(uri, selection, projection, includeSwap, sortOrder, limit, null);
+    }
+
+    private Cursor runQuery(Uri uri, AppQuerySelection selection, String[] projection, boolean includeSwap,
+                            String sortOrder, int limit, @Nullable CancellationSignal cancellationSignal) {
         if (!includeSwap) {
             selection = selection.add(queryExcludeSwap());
         }
@@ -914,7 +996,7 @@ public class AppProvider extends FDroidProvider {
         query.addOrderBy(sortOrder);
         query.addLimit(limit);
 
-        Cursor cursor = LoggingQuery.rawQuery(db(), query.toString(), query.getArgs());
+        Cursor cursor = LoggingQuery.rawQuery(db(), query.toString(), query.getArgs(), cancellationSignal);
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
         return cursor;
     }
@@ -945,9 +1027,13 @@ public class AppProvider extends FDroidProvider {
 
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
-        long packageId = PackageIdProvider.Helper.ensureExists(getContext(), values.getAsString(Cols.Package.PACKAGE_NAME));
+        // RepoPersister looks up the ids of all packages at once, see IndexIdResolver
+        if (!values.containsKey(Cols.PACKAGE_ID)) {
+            long packageId = PackageIdProvider.Helper.ensureExists(getContext(),
+                    values.getAsString(Cols.Package.PACKAGE_NAME));
+            values.put(Cols.PACKAGE_ID, packageId);
+        }
         values.remove(Cols.Package.PACKAGE_NAME);
-        values.put(Cols.PACKAGE_ID, packageId);
 
         if (!values.containsKey(Cols.DESCRIPTION) || values.getAsString(Cols.DESCRIPTION) == null) {
             // the current structure assumes that description is always present and non-null
@@ -957,15 +1043,24 @@ public class AppProvider extends FDroidProvider {
         // Trim these to avoid unwanted newlines in the UI
         values.put(Cols.SUMMARY, values.getAsString(Cols.SUMMARY).trim());
         values.put(Cols.NAME, values.getAsString(Cols.NAME).trim());
+        values.put(Cols.ANTI_FEATURE_FLAGS,
+                AntiFeatureFlags.fromCommaSeparated(values.getAsString(Cols.ANTI_FEATURES)));
 
         String[] categories = null;
+        String[] categoryIds = null;
         boolean saveCategories = false;
+        boolean saveCategoryIds = false;
         if (values.containsKey(Cols.ForWriting.Categories.CATEGORIES)) {
             // Hold onto these categories, so that after we have an ID to reference the newly inserted
             // app metadata we can then specify its categories.
             saveCategories = true;
             categories = Utils.parseCommaSeparatedString(values.getAsString(Cols.ForWriting.Categories.CATEGORIES));
             values.remove(Cols.ForWriting.Categories.CATEGORIES);
+        } else if (values.containsKey(Cols.ForWriting.Categories.CATEGORY_IDS)) {
+            saveCategoryIds = true;
+            categoryIds = Utils.parseCommaSeparatedString(
+                    values.getAsString(Cols.ForWriting.Categories.CATEGORY_IDS));
+            values.remove(Cols.ForWriting.Categories.CATEGORY_IDS);
         }
 
         long appMetadataId = db().insertOrThrow(getTableName(), null, values);
@@ -975,29 +1070,41 @@ public class AppProvider extends FDroidProvider {
 
         if (saveCategories) {
             ensureCategories(categories, appMetadataId);
+        } else if (saveCategoryIds) {
+            saveCategoryIds(categoryIds, appMetadataId);
         }
 
         return getSpecificAppUri(values.getAsString(PackageTable.Cols.PACKAGE_NAME), values.getAsLong(Cols.REPO_ID));
     }
 
     protected void ensureCategories(String[] categories, long appMetadataId) {
-        db().delete(getCatJoinTableName(), CatJoinTable.Cols.APP_METADATA_ID + " = ?", new String[]{Long.toString(appMetadataId)});
+        String[] categoryIds = null;
         if (categories != null) {
+            categoryIds = new String[categories.length];
+            for (int i = 0; i < categories.length; i++) {
+                categoryIds[i] = Long.toString(CategoryProvider.Helper.ensureExists(getContext(), categories[i]));
+            }
+        }
+        saveCategoryIds(categoryIds, appMetadataId);
+    }
+
+    private void saveCategoryIds(String[] categoryIds, long appMetadataId) {
+        db().delete(getCatJoinTableName(), CatJoinTable.Cols.APP_METADATA_ID + " = ?", new String[]{Long.toString(appMetadataId)});
+        if (categoryIds != null) {
             Set<String> categoriesSet = new HashSet<>();
-            for (String categoryName : categories) {
+            for (String categoryId : categoryIds) {
 
-                // There is nothing stopping a server repeating a category name in the metadata of
-                // an app. In order to prevent unique constraint violations, only insert once into
+                // There is nothing stopping a server repeating a category in the metadata of an
+                // app. In order to prevent unique constraint violations, only insert once into
                 // the join table.
-                if (categoriesSet.contains(categoryName)) {
+                if (categoriesSet.contains(categoryId)) {
                     continue;
                 }
 
-                categoriesSet.add(categoryName);
-                long categoryId = CategoryProvider.Helper.ensureExists(getContext(), categoryName);
+                categoriesSet.add(categoryId);
                 ContentValues categoryValues = new ContentValues(2);
                 categoryValues.put(CatJoinTable.Cols.APP_METADATA_ID, appMetadataId);
-                categoryValues.put(CatJoinTable.Cols.CATEGORY_ID, categoryId);
+                categoryValues.put(CatJoinTable.Cols.CATEGORY_ID, Long.parseLong(categoryId));
                 db().insert(getCatJoinTableName(), null, categoryValues);
             }
             getContext().getContentResolver().notifyChange(CategoryProvider.getContentUri(), null);
@@ -1006,6 +1113,17 @@ public class AppProvider extends FDroidProvider {
 
     @Override
     public int update(@NonNull Uri uri, ContentValues values, String where, String[] whereArgs) {
+        if (MATCHER.match(uri) == CALC_COMPATIBILITY) {
+            int changed = updateApkCompatibility();
+            if (changed > 0) {
+                updateCompatibleFlags();
+                updateSuggestedApks();
+                getContext().getContentResolver().notifyChange(getContentUri(), null);
+                getContext().getContentResolver().notifyChange(getCanUpdateUri(), null);
+            }
+            return changed;
+        }
+
         if (MATCHER.match(uri) != CALC_SUGGESTED_APKS) {
             throw new UnsupportedOperationException("Update not supported for " + uri + ".");
         }
@@ -1014,6 +1132,10 @@ public class AppProvider extends FDroidProvider {
         if (segments.size() > 1) {
             String packageName = segments.get(1);
             updateSuggestedApk(packageName);
+        } else if (STEP_UPSTREAM.equals(uri.getQueryParameter(QUERY_STEP))) {
+            updateSuggestedFromUpstream(null);
+        } else if (STEP_LATEST.equals(uri.getQueryParameter(QUERY_STEP))) {
+            updateSuggestedFromLatest(null);
         } else {
             updateSuggestedApks();
         }
@@ -1025,6 +1147,57 @@ public class AppProvider extends FDroidProvider {
         updatePreferredMetadata();
         updateCompatibleFlags();
         updateSuggestedFromUpstream(null);
+        db().execSQL(getUpdateLatestRankSql(getTableName()));
+    }
+
+    /**
+     * The Latest tab wants the most complete and most recently updated apps
+     * first.  Rather than sorting by a dozen expressions every time the tab
+     * is shown, all of those criteria are combined into one number when a
+     * repo is committed, so that the tab can sort by the indexed
+     * {@link Cols#LATEST_RANK} alone.  From most to least significant, an
+     * app ranks higher when it:
+     * <ol>
+     * <li>is localized into one of the user's languages</li>
+     * <li>has a name</li>
+     * <li>has an icon</li>
+     * <li>has a summary</li>
+     * <li>has a description</li>
+     * <li>has any screenshots or graphics</li>
+     * <li>was added within the last {@link #DAYS_TO_CONSIDER_NEW} days</li>
+     * <li>has "What's New" text</li>
+     * <li>was updated more recently</li>
+     * <li>was added earlier</li>
+     * </ol>
+     * The flags take the top bits, the days since the epoch of
+     * {@link Cols#LAST_UPDATED} and {@link Cols#ADDED} take 20 bits each.
+     */
+    static String getUpdateLatestRankSql(String table) {
+        final String lastUpdatedDays = "COALESCE(CAST(julianday("
+                + Cols.LAST_UPDATED + ") - 2440587.5 AS INTEGER), 0)";
+        final String addedDays = "COALESCE(CAST(julianday(" + Cols.ADDED + ") - 2440587.5 AS INTEGER), 0)";
+        final String flags = "(COALESCE(" + Cols.IS_LOCALIZED + ", 0) = 1) * 128"
+                + " + (" + Cols.NAME + " IS NOT NULL) * 64"
+                + " + (" + Cols.ICON + " IS NOT NULL OR " + Cols.ICON_URL + " IS NOT NULL) * 32"
+                + " + (" + Cols.SUMMARY + " IS NOT NULL) * 16"
+                + " + (" + Cols.DESCRIPTION + " IS NOT NULL) * 8"
+                + " + (" + Cols.PHONE_SCREENSHOTS + " IS NOT NULL"
+                + "    OR " + Cols.SEVEN_INCH_SCREENSHOTS + " IS NOT NULL"
+                + "    OR " + Cols.TEN_INCH_SCREENSHOTS + " IS NOT NULL"
+                + "    OR " + Cols.TV_SCREENSHOTS + " IS NOT NULL"
+                + "    OR " + Cols.WEAR_SCREENSHOTS + " IS NOT NULL"
+                + "    OR " + Cols.FEATURE_GRAPHIC + " IS NOT NULL"
+                + "    OR " + Cols.PROMO_GRAPHIC + " IS NOT NULL"
+                + "    OR " + Cols.TV_BANNER + " IS NOT NULL) * 4"
+                + " + (CASE WHEN date(" + Cols.ADDED + ") >= date(" + Cols.LAST_UPDATED + ")"
+                + "    AND date('now', '-" + DAYS_TO_CONSIDER_NEW + " days')"
+                + "      < date(" + Cols.LAST_UPDATED + ")"
+                + "    THEN 1 ELSE 0 END) * 2"
+                + " + (" + Cols.WHATSNEW + " IS NOT NULL)";
+        return "UPDATE " + table + " SET " + Cols.LATEST_RANK + " = "
+                + "(" + flags + ") * 1099511627776"
+                + " + " + lastUpdatedDays + " * 1048576"
+                + " + (1048575 - " + addedDays + ")";
     }
 
     /**
@@ -1077,6 +1250,70 @@ public class AppProvider extends FDroidProvider {
         db().execSQL(updateSql);
     }
 
+    /**
+     * Check each stored apk's requirements against this device again, only
+     * writing the rows where the result changed, all in one transaction.
+     *
+     * @return the number of apks whose compatibility changed
+     */
+    private int updateApkCompatibility() {
+        Utils.Profiler profiler = new Utils.Profiler(TAG);
+        CompatibilityChecker checker = new CompatibilityChecker(getContext());
+        final String[] projection = {
+                ApkTable.Cols.ROW_ID,
+                ApkTable.Cols.MIN_SDK_VERSION,
+                ApkTable.Cols.MAX_SDK_VERSION,
+                ApkTable.Cols.FEATURES,
+                ApkTable.Cols.NATIVE_CODE,
+                ApkTable.Cols.IS_COMPATIBLE,
+                ApkTable.Cols.INCOMPATIBLE_REASONS,
+        };
+
+        int checked = 0;
+        int changed = 0;
+        SQLiteDatabase db = db();
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.query(getApkTableName(), projection, null, null, null, null, null);
+            try {
+                ContentValues values = new ContentValues(2);
+                String[] whereArgs = new String[1];
+                while (cursor.moveToNext()) {
+                    checked++;
+                    Apk apk = new Apk();
+                    if (!cursor.isNull(1)) {
+                        apk.minSdkVersion = cursor.getInt(1);
+                    }
+                    if (!cursor.isNull(2)) {
+                        apk.maxSdkVersion = cursor.getInt(2);
+                    }
+                    apk.features = Utils.parseCommaSeparatedString(cursor.getString(3));
+                    apk.nativecode = Utils.parseCommaSeparatedString(cursor.getString(4));
+                    List<String> reasons = checker.getIncompatibleReasons(apk);
+                    boolean compatible = reasons.isEmpty();
+                    String incompatibleReasons = compatible ? null
+                            : Utils.serializeCommaSeparatedString(reasons.toArray(new String[reasons.size()]));
+                    if (compatible == (cursor.getInt(5) == 1)
+                            && TextUtils.equals(incompatibleReasons, cursor.getString(6))) {
+                        continue;
+                    }
+                    values.put(ApkTable.Cols.IS_COMPATIBLE, compatible ? 1 : 0);
+                    values.put(ApkTable.Cols.INCOMPATIBLE_REASONS, incompatibleReasons);
+                    whereArgs[0] = Long.toString(cursor.getLong(0));
+                    db.update(getApkTableName(), values, ApkTable.Cols.ROW_ID + " = ?", whereArgs);
+                    changed++;
+                }
+            } finally {
+                cursor.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        profiler.log("Rechecked compatibility of " + checked + " apks, " + changed + " changed");
+        return changed;
+    }
+
     /**
      * For each app, we want to set the isCompatible flag to 1 if any of the apks we know
      * about are compatible, and 0 otherwise.
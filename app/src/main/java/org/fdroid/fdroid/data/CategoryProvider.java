@@ -118,10 +118,14 @@ public class CategoryProvider extends FDroidProvider {
     private static final String PATH_CATEGORY_NAME = "categoryName";
     private static final String PATH_ALL_CATEGORIES = "all";
     private static final String PATH_CATEGORY_ID = "categoryId";
+    private static final String PATH_ALL_CATEGORY_IDS = "allIds";
+
+    private static final int CODE_ALL_IDS = CODE_SINGLE + 1;
 
     static {
         MATCHER.addURI(getAuthority(), PATH_CATEGORY_NAME + "/*", CODE_SINGLE);
         MATCHER.addURI(getAuthority(), PATH_ALL_CATEGORIES, CODE_LIST);
+        MATCHER.addURI(getAuthority(), PATH_ALL_CATEGORY_IDS, CODE_ALL_IDS);
     }
 
     static Uri getContentUri() {
@@ -132,6 +136,15 @@ public class CategoryProvider extends FDroidProvider {
         return Uri.withAppendedPath(getContentUri(), PATH_ALL_CATEGORIES);
     }
 
+    /**
+     * Unlike {@link #getAllCategories()}, this includes categories which no app is in
+     * any more.  Used to look up the ids of all categories at once during repo updates,
+     * see {@link IndexIdResolver}.
+     */
+    static Uri getAllCategoryIdsUri() {
+        return Uri.withAppendedPath(getContentUri(), PATH_ALL_CATEGORY_IDS);
+    }
+
     public static Uri getCategoryUri(String categoryName) {
         return getContentUri()
                 .buildUpon()
@@ -201,6 +214,9 @@ public class CategoryProvider extends FDroidProvider {
                 onlyCategoriesWithApps = true;
                 break;
 
+            case CODE_ALL_IDS:
+                break;
+
             default:
                 throw new UnsupportedOperationException("Invalid URI for content provider: " + uri);
         }
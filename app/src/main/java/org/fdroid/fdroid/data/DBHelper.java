@@ -56,6 +56,8 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
+import androidx.annotation.WorkerThread;
+
 /**
  * This is basically a singleton used to represent the database at the core
  * of all of the {@link android.content.ContentProvider}s used at the core
@@ -173,6 +175,8 @@ public class DBHelper extends SQLiteOpenHelper {
             + AppMetadataTable.Cols.WEAR_SCREENSHOTS + " string,"
             + AppMetadataTable.Cols.IS_APK + " boolean,"
             + AppMetadataTable.Cols.IS_LOCALIZED + " boolean,"
+            + AppMetadataTable.Cols.ANTI_FEATURE_FLAGS + " integer not null default 0,"
+            + AppMetadataTable.Cols.LATEST_RANK + " integer not null default 0,"
             + "primary key(" + AppMetadataTable.Cols.PACKAGE_ID + ", " + AppMetadataTable.Cols.REPO_ID + "));";
 
     private static final String CREATE_TABLE_APP_PREFS = "CREATE TABLE " + AppPrefsTable.NAME
@@ -228,13 +232,28 @@ public class DBHelper extends SQLiteOpenHelper {
             + "primary key(" + ApkAntiFeatureJoinTable.Cols.APK_ID + ", " + ApkAntiFeatureJoinTable.Cols.ANTI_FEATURE_ID + ") "
             + " );";
 
-    protected static final int DB_VERSION = 85;
+    protected static final int DB_VERSION = 87;
+
+    /**
+     * How much memory SQLite may use for caching pages, in KiB.  The default is
+     * 2000 KiB, which does not even hold the indexes of the app and apk tables
+     * once a few repos are enabled.
+     */
+    private static final int CACHE_SIZE_KIB = 8 * 1024;
+
+    /**
+     * The value {@code PRAGMA auto_vacuum} returns for incremental vacuuming.
+     */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
 
     private final Context context;
 
     DBHelper(Context context) {
         super(context, DATABASE_NAME, null, DB_VERSION);
         this.context = context.getApplicationContext();
+        // Lets the lists keep reading while a repo update is being committed,
+        // see TempAppProvider#commitTable(long)
+        setWriteAheadLoggingEnabled(true);
     }
 
     /**
@@ -255,6 +274,21 @@ public class DBHelper extends SQLiteOpenHelper {
         return instance;
     }
 
+    /**
+     * These only apply to the connection which does all of the writing, the
+     * connections only used for reading keep the defaults.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.execSQL("PRAGMA cache_size = -" + CACHE_SIZE_KIB);
+        // With write-ahead logging, this still cannot corrupt the database,
+        // it only skips syncing the log to disk after each transaction.
+        db.execSQL("PRAGMA synchronous = NORMAL");
+        // New databases get this right away, existing ones only after the
+        // next VACUUM, see runMaintenance(Context)
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
 
@@ -459,6 +493,51 @@ public class DBHelper extends SQLiteOpenHelper {
         switchRepoArchivePriorities(db, oldVersion);
         deleteOldIconUrls(db, oldVersion);
         addOpenCollective(db, oldVersion);
+        addAntiFeatureFlags(db, oldVersion);
+        addLatestRank(db, oldVersion);
+    }
+
+    private void addLatestRank(SQLiteDatabase db, int oldVersion) {
+        if (oldVersion >= 87) {
+            return;
+        }
+
+        if (!columnExists(db, AppMetadataTable.NAME, AppMetadataTable.Cols.LATEST_RANK)) {
+            Utils.debugLog(TAG, "Adding " + AppMetadataTable.Cols.LATEST_RANK + " field to "
+                    + AppMetadataTable.NAME + " table in db.");
+            db.execSQL("alter table " + AppMetadataTable.NAME + " add column "
+                    + AppMetadataTable.Cols.LATEST_RANK + " integer not null default 0;");
+        }
+        db.execSQL(AppProvider.getUpdateLatestRankSql(AppMetadataTable.NAME));
+        ensureIndexes(db);
+    }
+
+    private void addAntiFeatureFlags(SQLiteDatabase db, int oldVersion) {
+        if (oldVersion >= 86) {
+            return;
+        }
+
+        if (!columnExists(db, AppMetadataTable.NAME, AppMetadataTable.Cols.ANTI_FEATURE_FLAGS)) {
+            Utils.debugLog(TAG, "Adding " + AppMetadataTable.Cols.ANTI_FEATURE_FLAGS + " field to "
+                    + AppMetadataTable.NAME + " table in db.");
+            db.execSQL("alter table " + AppMetadataTable.NAME + " add column "
+                    + AppMetadataTable.Cols.ANTI_FEATURE_FLAGS + " integer not null default 0;");
+        }
+
+        String[] projection = {AppMetadataTable.Cols.ROW_ID, AppMetadataTable.Cols.ANTI_FEATURES};
+        Cursor cursor = db.query(AppMetadataTable.NAME, projection,
+                AppMetadataTable.Cols.ANTI_FEATURES + " IS NOT NULL", null, null, null, null);
+        try {
+            ContentValues values = new ContentValues(1);
+            while (cursor.moveToNext()) {
+                values.put(AppMetadataTable.Cols.ANTI_FEATURE_FLAGS,
+                        AntiFeatureFlags.fromCommaSeparated(cursor.getString(1)));
+                db.update(AppMetadataTable.NAME, values, AppMetadataTable.Cols.ROW_ID + " = ?",
+                        new String[]{Long.toString(cursor.getLong(0))});
+            }
+        } finally {
+            cursor.close();
+        }
     }
 
     private void addOpenCollective(SQLiteDatabase db, int oldVersion) {
@@ -1366,6 +1445,62 @@ public class DBHelper extends SQLiteOpenHelper {
         }
     }
 
+    /**
+     * Updates the statistics SQLite uses for choosing indexes, then gives the
+     * pages that are not needed anymore back to the file system.  Each repo
+     * update leaves plenty of those behind, since it copies the app and apk
+     * tables into {@link TempAppProvider}'s tables and drops those afterwards.
+     * <p>
+     * Databases created before {@code auto_vacuum} was set in
+     * {@link #onConfigure(SQLiteDatabase)} need one full {@code VACUUM} to switch
+     * to incremental vacuuming, which also rewrites the whole file, so this must
+     * only be run when the device is not otherwise in use.
+     */
+    @WorkerThread
+    public static void runMaintenance(Context context) {
+        SQLiteDatabase db = getInstance(context).getWritableDatabase();
+        long startTime = System.currentTimeMillis();
+        db.execSQL("ANALYZE");
+        if (getAutoVacuum(db) == AUTO_VACUUM_INCREMENTAL) {
+            // This returns no rows, and only frees the pages while being stepped
+            // through, so the cursor must still be moved.  Running it in a
+            // transaction makes sure it uses the connection for writing.
+            db.beginTransaction();
+            try {
+                int freePages = getFreelistCount(db);
+                Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null);
+                cursor.moveToFirst();
+                cursor.close();
+                db.setTransactionSuccessful();
+                Utils.debugLog(TAG, "Freed " + (freePages - getFreelistCount(db)) + " pages");
+            } finally {
+                db.endTransaction();
+            }
+        } else {
+            Utils.debugLog(TAG, "Running VACUUM to switch to incremental vacuuming");
+            db.execSQL("VACUUM"); // Can't be done in a transaction.
+        }
+        Utils.debugLog(TAG, "Database maintenance took " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    static int getAutoVacuum(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("PRAGMA auto_vacuum", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    static int getFreelistCount(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("PRAGMA freelist_count", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
     private void resetTransientPre42(SQLiteDatabase db, int oldVersion) {
         // Before version 42, only transient info was stored in here. As of some time
         // just before 42 (F-Droid 0.60ish) it now has "ignore this version" info which
@@ -1396,6 +1531,9 @@ public class DBHelper extends SQLiteOpenHelper {
         Utils.debugLog(TAG, "Ensuring indexes exist for " + AppMetadataTable.NAME);
         db.execSQL("CREATE INDEX IF NOT EXISTS name on " + AppMetadataTable.NAME + " (" + AppMetadataTable.Cols.NAME + ");"); // Used for sorting most lists
         db.execSQL("CREATE INDEX IF NOT EXISTS added on " + AppMetadataTable.NAME + " (" + AppMetadataTable.Cols.ADDED + ");"); // Used for sorting "newly added"
+        if (columnExists(db, AppMetadataTable.NAME, AppMetadataTable.Cols.LATEST_RANK)) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS latestRank on " + AppMetadataTable.NAME + " (" + AppMetadataTable.Cols.LATEST_RANK + ");"); // Used for sorting the Latest tab
+        }
 
         if (columnExists(db, AppMetadataTable.NAME, AppMetadataTable.Cols.PACKAGE_ID)) {
             db.execSQL("CREATE INDEX IF NOT EXISTS metadata_packageId ON " + AppMetadataTable.NAME + " (" + AppMetadataTable.Cols.PACKAGE_ID + ");");
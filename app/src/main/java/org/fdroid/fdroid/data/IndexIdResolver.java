@@ -0,0 +1,181 @@
+package org.fdroid.fdroid.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+
+import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.data.Schema.CategoryTable;
+import org.fdroid.fdroid.data.Schema.PackageTable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the {@link PackageTable} and {@link CategoryTable} ids of the apps
+ * in an index while it is being saved by {@link RepoPersister}.  Instead of
+ * asking {@link PackageIdProvider} and {@link CategoryProvider} about each app
+ * and each of its categories, all ids which already exist are read once per
+ * update, and the ones which are missing get inserted in one batch for each
+ * buffer of apps.  The number of queries does not grow with the number of apps
+ * in the index.
+ * <p>
+ * Neither packages nor categories are ever deleted, so ids which were read
+ * once stay valid for the whole update.
+ */
+final class IndexIdResolver {
+
+    private final Context context;
+
+    private final Map<String, Long> packageIds = new HashMap<>();
+
+    /**
+     * Categories are compared {@code COLLATE NOCASE} in the database, so they
+     * are keyed by their lower case name here.
+     */
+    private final Map<String, Long> categoryIds = new HashMap<>();
+
+    private boolean loaded;
+
+    IndexIdResolver(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Make sure that the package and all categories of each of {@code apps}
+     * have an id, so that {@link #putIds(App, ContentValues)} can be used.
+     */
+    void resolve(Collection<App> apps) throws RemoteException, OperationApplicationException {
+        if (!loaded) {
+            loadPackageIds();
+            loadCategoryIds();
+            loaded = true;
+        }
+
+        Set<String> missingPackages = new LinkedHashSet<>();
+        Map<String, String> missingCategories = new LinkedHashMap<>();
+        for (App app : apps) {
+            if (!packageIds.containsKey(app.packageName)) {
+                missingPackages.add(app.packageName);
+            }
+            if (app.categories != null) {
+                for (String category : app.categories) {
+                    String key = toKey(category);
+                    if (!categoryIds.containsKey(key) && !missingCategories.containsKey(key)) {
+                        missingCategories.put(key, category);
+                    }
+                }
+            }
+        }
+
+        if (missingPackages.size() > 0) {
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>(missingPackages.size());
+            for (String packageName : missingPackages) {
+                operations.add(ContentProviderOperation.newInsert(PackageIdProvider.getContentUri())
+                        .withValue(PackageTable.Cols.PACKAGE_NAME, packageName)
+                        .build());
+            }
+            ContentProviderResult[] results = context.getContentResolver()
+                    .applyBatch(PackageIdProvider.getAuthority(), operations);
+            int i = 0;
+            for (String packageName : missingPackages) {
+                packageIds.put(packageName, getId(results[i++].uri));
+            }
+        }
+
+        if (missingCategories.size() > 0) {
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>(missingCategories.size());
+            for (String category : missingCategories.values()) {
+                operations.add(ContentProviderOperation.newInsert(CategoryProvider.getContentUri())
+                        .withValue(CategoryTable.Cols.NAME, category)
+                        .build());
+            }
+            ContentProviderResult[] results = context.getContentResolver()
+                    .applyBatch(CategoryProvider.getAuthority(), operations);
+            int i = 0;
+            for (String key : missingCategories.keySet()) {
+                categoryIds.put(key, getId(results[i++].uri));
+            }
+        }
+    }
+
+    /**
+     * Adds the ids of the package and categories of {@code app} to the values
+     * to be inserted by {@link AppProvider#insert(Uri, ContentValues)}, so it
+     * does not need to look them up itself.  The app must have been passed to
+     * {@link #resolve(Collection)} before.
+     */
+    void putIds(App app, ContentValues values) {
+        values.put(Schema.AppMetadataTable.Cols.PACKAGE_ID, packageIds.get(app.packageName));
+        if (values.containsKey(Schema.AppMetadataTable.Cols.ForWriting.Categories.CATEGORIES)) {
+            values.remove(Schema.AppMetadataTable.Cols.ForWriting.Categories.CATEGORIES);
+            String[] ids = null;
+            if (app.categories != null && app.categories.length > 0) {
+                ids = new String[app.categories.length];
+                for (int i = 0; i < app.categories.length; i++) {
+                    ids[i] = Long.toString(categoryIds.get(toKey(app.categories[i])));
+                }
+            }
+            values.put(Schema.AppMetadataTable.Cols.ForWriting.Categories.CATEGORY_IDS,
+                    Utils.serializeCommaSeparatedString(ids));
+        }
+    }
+
+    private void loadPackageIds() {
+        String[] projection = {PackageTable.Cols.ROW_ID, PackageTable.Cols.PACKAGE_NAME};
+        Cursor cursor = context.getContentResolver().query(PackageIdProvider.getAllPackagesUri(), projection,
+                null, null, null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            int idIndex = cursor.getColumnIndexOrThrow(PackageTable.Cols.ROW_ID);
+            int nameIndex = cursor.getColumnIndexOrThrow(PackageTable.Cols.PACKAGE_NAME);
+            while (cursor.moveToNext()) {
+                packageIds.put(cursor.getString(nameIndex), cursor.getLong(idIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void loadCategoryIds() {
+        String[] projection = {CategoryTable.Cols.ROW_ID, CategoryTable.Cols.NAME};
+        Cursor cursor = context.getContentResolver().query(CategoryProvider.getAllCategoryIdsUri(), projection,
+                null, null, null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            int idIndex = cursor.getColumnIndexOrThrow(CategoryTable.Cols.ROW_ID);
+            int nameIndex = cursor.getColumnIndexOrThrow(CategoryTable.Cols.NAME);
+            while (cursor.moveToNext()) {
+                String key = toKey(cursor.getString(nameIndex));
+                if (!categoryIds.containsKey(key)) {
+                    categoryIds.put(key, cursor.getLong(idIndex));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String toKey(String category) {
+        return category.toLowerCase(Locale.ENGLISH);
+    }
+
+    private static long getId(Uri uri) {
+        return Long.parseLong(uri.getLastPathSegment());
+    }
+}
@@ -1,9 +1,12 @@
 package org.fdroid.fdroid.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.ServiceConnection;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
@@ -12,6 +15,7 @@ import android.os.Build;
 import android.os.IBinder;
 import android.os.Process;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 
 import org.acra.ACRA;
@@ -23,14 +27,20 @@ import org.fdroid.fdroid.privileged.IPrivilegedService;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.core.app.JobIntentService;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
@@ -65,6 +75,22 @@ public class InstalledAppProviderService extends JobIntentService {
 
     private static final String EXTRA_PACKAGE_INFO = "org.fdroid.fdroid.data.extra.PACKAGE_INFO";
 
+    /**
+     * How many packages are hashed at the same time by {@link #compareToPackageManager(Context)}.
+     */
+    private static final int SYNC_THREADS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    /**
+     * How many changed packages are written to the database in one transaction.
+     */
+    static final int SYNC_BATCH_SIZE = 50;
+
+    /**
+     * Runs one sync with the {@link PackageManager} after the other.
+     */
+    private static final ExecutorService SYNC_EXECUTOR = Executors.newSingleThreadExecutor();
+
     /**
      * This is for notifying the users of this {@link android.content.ContentProvider}
      * that the contents have changed. Since {@link Intent}s can come in slow
@@ -174,11 +200,16 @@ public class InstalledAppProviderService extends JobIntentService {
      * <p>
      * The installed app cache could get out of sync, e.g. if F-Droid crashed/ or
      * ran out of battery half way through responding to {@link Intent#ACTION_PACKAGE_ADDED}.
-     * This method returns immediately, and will continue to work in an
-     * {@link JobIntentService}.  It doesn't really matter where we put this in the
-     * bootstrap process, because it runs in its own thread, at the lowest priority:
+     * This method returns immediately, and will continue to work in a background
+     * thread.  It doesn't really matter where we put this in the bootstrap process,
+     * because it runs in its own threads, at the lowest priority:
      * {@link Process#THREAD_PRIORITY_LOWEST}.
      * <p>
+     * Only the packages which changed are fetched with their signatures, and
+     * hashed on up to {@link #SYNC_THREADS} threads.  The changes are written to
+     * the database in batches of {@link #SYNC_BATCH_SIZE}, and the content
+     * providers are notified once at the end.
+     * <p>
      * APKs installed in {@code /system} will often have zeroed out timestamps, like
      * 2008-01-01 (ziptime) or 2009-01-01.  So instead anything older than 2010 every
      * time since we have no way to know whether an APK wasn't changed as part of an
@@ -237,28 +268,143 @@ public class InstalledAppProviderService extends JobIntentService {
         }
     }
 
-    private static void compareToPackageManager(Context context, List<PackageInfo> packageInfoList) {
+    private static void compareToPackageManager(Context context, @Nullable List<PackageInfo> packageInfoList) {
+        final Context appContext = context.getApplicationContext();
+        SYNC_EXECUTOR.execute(() -> syncWithPackageManager(appContext, packageInfoList));
+    }
+
+    /**
+     * @param packageInfoList the installed packages if they are already known,
+     *                        otherwise they are fetched from the {@link PackageManager}
+     */
+    @WorkerThread
+    static void syncWithPackageManager(final Context context, @Nullable List<PackageInfo> packageInfoList) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+        long startMillis = SystemClock.elapsedRealtime();
         if (packageInfoList == null || packageInfoList.isEmpty()) {
-            packageInfoList = context.getPackageManager().getInstalledPackages(PackageManager.GET_SIGNATURES);
+            // Without signatures, the list stays well below the binder transaction limit,
+            // even with hundreds of apps installed. Changed packages are fetched with
+            // their signatures one by one.
+            packageInfoList = context.getPackageManager().getInstalledPackages(0);
         }
         Map<String, Long> cachedInfo = InstalledAppProvider.Helper.lastUpdateTimes(context);
         TreeSet<PackageInfo> packageInfoSet = new TreeSet<>(new PackageInfoComparator());
         packageInfoSet.addAll(packageInfoList);
-        for (PackageInfo packageInfo : packageInfoSet) {
-            if (cachedInfo.containsKey(packageInfo.packageName)) {
-                if (packageInfo.lastUpdateTime < 1262300400000L // 2010-01-01 00:00
-                        || packageInfo.lastUpdateTime > cachedInfo.get(packageInfo.packageName)) {
-                    insert(context, packageInfo);
-                }
-                cachedInfo.remove(packageInfo.packageName);
-            } else {
-                insert(context, packageInfo);
+
+        ExecutorService workers = Executors.newFixedThreadPool(SYNC_THREADS);
+        List<String> insertedPackageNames = new ArrayList<>();
+        List<Future<ContentValues>> inserts = new ArrayList<>();
+        for (final PackageInfo packageInfo : packageInfoSet) {
+            Long lastUpdateTime = cachedInfo.remove(packageInfo.packageName);
+            if (lastUpdateTime == null
+                    || packageInfo.lastUpdateTime < 1262300400000L // 2010-01-01 00:00
+                    || packageInfo.lastUpdateTime > lastUpdateTime) {
+                insertedPackageNames.add(packageInfo.packageName);
+                inserts.add(workers.submit(() -> getInstalledAppValues(context, packageInfo)));
+            }
+        }
+        workers.shutdown();
+
+        // the results are written in order, so "android" with the system key is always first
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(SYNC_BATCH_SIZE);
+        for (Future<ContentValues> insert : inserts) {
+            ContentValues values;
+            try {
+                values = insert.get();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Could not read installed package", e.getCause());
+                continue;
+            } catch (InterruptedException e) {
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+                return;
             }
+            if (values != null) {
+                operations.add(ContentProviderOperation.newInsert(InstalledAppProvider.getContentUri())
+                        .withValues(values)
+                        .build());
+                applyBatchIfFull(context, operations);
+            }
+        }
+        for (String packageName : cachedInfo.keySet()) {
+            operations.add(ContentProviderOperation.newDelete(InstalledAppProvider.getAppUri(packageName)).build());
+            applyBatchIfFull(context, operations);
         }
+        applyBatch(context, operations);
 
+        AppUpdateStatusManager ausm = AppUpdateStatusManager.getInstance(context);
+        for (String packageName : insertedPackageNames) {
+            for (AppUpdateStatusManager.AppUpdateStatus status : ausm.getByPackageName(packageName)) {
+                ausm.updateApk(status.getCanonicalUrl(), AppUpdateStatusManager.Status.Installed, null);
+            }
+        }
         for (String packageName : cachedInfo.keySet()) {
-            delete(context, packageName);
+            for (AppUpdateStatusManager.AppUpdateStatus status : ausm.getByPackageName(packageName)) {
+                ausm.updateApk(status.getCanonicalUrl(), AppUpdateStatusManager.Status.InstallError, null);
+            }
         }
+
+        if (insertedPackageNames.size() > 0 || cachedInfo.size() > 0) {
+            ContentResolver resolver = context.getContentResolver();
+            resolver.notifyChange(AppProvider.getContentUri(), null);
+            resolver.notifyChange(ApkProvider.getContentUri(), null);
+        }
+        Log.i(TAG, "Synced " + packageInfoSet.size() + " installed packages with " + insertedPackageNames.size()
+                + " changed and " + cachedInfo.size() + " removed in "
+                + (SystemClock.elapsedRealtime() - startMillis) + "ms");
+    }
+
+    /**
+     * Gets everything {@link InstalledAppProvider} stores about {@code packageInfo},
+     * including the hash of its APK, which takes a while.
+     *
+     * @return {@code null} if the package is gone or its APK cannot be read
+     */
+    @SuppressWarnings("PackageManagerGetSignatures")
+    @WorkerThread
+    @Nullable
+    private static ContentValues getInstalledAppValues(Context context, PackageInfo packageInfo) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+        if (packageInfo.signatures == null) {
+            try {
+                packageInfo = context.getPackageManager().getPackageInfo(packageInfo.packageName,
+                        PackageManager.GET_SIGNATURES);
+            } catch (PackageManager.NameNotFoundException e) {
+                Utils.debugLog(TAG, packageInfo.packageName + " was uninstalled while syncing");
+                return null;
+            }
+        }
+        File apk = getPathToInstalledApk(packageInfo);
+        if (apk == null || !apk.exists() || !apk.canRead()) {
+            return null;
+        }
+        try {
+            String hashType = "sha256";
+            String hash = Utils.getFileHexDigest(apk, hashType);
+            return getInstalledAppValues(context, packageInfo, hashType, hash);
+        } catch (IllegalArgumentException e) {
+            Utils.debugLog(TAG, e.getMessage());
+            ACRA.getErrorReporter().handleException(e, false);
+            return null;
+        }
+    }
+
+    private static void applyBatchIfFull(Context context, ArrayList<ContentProviderOperation> operations) {
+        if (operations.size() >= SYNC_BATCH_SIZE) {
+            applyBatch(context, operations);
+        }
+    }
+
+    private static void applyBatch(Context context, ArrayList<ContentProviderOperation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        try {
+            context.getContentResolver().applyBatch(InstalledAppProvider.getAuthority(), operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Could not save " + operations.size() + " installed packages", e);
+        }
+        operations.clear();
     }
 
     @Nullable
@@ -357,6 +503,11 @@ public class InstalledAppProviderService extends JobIntentService {
     static void insertAppIntoDb(Context context, PackageInfo packageInfo, String hashType, String hash) {
         Log.d(TAG, "insertAppIntoDb " + packageInfo.packageName);
         Uri uri = InstalledAppProvider.getContentUri();
+        context.getContentResolver().insert(uri, getInstalledAppValues(context, packageInfo, hashType, hash));
+    }
+
+    private static ContentValues getInstalledAppValues(Context context, PackageInfo packageInfo,
+                                                       String hashType, String hash) {
         ContentValues contentValues = new ContentValues();
         contentValues.put(InstalledAppTable.Cols.Package.NAME, packageInfo.packageName);
         contentValues.put(InstalledAppTable.Cols.VERSION_CODE, packageInfo.versionCode);
@@ -368,8 +519,7 @@ public class InstalledAppProviderService extends JobIntentService {
 
         contentValues.put(InstalledAppTable.Cols.HASH_TYPE, hashType);
         contentValues.put(InstalledAppTable.Cols.HASH, hash);
-
-        context.getContentResolver().insert(uri, contentValues);
+        return contentValues;
     }
 
     static void deleteAppFromDb(Context context, String packageName) {
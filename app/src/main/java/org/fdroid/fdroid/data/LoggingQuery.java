@@ -3,10 +3,13 @@ package org.fdroid.fdroid.data;
 import android.database.Cursor;
 import android.database.CursorWrapper;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
 
 import org.fdroid.fdroid.BuildConfig;
 import org.fdroid.fdroid.Utils;
 
+import androidx.annotation.Nullable;
+
 /**
  * Helper class to log slow queries to logcat when in debug mode. When not in debug mode, it
  * runs the queries without any logging.
@@ -53,10 +56,10 @@ final class LoggingQuery {
      * When running a debug build, this will log details (including query plans) for any query which
      * takes longer than {@link LoggingQuery#SLOW_QUERY_DURATION}.
      */
-    private Cursor rawQuery() {
+    private Cursor rawQuery(@Nullable CancellationSignal cancellationSignal) {
         if (BuildConfig.DEBUG) {
             long startTime = System.currentTimeMillis();
-            Cursor cursor = db.rawQuery(query, queryArgs);
+            Cursor cursor = db.rawQuery(query, queryArgs, cancellationSignal);
             long queryDuration = System.currentTimeMillis() - startTime;
 
             if (queryDuration >= SLOW_QUERY_DURATION) {
@@ -65,7 +68,7 @@ final class LoggingQuery {
 
             return new LogGetCountCursorWrapper(cursor);
         }
-        return db.rawQuery(query, queryArgs);
+        return db.rawQuery(query, queryArgs, cancellationSignal);
     }
 
     /**
@@ -162,7 +165,17 @@ final class LoggingQuery {
     }
 
     public static Cursor rawQuery(SQLiteDatabase db, String query, String[] queryBuilderArgs) {
-        return new LoggingQuery(db, query, queryBuilderArgs).rawQuery();
+        return rawQuery(db, query, queryBuilderArgs, null);
+    }
+
+    /**
+     * Same as {@link #rawQuery(SQLiteDatabase, String, String[])}, except the query stops with an
+     * {@link android.os.OperationCanceledException} once {@code cancellationSignal} is cancelled,
+     * including while the rows are read from the returned {@link Cursor}.
+     */
+    public static Cursor rawQuery(SQLiteDatabase db, String query, String[] queryBuilderArgs,
+                                  @Nullable CancellationSignal cancellationSignal) {
+        return new LoggingQuery(db, query, queryBuilderArgs).rawQuery(cancellationSignal);
     }
 
     public static void execSQL(SQLiteDatabase db, String sql, String[] queryArgs) {
@@ -12,6 +12,7 @@ import org.fdroid.fdroid.nearby.SwapWorkflowActivity;
 import org.fdroid.fdroid.nearby.peers.WifiPeer;
 import org.fdroid.fdroid.views.ManageReposActivity;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
@@ -29,6 +30,7 @@ public class NewRepoConfig {
     private String username;
     private String password;
     private String fingerprint;
+    private List<String> mirrors = new ArrayList<>();
     private String bssid;
     private String ssid;
     private boolean fromSwap;
@@ -111,6 +113,7 @@ public class NewRepoConfig {
         }
 
         fingerprint = uri.getQueryParameter("fingerprint");
+        mirrors = parseMirrors(uri);
         bssid = uri.getQueryParameter("bssid");
         ssid = uri.getQueryParameter("ssid");
         fromSwap = uri.getQueryParameter("swap") != null;
@@ -157,6 +160,13 @@ public class NewRepoConfig {
         return fingerprint;
     }
 
+    /**
+     * @return the mirrors that came with the repo URI, see {@link #parseMirrors(Uri)}
+     */
+    public List<String> getMirrors() {
+        return mirrors;
+    }
+
     public boolean isValidRepo() {
         return isValidRepo;
     }
@@ -182,6 +192,30 @@ public class NewRepoConfig {
             "gitlab.io"
     );
 
+    /**
+     * A repo URI can list mirrors to try in case the repo's own address is
+     * slow or blocked, e.g.
+     * {@code https://example.org/fdroid/repo?fingerprint=...&mirror=https%3A%2F%2Fexample.net%2Frepo}.
+     * Only HTTP and HTTPS mirrors are used.
+     */
+    public static List<String> parseMirrors(Uri uri) {
+        List<String> mirrors = new ArrayList<>();
+        for (String mirror : uri.getQueryParameters("mirror")) {
+            Uri mirrorUri = Uri.parse(mirror);
+            String scheme = mirrorUri.getScheme();
+            if (TextUtils.isEmpty(mirrorUri.getHost())
+                    || !"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+                Utils.debugLog(TAG, "Ignoring mirror " + mirror);
+                continue;
+            }
+            String sanitized = sanitizeRepoUri(mirrorUri);
+            if (!mirrors.contains(sanitized)) {
+                mirrors.add(sanitized);
+            }
+        }
+        return mirrors;
+    }
+
     /**
      * Sanitize and format an incoming repo URI for function and readability.
      * This also forces URLs listed in {@code app/src/main/res/xml/network_security_config.xml}
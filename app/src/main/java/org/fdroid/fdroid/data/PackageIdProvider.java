@@ -1,7 +1,10 @@
 package org.fdroid.fdroid.data;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.net.Uri;
@@ -9,6 +12,8 @@ import android.net.Uri;
 import org.fdroid.fdroid.data.Schema.PackageTable;
 import org.fdroid.fdroid.data.Schema.PackageTable.Cols;
 
+import java.util.ArrayList;
+
 import androidx.annotation.NonNull;
 
 public class PackageIdProvider extends FDroidProvider {
@@ -68,15 +73,25 @@ public class PackageIdProvider extends FDroidProvider {
 
     private static final String PATH_PACKAGE_NAME = "packageName";
     private static final String PATH_PACKAGE_ID = "packageId";
+    private static final String PATH_ALL_PACKAGES = "all";
 
     static {
         MATCHER.addURI(getAuthority(), PATH_PACKAGE_NAME + "/*", CODE_SINGLE);
+        MATCHER.addURI(getAuthority(), PATH_ALL_PACKAGES, CODE_LIST);
     }
 
-    private static Uri getContentUri() {
+    static Uri getContentUri() {
         return Uri.parse("content://" + getAuthority());
     }
 
+    /**
+     * Every package name known to F-Droid, along with its {@link PackageTable.Cols#ROW_ID}.
+     * Used to look them all up at once during repo updates, see {@link IndexIdResolver}.
+     */
+    static Uri getAllPackagesUri() {
+        return Uri.withAppendedPath(getContentUri(), PATH_ALL_PACKAGES);
+    }
+
     public static Uri getPackageUri(String packageName) {
         return getContentUri()
                 .buildUpon()
@@ -128,12 +143,18 @@ public class PackageIdProvider extends FDroidProvider {
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection,
                         String customSelection, String[] selectionArgs, String sortOrder) {
-        if (MATCHER.match(uri) != CODE_SINGLE) {
-            throw new UnsupportedOperationException("Invalid URI for content provider: " + uri);
-        }
+        QuerySelection selection = new QuerySelection(customSelection, selectionArgs);
+        switch (MATCHER.match(uri)) {
+            case CODE_SINGLE:
+                selection = selection.add(querySingle(uri.getLastPathSegment()));
+                break;
+
+            case CODE_LIST:
+                break;
 
-        QuerySelection selection = new QuerySelection(customSelection, selectionArgs)
-                .add(querySingle(uri.getLastPathSegment()));
+            default:
+                throw new UnsupportedOperationException("Invalid URI for content provider: " + uri);
+        }
 
         Query query = new Query();
         query.addSelection(selection);
@@ -160,10 +181,21 @@ public class PackageIdProvider extends FDroidProvider {
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
         long rowId = db().insertOrThrow(getTableName(), null, values);
-        getContext().getContentResolver().notifyChange(AppProvider.getCanUpdateUri(), null);
+        if (!isApplyingBatch()) {
+            getContext().getContentResolver().notifyChange(AppProvider.getCanUpdateUri(), null);
+        }
         return getPackageIdUri(rowId);
     }
 
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        ContentProviderResult[] result = super.applyBatch(operations);
+        getContext().getContentResolver().notifyChange(AppProvider.getCanUpdateUri(), null);
+        return result;
+    }
+
     /**
      * Package names never change. If a package name has changed, then that means that it is a
      * new app all together as far as Android is concerned.
@@ -0,0 +1,151 @@
+package org.fdroid.fdroid.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import org.fdroid.fdroid.Utils;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import androidx.annotation.Nullable;
+
+/**
+ * A process-wide cache of {@link Repo} instances by their ID, for code
+ * that looks up the same few repos over and over again, like building the
+ * icon URL for every item of an app list in {@link App#getIconUrl(Context)},
+ * or finding the repo of every image that is loaded, see
+ * {@link #findByUrl(Context, String)}.
+ * There are only ever a handful of repos, so all of them are kept.
+ * <p>
+ * The cache is cleared whenever {@link RepoProvider} notifies about a
+ * change.  The provider also clears it directly before notifying, since
+ * the {@link ContentObserver} is called asynchronously, so a lookup right
+ * after a write never sees the old repo.  A load that raced with a change
+ * is not cached, that is what {@link #generation} is for.
+ * <p>
+ * The returned instances are shared, so they must not be modified.  Code
+ * that edits a repo has to use {@link RepoProvider.Helper#findById(Context, long)}.
+ */
+public final class RepoCache {
+    private static final String TAG = "RepoCache";
+
+    private static final ConcurrentHashMap<Long, Repo> REPOS = new ConcurrentHashMap<>();
+
+    /**
+     * All repos, for looking them up by URL, or {@code null} if not loaded.
+     */
+    private static volatile List<Repo> allRepos;
+
+    private static ContentResolver observedResolver;
+    private static int generation;
+
+    private static final ContentObserver OBSERVER = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            clear();
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            clear();
+        }
+    };
+
+    private RepoCache() {
+    }
+
+    /**
+     * @return the repo, or {@code null} if there is no repo with this ID
+     */
+    @Nullable
+    public static Repo get(Context context, long repoId) {
+        int loadGeneration = observe(context);
+        Repo repo = REPOS.get(repoId);
+        if (repo != null) {
+            return repo;
+        }
+        repo = RepoProvider.Helper.findById(context, repoId);
+        if (repo != null) {
+            synchronized (RepoCache.class) {
+                if (loadGeneration == generation) {
+                    REPOS.put(repoId, repo);
+                }
+            }
+        }
+        return repo;
+    }
+
+    /**
+     * Find the repo that {@code url} belongs to, like
+     * {@link RepoProvider.Helper#findByUrl(Context, Uri, String[])} does, but
+     * without running one query for each path segment of {@code url}.  This
+     * is called for every image that is loaded, so it has to be cheap.
+     *
+     * @return the repo with the longest address that {@code url} is below, or
+     * {@code null} if there is none
+     */
+    @Nullable
+    public static Repo findByUrl(Context context, String url) {
+        int loadGeneration = observe(context);
+        List<Repo> repos = allRepos;
+        if (repos == null) {
+            repos = RepoProvider.Helper.all(context);
+            synchronized (RepoCache.class) {
+                if (loadGeneration == generation) {
+                    allRepos = repos;
+                }
+            }
+        }
+
+        int queryStart = url.indexOf('?');
+        String withoutQuery = queryStart == -1 ? url : url.substring(0, queryStart);
+        Repo found = null;
+        for (Repo repo : repos) {
+            String address = repo.address;
+            if (TextUtils.isEmpty(address) || !withoutQuery.startsWith(address)) {
+                continue;
+            }
+            boolean atSegment = withoutQuery.length() == address.length()
+                    || address.endsWith("/")
+                    || withoutQuery.charAt(address.length()) == '/';
+            if (atSegment && (found == null || address.length() > found.address.length())) {
+                found = repo;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Forget all cached repos, so they are loaded from the database again.
+     */
+    public static synchronized void clear() {
+        generation++;
+        REPOS.clear();
+        allRepos = null;
+    }
+
+    /**
+     * Make sure changes in the {@link ContentResolver} of {@code context}
+     * clear the cache.  Tests get a new {@code Application} with a new
+     * database each time, so the cache starts over when that changes.
+     *
+     * @return the current {@link #generation}
+     */
+    private static synchronized int observe(Context context) {
+        ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        if (resolver != observedResolver) {
+            if (observedResolver != null) {
+                observedResolver.unregisterContentObserver(OBSERVER);
+            }
+            clear();
+            resolver.registerContentObserver(RepoProvider.getContentUri(), true, OBSERVER);
+            observedResolver = resolver;
+            Utils.debugLog(TAG, "Observing " + RepoProvider.getContentUri());
+        }
+        return generation;
+    }
+}
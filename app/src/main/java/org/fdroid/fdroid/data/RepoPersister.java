@@ -50,10 +50,14 @@ public class RepoPersister {
     @NonNull
     private final CompatibilityChecker checker;
 
+    @NonNull
+    private final IndexIdResolver idResolver;
+
     public RepoPersister(@NonNull Context context, @NonNull Repo repo) {
         this.repo = repo;
         this.context = context;
         checker = new CompatibilityChecker(context);
+        idResolver = new IndexIdResolver(context);
     }
 
     public void saveToDb(App app, List<Apk> packages) throws IndexUpdater.UpdateException {
@@ -117,9 +121,9 @@ public class RepoPersister {
      * can be returned and the relevant apks can be joined to the app table correctly.
      */
     private Map<String, Long> flushAppsToDbInBatch() throws IndexUpdater.UpdateException {
-        ArrayList<ContentProviderOperation> appOperations = insertApps(appsToSave);
-
         try {
+            idResolver.resolve(appsToSave);
+            ArrayList<ContentProviderOperation> appOperations = insertApps(appsToSave);
             context.getContentResolver().applyBatch(TempAppProvider.getAuthority(), appOperations);
             return getIdsForPackages(appsToSave);
         } catch (RemoteException | OperationApplicationException e) {
@@ -157,6 +161,7 @@ public class RepoPersister {
         ArrayList<ContentProviderOperation> operations = new ArrayList<>(apps.size());
         for (App app : apps) {
             ContentValues values = app.toContentValues();
+            idResolver.putIds(app, values);
             Uri uri = TempAppProvider.getContentUri();
             operations.add(ContentProviderOperation.newInsert(uri).withValues(values).build());
         }
@@ -11,6 +11,9 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import org.fdroid.fdroid.AppUpdateStatusManager;
+import org.fdroid.fdroid.IndexV1Cache;
+import org.fdroid.fdroid.RepoIconBundle;
+import org.fdroid.fdroid.ScreenshotThumbnails;
 import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.data.Schema.RepoTable;
 import org.fdroid.fdroid.data.Schema.RepoTable.Cols;
@@ -236,6 +239,9 @@ public class RepoProvider extends FDroidProvider {
 
         public static void remove(Context context, long repoId) {
             purgeApps(context, findById(context, repoId));
+            RepoIconBundle.delete(context, repoId);
+            ScreenshotThumbnails.delete(context, repoId);
+            IndexV1Cache.delete(context, repoId);
             ContentResolver resolver = context.getContentResolver();
             Uri uri = RepoProvider.getContentUri(repoId);
             resolver.delete(uri, null, null);
@@ -433,6 +439,7 @@ public class RepoProvider extends FDroidProvider {
 
         long id = db().insertOrThrow(getTableName(), null, values);
         Utils.debugLog(TAG, "Inserted repo. Notifying provider change: '" + uri + "'.");
+        RepoCache.clear();
         getContext().getContentResolver().notifyChange(uri, null);
         return getContentUri(id);
     }
@@ -466,6 +473,7 @@ public class RepoProvider extends FDroidProvider {
 
         int rowsAffected = db().delete(getTableName(), selection.getSelection(), selection.getArgs());
         Utils.debugLog(TAG, "Deleted repo. Notifying provider change: '" + uri + "'.");
+        RepoCache.clear();
         getContext().getContentResolver().notifyChange(uri, null);
         return rowsAffected;
     }
@@ -505,6 +513,7 @@ public class RepoProvider extends FDroidProvider {
         }
 
         Utils.debugLog(TAG, "Updated repo. Notifying provider change: '" + uri + "'.");
+        RepoCache.clear();
         getContext().getContentResolver().notifyChange(uri, null);
         return numRows;
     }
@@ -198,6 +198,20 @@ public interface Schema {
             String ADDED = "added";
             String LAST_UPDATED = "lastUpdated";
             String ANTI_FEATURES = "antiFeatures";
+
+            /**
+             * {@link #ANTI_FEATURES} as a bitmask, for filtering the app lists.
+             *
+             * @see AntiFeatureFlags
+             */
+            String ANTI_FEATURE_FLAGS = "antiFeatureFlags";
+
+            /**
+             * How high up this app should be on the Latest tab.
+             *
+             * @see AppProvider#getUpdateLatestRankSql(String)
+             */
+            String LATEST_RANK = "latestRank";
             String REQUIREMENTS = "requirements";
             String ICON_URL = "iconUrl";
             String FEATURE_GRAPHIC = "featureGraphic";
@@ -240,6 +254,12 @@ public interface Schema {
             interface ForWriting {
                 interface Categories {
                     String CATEGORIES = "categories_commaSeparatedCateogryNames";
+
+                    /**
+                     * Used instead of {@link #CATEGORIES} when the ids of the categories are
+                     * already known, see {@link org.fdroid.fdroid.data.IndexIdResolver}.
+                     */
+                    String CATEGORY_IDS = "categories_commaSeparatedCategoryIds";
                 }
             }
 
@@ -256,7 +276,8 @@ public interface Schema {
                     ANTI_FEATURES, REQUIREMENTS, ICON_URL,
                     FEATURE_GRAPHIC, PROMO_GRAPHIC, TV_BANNER, PHONE_SCREENSHOTS,
                     SEVEN_INCH_SCREENSHOTS, TEN_INCH_SCREENSHOTS, TV_SCREENSHOTS, WEAR_SCREENSHOTS,
-                    PREFERRED_SIGNER, AUTO_INSTALL_VERSION_CODE, IS_APK, IS_LOCALIZED,
+                    PREFERRED_SIGNER, AUTO_INSTALL_VERSION_CODE, IS_APK, IS_LOCALIZED, ANTI_FEATURE_FLAGS,
+                    LATEST_RANK,
             };
 
             /**
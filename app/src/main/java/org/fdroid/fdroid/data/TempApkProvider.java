@@ -98,13 +98,13 @@ public class TempApkProvider extends ApkProvider {
 
     private void initTable(long repoIdBeingUpdated) {
         final SQLiteDatabase db = db();
-        final String memoryDbName = TempAppProvider.DB;
-        db.execSQL(DBHelper.CREATE_TABLE_APK.replaceFirst(ApkTable.NAME, memoryDbName + "." + getTableName()));
-        db.execSQL(DBHelper.CREATE_TABLE_APK_ANTI_FEATURE_JOIN.replaceFirst(Schema.ApkAntiFeatureJoinTable.NAME, memoryDbName + "." + getApkAntiFeatureJoinTableName()));
+        final String tempDbName = TempAppProvider.DB;
+        db.execSQL(DBHelper.CREATE_TABLE_APK.replaceFirst(ApkTable.NAME, tempDbName + "." + getTableName()));
+        db.execSQL(DBHelper.CREATE_TABLE_APK_ANTI_FEATURE_JOIN.replaceFirst(Schema.ApkAntiFeatureJoinTable.NAME, tempDbName + "." + getApkAntiFeatureJoinTableName()));
 
         String where = ApkTable.NAME + "." + Cols.REPO_ID + " != ?";
         String[] whereArgs = new String[]{Long.toString(repoIdBeingUpdated)};
-        db.execSQL(TempAppProvider.copyData(Cols.ALL_COLS, ApkTable.NAME, memoryDbName + "." + getTableName(), where), whereArgs);
+        db.execSQL(TempAppProvider.copyData(Cols.ALL_COLS, ApkTable.NAME, tempDbName + "." + getTableName(), where), whereArgs);
 
         String antiFeaturesWhere =
                 Schema.ApkAntiFeatureJoinTable.NAME + "." + Schema.ApkAntiFeatureJoinTable.Cols.APK_ID + " IN " +
@@ -114,11 +114,11 @@ public class TempApkProvider extends ApkProvider {
         db.execSQL(TempAppProvider.copyData(
                 Schema.ApkAntiFeatureJoinTable.Cols.ALL_COLS,
                 Schema.ApkAntiFeatureJoinTable.NAME,
-                memoryDbName + "." + getApkAntiFeatureJoinTableName(),
+                tempDbName + "." + getApkAntiFeatureJoinTableName(),
                 antiFeaturesWhere), whereArgs);
 
-        db.execSQL("CREATE INDEX IF NOT EXISTS " + memoryDbName + ".apk_appId on " + getTableName() + " (" + Cols.APP_ID + ");");
-        db.execSQL("CREATE INDEX IF NOT EXISTS " + memoryDbName + ".apk_compatible ON " + getTableName() + " (" + Cols.IS_COMPATIBLE + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + tempDbName + ".temp_apk_appId on " + getTableName() + " (" + Cols.APP_ID + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + tempDbName + ".temp_apk_compatible ON " + getTableName() + " (" + Cols.IS_COMPATIBLE + ");");
     }
 
 }
@@ -5,8 +5,8 @@ import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteException;
 import android.net.Uri;
+import android.os.CancellationSignal;
 import android.text.TextUtils;
 
 import org.fdroid.fdroid.data.Schema.ApkTable;
@@ -18,6 +18,7 @@ import org.fdroid.fdroid.data.Schema.PackageTable;
 import java.util.List;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 /**
  * This class does all of its operations in a temporary sqlite table.
@@ -26,9 +27,12 @@ import androidx.annotation.NonNull;
 public class TempAppProvider extends AppProvider {
 
     /**
-     * The name of the in memory database used for updating.
+     * The database the temporary tables used for updating live in.  This used to be
+     * an attached {@code :memory:} database, but Android turns off write-ahead logging
+     * for good as soon as anything is attached, so they are regular tables in the main
+     * database now, which are dropped again after each update.
      */
-    static final String DB = "temp_update_db";
+    static final String DB = "main";
 
     private static final String PROVIDER_NAME = "TempAppProvider";
 
@@ -153,6 +157,12 @@ public class TempAppProvider extends AppProvider {
         throw new UnsupportedOperationException("Update not supported for " + uri + ".");
     }
 
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String customSelection, String[] selectionArgs,
+                        String sortOrder, @Nullable CancellationSignal cancellationSignal) {
+        return query(uri, projection, customSelection, selectionArgs, sortOrder);
+    }
+
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection,
                         String customSelection, String[] selectionArgs, String sortOrder) {
@@ -167,16 +177,19 @@ public class TempAppProvider extends AppProvider {
         return super.runQuery(uri, selection, projection, true, sortOrder, 0);
     }
 
-    private void ensureTempTableDetached(SQLiteDatabase db) {
-        try {
-            // Ideally we'd ask SQLite if the temp table is attached, but that is not possible.
-            // Instead, we resort to hackery:
-            // If the first statement does not throw an exception, then the temp db is attached and the second
-            // statement will detach the database.
-            db.rawQuery("SELECT * FROM " + DB + "." + getTableName() + " WHERE 0", null);
-            db.execSQL("DETACH DATABASE " + DB);
-        } catch (SQLiteException ignored) {
-
+    /**
+     * Drops all temporary tables, including those left behind by an update
+     * that was interrupted before it could be committed.
+     */
+    private void dropTempTables(SQLiteDatabase db) {
+        String[] tables = {
+                TABLE_TEMP_APP,
+                TABLE_TEMP_CAT_JOIN,
+                TempApkProvider.TABLE_TEMP_APK,
+                TABLE_TEMP_APK_ANTI_FEATURE_JOIN,
+        };
+        for (String table : tables) {
+            db.execSQL("DROP TABLE IF EXISTS " + DB + "." + table);
         }
     }
 
@@ -188,8 +201,7 @@ public class TempAppProvider extends AppProvider {
         String mainCat = CatJoinTable.NAME;
         String tempCat = DB + "." + getCatJoinTableName();
 
-        ensureTempTableDetached(db);
-        db.execSQL("ATTACH DATABASE ':memory:' AS " + DB);
+        dropTempTables(db);
         db.execSQL(DBHelper.CREATE_TABLE_APP_METADATA.replaceFirst(AppMetadataTable.NAME, tempApp));
         db.execSQL(DBHelper.CREATE_TABLE_CAT_JOIN.replaceFirst(CatJoinTable.NAME, tempCat));
 
@@ -200,9 +212,9 @@ public class TempAppProvider extends AppProvider {
         // TODO: String catWhere = mainCat + "." + CatJoinTable.Cols..Cols.REPO_ID + " != ?";
         db.execSQL(copyData(CatJoinTable.Cols.ALL_COLS, mainCat, tempCat, null));
 
-        db.execSQL("CREATE INDEX IF NOT EXISTS " + DB + ".app_id ON " + getTableName() + " (" + Cols.PACKAGE_ID + ");");
-        db.execSQL("CREATE INDEX IF NOT EXISTS " + DB + ".app_upstreamVercode ON " + getTableName() + " (" + Cols.SUGGESTED_VERSION_CODE + ");");
-        db.execSQL("CREATE INDEX IF NOT EXISTS " + DB + ".app_compatible ON " + getTableName() + " (" + Cols.IS_COMPATIBLE + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + DB + ".temp_app_id ON " + getTableName() + " (" + Cols.PACKAGE_ID + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + DB + ".temp_app_upstreamVercode ON " + getTableName() + " (" + Cols.SUGGESTED_VERSION_CODE + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + DB + ".temp_app_compatible ON " + getTableName() + " (" + Cols.IS_COMPATIBLE + ");");
     }
 
     /**
@@ -256,7 +268,7 @@ public class TempAppProvider extends AppProvider {
             getContext().getContentResolver().notifyChange(CategoryProvider.getContentUri(), null);
         } finally {
             db.endTransaction();
-            db.execSQL("DETACH DATABASE " + DB); // Can't be done in a transaction.
+            dropTempTables(db);
         }
     }
 
@@ -23,8 +23,13 @@ import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.net.Uri;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.text.TextUtils;
+import android.util.Log;
 
 import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.data.Apk;
 import org.fdroid.fdroid.data.App;
@@ -33,10 +38,36 @@ import org.fdroid.fdroid.data.SanitizedFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Locale;
 
+import androidx.annotation.Nullable;
+
+/**
+ * APKs are first downloaded to a path based on their URL, see
+ * {@link #getApkDownloadPath(Context, Uri)}.  Once an APK was verified while
+ * being copied for installation, it is moved into a content-addressed store
+ * named after its hash, and recorded in {@link ApkCacheIndex}.  So the same
+ * APK is only kept once, no matter which repo or mirror it came from, and
+ * {@link #getVerifiedApk(Context, Apk)} can find it again without hashing it
+ * as long as the file was not changed since.  The store is kept below
+ * {@link Preferences#getApkCacheSize()} by deleting the least recently used
+ * APKs.
+ * <p>
+ * The {@link org.fdroid.fdroid.net.Downloader} calculates the SHA-256 while
+ * writing the file, which is saved next to it with
+ * {@link #saveDownloadedSha256(File, String)}, so an APK is never read again
+ * just to verify it.  Verified APKs are hard-linked into the files directory
+ * for installing, instead of being copied, where the filesystem allows it.  Either way, the
+ * staged APK is deleted again by {@link StagedApkRegistry}.
+ */
 public class ApkCache {
+    private static final String TAG = "ApkCache";
 
     private static final String CACHE_DIR = "apks";
+    private static final String STORE_DIR = "by-hash";
+    private static final String SHA256_SUFFIX = ".sha256";
 
     /**
      * Same as {@link #copyApkFromCacheToFiles(Context, File, Apk)}, except it does not need to
@@ -48,7 +79,7 @@ public class ApkCache {
         ApplicationInfo appInfo = packageInfo.applicationInfo;
         CharSequence name = context.getPackageManager().getApplicationLabel(appInfo);
         String apkFileName = name + "-" + packageInfo.versionName + ".apk";
-        return copyApkToFiles(context, new File(appInfo.publicSourceDir), apkFileName, false, null, null);
+        return copyApkToFiles(context, new File(appInfo.publicSourceDir), apkFileName, false, null, null, null);
     }
 
     /**
@@ -63,19 +94,82 @@ public class ApkCache {
                 expectedApk.packageName);
         String name = app == null ? expectedApk.packageName : app.name;
         String apkFileName = name + "-" + expectedApk.versionName + ".apk";
-        return copyApkToFiles(context, apkFile, apkFileName, true, expectedApk.hash, expectedApk.hashType);
+        String canonicalUrl = getCanonicalUrlOrNull(expectedApk);
+        if (expectedApk.isApk() && isAlreadyVerified(context, apkFile, expectedApk)) {
+            File storedFile = addVerifiedApk(context, apkFile, expectedApk);
+            SanitizedFile linkedApkFile = linkApkToFiles(context, storedFile, apkFileName, canonicalUrl);
+            if (linkedApkFile != null) {
+                return linkedApkFile;
+            }
+            apkFile = storedFile;
+        }
+        SanitizedFile sanitizedApkFile = copyApkToFiles(context, apkFile, apkFileName, true,
+                expectedApk.hash, expectedApk.hashType, canonicalUrl);
+        if (expectedApk.isApk()) {
+            addVerifiedApk(context, apkFile, expectedApk);
+        }
+        return sanitizedApkFile;
+    }
+
+    @Nullable
+    private static String getCanonicalUrlOrNull(Apk apk) {
+        try {
+            return apk.getCanonicalUrl();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether the hash of {@code apkFile} is already known to match, either
+     * since it is in the content-addressed store, or since its SHA-256 was
+     * calculated while downloading it.
+     */
+    private static boolean isAlreadyVerified(Context context, File apkFile, Apk apk) {
+        if (apkFile.equals(getVerifiedApk(context, apk))) {
+            return true;
+        }
+        String sha256 = getDownloadedSha256(apkFile);
+        return sha256 != null && "sha256".equalsIgnoreCase(apk.hashType) && sha256.equalsIgnoreCase(apk.hash);
     }
 
     /**
-     * Copy an APK from {@param apkFile} to our internal files directory for 20 minutes.
+     * Hard-link an already verified APK into the files directory, which is
+     * instant no matter how big the APK is.  The cache is private to F-Droid
+     * too, so nothing else could have modified it.
+     *
+     * @return the link, or {@code null} if hard links are not possible here
+     */
+    @Nullable
+    private static SanitizedFile linkApkToFiles(Context context, File apkFile, String destinationName,
+                                                @Nullable String canonicalUrl) {
+        SanitizedFile sanitizedApkFile = new SanitizedFile(context.getFilesDir(), destinationName);
+        if (sanitizedApkFile.exists()) {
+            sanitizedApkFile.delete();
+        }
+        try {
+            Os.link(apkFile.getAbsolutePath(), sanitizedApkFile.getAbsolutePath());
+        } catch (ErrnoException e) {
+            Utils.debugLog(TAG, "Could not link " + apkFile + ", copying it instead: " + e.getMessage());
+            return null;
+        }
+        StagedApkRegistry.add(context, sanitizedApkFile, 0, canonicalUrl);
+        return sanitizedApkFile;
+    }
+
+    /**
+     * Copy an APK from {@param apkFile} to our internal files directory until
+     * it is installed, see {@link StagedApkRegistry}.
      *
      * @param verifyHash If the file was just downloaded, then you should mark this as true and
      *                   request the file to be verified once it has finished copying. Otherwise,
      *                   if the app was installed from part of the system where it can't be tampered
      *                   with (e.g. installed apks on disk) then
+     * @param canonicalUrl the APK being installed, or {@code null} if it is not from a repo
      */
     private static SanitizedFile copyApkToFiles(Context context, File apkFile, String destinationName,
-                                                boolean verifyHash, String hash, String hashType)
+                                                boolean verifyHash, String hash, String hashType,
+                                                @Nullable String canonicalUrl)
             throws IOException {
         SanitizedFile sanitizedApkFile = new SanitizedFile(context.getFilesDir(), destinationName);
 
@@ -94,21 +188,7 @@ public class ApkCache {
             throw new IOException(apkFile + " failed to verify!");
         }
 
-        // 20 minutes the start of the install process, delete the file
-        final File apkToDelete = sanitizedApkFile;
-        new Thread() {
-            @Override
-            public void run() {
-                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_LOWEST);
-                try {
-                    Thread.sleep(1200000);
-                } catch (InterruptedException ignored) {
-                } finally {
-                    FileUtils.deleteQuietly(apkToDelete);
-                }
-            }
-        }.start();
-
+        StagedApkRegistry.add(context, sanitizedApkFile, sanitizedApkFile.length(), canonicalUrl);
         return sanitizedApkFile;
     }
 
@@ -130,14 +210,168 @@ public class ApkCache {
         return new SanitizedFile(dir, uri.getLastPathSegment());
     }
 
+    private static String getKey(Apk apk) {
+        return apk.hashType + "-" + apk.hash.toLowerCase(Locale.ENGLISH);
+    }
+
+    private static File getApkStoreDir(Context context) {
+        File dir = new File(getApkCacheDir(context), STORE_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    /**
+     * Find an already verified copy of this APK in the cache, no matter where
+     * it was downloaded from.  This does not hash the file again if it has not
+     * been modified since it was last verified, so it is cheap to call.
+     *
+     * @return the cached APK, or {@code null} if it has to be downloaded
+     */
+    @Nullable
+    public static File getVerifiedApk(Context context, Apk apk) {
+        if (TextUtils.isEmpty(apk.hash) || TextUtils.isEmpty(apk.hashType)) {
+            return null;
+        }
+        String key = getKey(apk);
+        ApkCacheIndex index = ApkCacheIndex.get(context);
+        ApkCacheIndex.Entry entry = index.use(key);
+        if (entry == null) {
+            return null;
+        }
+        File file = new File(getApkStoreDir(context), entry.fileName);
+        if ((apk.size > 0 && entry.size != apk.size) || !isUnchanged(file, entry)) {
+            Utils.debugLog(TAG, "Cached " + file + " was changed, removing it");
+            index.remove(key);
+            FileUtils.deleteQuietly(file);
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Get the verified copy of this APK if there is one, otherwise where it would be downloaded to.
+     */
+    public static File getApkPath(Context context, Apk apk) {
+        File verifiedApk = getVerifiedApk(context, apk);
+        return verifiedApk != null ? verifiedApk : getApkDownloadPath(context, apk.getCanonicalUrl());
+    }
+
+    private static boolean isUnchanged(File file, ApkCacheIndex.Entry entry) {
+        return file.length() == entry.size && file.lastModified() == entry.lastModified;
+    }
+
+    /**
+     * Move an APK whose hash was just verified into the content-addressed store.
+     *
+     * @return where the APK is now
+     */
+    static File addVerifiedApk(Context context, File apkFile, Apk apk) {
+        File storedFile = new File(getApkStoreDir(context), getKey(apk) + ".apk");
+        if (!storedFile.equals(apkFile)) {
+            FileUtils.deleteQuietly(storedFile);
+            if (!apkFile.renameTo(storedFile)) {
+                Utils.debugLog(TAG, "Could not move " + apkFile + " to " + storedFile);
+                return apkFile;
+            }
+            FileUtils.deleteQuietly(getSha256File(apkFile));
+        }
+        long now = System.currentTimeMillis();
+        ApkCacheIndex.get(context).put(new ApkCacheIndex.Entry(getKey(apk), storedFile.getName(),
+                storedFile.length(), storedFile.lastModified(), now, now));
+        trim(context, Preferences.get().getApkCacheSize());
+        return storedFile;
+    }
+
+    private static File getSha256File(File file) {
+        return new File(file.getPath() + SHA256_SUFFIX);
+    }
+
+    /**
+     * Save the SHA-256 that was calculated while downloading {@code file}
+     * next to it, together with its size and time, so it is only trusted as
+     * long as the file is not changed afterwards.
+     */
+    public static void saveDownloadedSha256(File file, String sha256) {
+        String line = sha256 + " " + file.length() + " " + file.lastModified();
+        try {
+            FileUtils.writeStringToFile(getSha256File(file), line, Charset.forName("UTF-8"));
+        } catch (IOException e) {
+            Log.e(TAG, "Could not save SHA-256 of " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the SHA-256 saved by {@link #saveDownloadedSha256(File, String)},
+     * or {@code null} if there is none or {@code file} changed since
+     */
+    @Nullable
+    static String getDownloadedSha256(File file) {
+        File sha256File = getSha256File(file);
+        if (!sha256File.isFile()) {
+            return null;
+        }
+        try {
+            String[] parts = FileUtils.readFileToString(sha256File, Charset.forName("UTF-8")).trim().split(" ");
+            if (parts.length == 3
+                    && file.length() == Long.parseLong(parts[1])
+                    && file.lastModified() == Long.parseLong(parts[2])) {
+                return parts[0];
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.e(TAG, "Could not read SHA-256 of " + file + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Forget APKs that are gone or were changed, then delete the least
+     * recently used ones until all of them together fit into {@code maxBytes}.
+     * The most recently used APK is always kept, since it might be about to
+     * be installed.
+     */
+    public static void trim(Context context, long maxBytes) {
+        ApkCacheIndex index = ApkCacheIndex.get(context);
+        File storeDir = getApkStoreDir(context);
+        List<ApkCacheIndex.Entry> entries = index.getEntries();
+        long totalBytes = 0;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            ApkCacheIndex.Entry entry = entries.get(i);
+            File file = new File(storeDir, entry.fileName);
+            if (!isUnchanged(file, entry)) {
+                index.remove(entry.key);
+                FileUtils.deleteQuietly(file);
+                entries.remove(i);
+            } else {
+                totalBytes += entry.size;
+            }
+        }
+        for (int i = 0; i < entries.size() - 1 && totalBytes > maxBytes; i++) {
+            ApkCacheIndex.Entry entry = entries.get(i);
+            Utils.debugLog(TAG, "Cache is over its budget, deleting " + entry.fileName);
+            index.remove(entry.key);
+            FileUtils.deleteQuietly(new File(storeDir, entry.fileName));
+            totalBytes -= entry.size;
+        }
+        index.flush();
+    }
+
     /**
      * Verifies the size of the file on disk matches, and then hashes the file to compare with what
      * we received from the signed repo (i.e. {@link Apk#hash} and {@link Apk#hashType}).
      * Bails out if the file sizes don't match to prevent having to do the work of hashing the file.
+     * The hashing is also skipped if the SHA-256 was already calculated while downloading.
      */
     public static boolean apkIsCached(File apkFile, Apk apkToCheck) {
-        return apkFile.length() == apkToCheck.size &&
-                Utils.isFileMatchingHash(apkFile, apkToCheck.hash, apkToCheck.hashType);
+        if (apkFile.length() != apkToCheck.size) {
+            return false;
+        }
+        String sha256 = getDownloadedSha256(apkFile);
+        if (sha256 != null && "sha256".equalsIgnoreCase(apkToCheck.hashType)) {
+            return sha256.equalsIgnoreCase(apkToCheck.hash);
+        }
+        return Utils.isFileMatchingHash(apkFile, apkToCheck.hash, apkToCheck.hashType);
     }
 
     /**
@@ -0,0 +1,190 @@
+package org.fdroid.fdroid.installer;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The persistent index of the APKs in the content-addressed part of
+ * {@link ApkCache}, which maps the hash of an APK to the file it is stored in,
+ * together with what the file looked like when its hash was last verified.
+ * The entries are kept in least recently used order, so the oldest ones can
+ * be deleted when the cache grows larger than its budget.
+ * <p>
+ * This is small enough to be kept in memory completely, it is written back
+ * to disk after every change.  Only the access times are written at most every
+ * {@link #USE_WRITE_INTERVAL_MILLIS}, or along with the next change, since every
+ * lookup updates them.  Losing a few of those only affects which APK gets
+ * deleted first.  It is not stored in the APK cache directory
+ * itself, since {@link org.fdroid.fdroid.work.CleanCacheWorker} deletes
+ * everything in there based on age.
+ */
+final class ApkCacheIndex {
+    private static final String TAG = "ApkCacheIndex";
+
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "apk-cache.bin";
+
+    static final long USE_WRITE_INTERVAL_MILLIS = 10 * 60 * 1000;
+
+    static final class Entry {
+        final String key;
+        final String fileName;
+        final long size;
+        final long lastModified;
+        final long verifiedAt;
+        long lastUsed;
+
+        Entry(String key, String fileName, long size, long lastModified, long verifiedAt, long lastUsed) {
+            this.key = key;
+            this.fileName = fileName;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.verifiedAt = verifiedAt;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private static ApkCacheIndex instance;
+
+    private final File file;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long lastWriteMillis;
+    private boolean unwrittenUses;
+
+    private ApkCacheIndex(File file) {
+        this.file = file;
+        read();
+        lastWriteMillis = System.currentTimeMillis();
+    }
+
+    static synchronized ApkCacheIndex get(Context context) {
+        if (instance == null) {
+            instance = new ApkCacheIndex(new File(context.getCacheDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * Forget the in-memory copy, for tests which get a new cache dir each time.
+     */
+    static synchronized void clearInstance() {
+        instance = null;
+    }
+
+    /**
+     * Look up an entry and mark it as the most recently used one.
+     */
+    @Nullable
+    synchronized Entry use(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            long now = System.currentTimeMillis();
+            entry.lastUsed = now;
+            unwrittenUses = true;
+            if (now - lastWriteMillis >= USE_WRITE_INTERVAL_MILLIS) {
+                write();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Write access times that were not written yet.
+     */
+    synchronized void flush() {
+        if (unwrittenUses) {
+            write();
+        }
+    }
+
+    synchronized void put(Entry entry) {
+        entries.remove(entry.key);
+        entries.put(entry.key, entry);
+        write();
+    }
+
+    synchronized void remove(String key) {
+        if (entries.remove(key) != null) {
+            write();
+        }
+    }
+
+    /**
+     * @return all entries, the least recently used one first
+     */
+    synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    private void read() {
+        if (!file.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readUTF(),
+                        in.readLong(), in.readLong(), in.readLong(), in.readLong());
+                entries.put(entry.key, entry);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read " + file + ": " + e.getMessage());
+            entries.clear();
+        } finally {
+            Utils.closeQuietly(in);
+        }
+    }
+
+    private void write() {
+        lastWriteMillis = System.currentTimeMillis();
+        File tmpFile = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                out.writeUTF(entry.key);
+                out.writeUTF(entry.fileName);
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeLong(entry.verifiedAt);
+                out.writeLong(entry.lastUsed);
+            }
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + tmpFile + " to " + file);
+            }
+            unwrittenUses = false;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write " + file + ": " + e.getMessage());
+            FileUtils.deleteQuietly(tmpFile);
+        } finally {
+            Utils.closeQuietly(out);
+        }
+    }
+}
@@ -65,16 +65,15 @@ public class ApkFileProvider extends FileProvider {
     }
 
     /**
-     * Copies the APK into private data directory of F-Droid and returns a
-     * {@code file://} or {@code content://} URI to be used for the
-     * actual installation process.  Only APKs will ever use a {@code content://}
-     * URI, any other file will always use a {@code file://} URI since F-Droid
-     * itself handles their whole installation process.
+     * Returns a {@code file://} or {@code content://} URI to be used for the
+     * actual installation process of a file that was already copied into the
+     * private data directory of F-Droid by
+     * {@link ApkCache#copyApkFromCacheToFiles(Context, File, Apk)}.  Only APKs
+     * will ever use a {@code content://} URI, any other file will always use a
+     * {@code file://} URI since F-Droid itself handles their whole installation
+     * process.
      */
-    public static Uri getSafeUri(Context context, Uri localApkUri, Apk expectedApk)
-            throws IOException {
-        File apkFile = new File(localApkUri.getPath());
-        SanitizedFile tempApkFile = ApkCache.copyApkFromCacheToFiles(context, apkFile, expectedApk);
+    public static Uri getSafeUri(Context context, SanitizedFile tempApkFile, Apk expectedApk) {
         return getSafeUri(context, tempApkFile,
                 Build.VERSION.SDK_INT >= 24 && expectedApk.isApk());
 
@@ -215,9 +215,15 @@ public class InstallManagerService extends Service {
         getMainObb(canonicalUrl, apk);
         getPatchObb(canonicalUrl, apk);
 
+        File verifiedApk = ApkCache.getVerifiedApk(this, apk);
         File apkFilePath = ApkCache.getApkDownloadPath(this, apk.getCanonicalUrl());
         long apkFileSize = apkFilePath.length();
-        if (!apkFilePath.exists() || apkFileSize < apk.size) {
+        if (verifiedApk != null) {
+            Utils.debugLog(TAG, "skip download, already verified, straight to install " + canonicalUrl + " "
+                    + verifiedApk);
+            sendBroadcast(intent.getData(), Downloader.ACTION_STARTED, verifiedApk);
+            sendBroadcast(intent.getData(), Downloader.ACTION_COMPLETE, verifiedApk);
+        } else if (!apkFilePath.exists() || apkFileSize < apk.size) {
             Utils.debugLog(TAG, "download " + canonicalUrl + " " + apkFilePath);
             DownloaderService.queueUsingRandomMirror(this, apk.repoId, canonicalUrl);
         } else if (ApkCache.apkIsCached(apkFilePath, apk)) {
@@ -427,6 +433,7 @@ public class InstallManagerService extends Service {
                                 // Will happen if we fell back to DefaultInstaller for some reason.
                             }
                         }
+                        StagedApkRegistry.release(context, canonicalUrl);
                         localBroadcastManager.unregisterReceiver(this);
                         break;
                     case Installer.ACTION_INSTALL_INTERRUPTED:
@@ -438,6 +445,7 @@ public class InstallManagerService extends Service {
                         } else {
                             appUpdateStatusManager.removeApk(canonicalUrl);
                         }
+                        StagedApkRegistry.release(context, canonicalUrl);
                         localBroadcastManager.unregisterReceiver(this);
                         break;
                     case Installer.ACTION_INSTALL_USER_INTERACTION:
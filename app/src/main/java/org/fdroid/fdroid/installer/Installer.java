@@ -35,11 +35,13 @@ import org.fdroid.fdroid.BuildConfig;
 import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.data.Apk;
 import org.fdroid.fdroid.data.ApkProvider;
+import org.fdroid.fdroid.data.SanitizedFile;
 import org.fdroid.fdroid.privileged.views.AppDiff;
 import org.fdroid.fdroid.privileged.views.AppSecurityPermissions;
 import org.fdroid.fdroid.privileged.views.InstallConfirmActivity;
 import org.fdroid.fdroid.privileged.views.UninstallDialogActivity;
 
+import java.io.File;
 import java.io.IOException;
 
 import androidx.annotation.NonNull;
@@ -277,19 +279,21 @@ public abstract class Installer {
      * @see <a href="https://issuetracker.google.com/issues/37091886">ACTION_INSTALL_PACKAGE Fails For Any Possible Uri</a>
      */
     public void installPackage(Uri localApkUri, Uri canonicalUri) {
-        Uri sanitizedUri;
+        SanitizedFile tempApkFile;
 
         try {
-            sanitizedUri = ApkFileProvider.getSafeUri(context, localApkUri, apk);
+            tempApkFile = ApkCache.copyApkFromCacheToFiles(context, new File(localApkUri.getPath()), apk);
         } catch (IOException e) {
             Utils.debugLog(TAG, e.getMessage(), e);
             sendBroadcastInstall(canonicalUri, Installer.ACTION_INSTALL_INTERRUPTED, e.getMessage());
             return;
         }
+        Uri sanitizedUri = ApkFileProvider.getSafeUri(context, tempApkFile, apk);
 
         try {
-            // verify that permissions of the apk file match the ones from the apk object
-            ApkVerifier apkVerifier = new ApkVerifier(context, localApkUri, apk);
+            // verify that permissions of the apk file match the ones from the apk object,
+            // using the copy that will be installed, since the cached APK might have moved
+            ApkVerifier apkVerifier = new ApkVerifier(context, Uri.fromFile(tempApkFile), apk);
             apkVerifier.verifyApk();
         } catch (ApkVerifier.ApkVerificationException e) {
             Utils.debugLog(TAG, e.getMessage(), e);
@@ -0,0 +1,143 @@
+package org.fdroid.fdroid.installer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.work.StagedApkCleanupWorker;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Keeps track of the APKs that {@link ApkCache} staged in the files directory
+ * for installing, so they are deleted once the install finished, or at the
+ * latest after {@link #TIMEOUT_MILLIS}.  The list is persisted, so the files
+ * are still deleted if F-Droid was killed in the meantime, and a single
+ * {@link StagedApkCleanupWorker} handles the timeouts for all of them.
+ * <p>
+ * The number of bytes and files this freed up is counted, see
+ * {@link #getReclaimedBytes(Context)}.  Files that were hard-linked from the
+ * APK cache do not free up anything, since the data is still in the cache.
+ * {@link org.fdroid.fdroid.work.CleanCacheWorker#deleteOldInstallerFiles(Context)}
+ * stays as the fallback for files that were staged before this existed.
+ */
+public final class StagedApkRegistry {
+    private static final String TAG = "StagedApkRegistry";
+
+    public static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(20);
+
+    private static final String PREFS_NAME = "staged-apks";
+    private static final String RECLAIMED_BYTES = "reclaimedBytes";
+    private static final String RECLAIMED_FILES = "reclaimedFiles";
+
+    private StagedApkRegistry() {
+    }
+
+    /**
+     * Register a staged APK for deletion.
+     *
+     * @param size         the bytes deleting it frees up, {@code 0} if it is a hard link
+     * @param canonicalUrl the APK being installed, so {@link #release(Context, String)}
+     *                     can find it, or {@code null} if it is not from a repo
+     */
+    public static void add(Context context, File file, long size, @Nullable String canonicalUrl) {
+        long expiry = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        String value = expiry + " " + size + " " + (canonicalUrl == null ? "" : canonicalUrl);
+        synchronized (StagedApkRegistry.class) {
+            getPrefs(context).edit().putString(file.getAbsolutePath(), value).apply();
+        }
+        StagedApkCleanupWorker.schedule(context, TIMEOUT_MILLIS);
+    }
+
+    /**
+     * The install of {@code canonicalUrl} finished or failed, so its staged
+     * APKs are not needed anymore.
+     */
+    public static void release(Context context, String canonicalUrl) {
+        if (TextUtils.isEmpty(canonicalUrl)) {
+            return;
+        }
+        deleteMatching(context, canonicalUrl, Long.MIN_VALUE);
+    }
+
+    /**
+     * Delete all staged APKs that timed out.
+     *
+     * @return milliseconds until the next one times out, or {@code -1} if there are none left
+     */
+    public static long deleteExpired(Context context) {
+        long now = System.currentTimeMillis();
+        long nextExpiry = deleteMatching(context, null, now);
+        return nextExpiry == Long.MAX_VALUE ? -1 : Math.max(0, nextExpiry - now);
+    }
+
+    /**
+     * Delete the entries that either belong to {@code canonicalUrl}, or expired before {@code now}.
+     *
+     * @return the earliest expiry of the remaining entries, or {@link Long#MAX_VALUE}
+     */
+    private static synchronized long deleteMatching(Context context, @Nullable String canonicalUrl, long now) {
+        SharedPreferences prefs = getPrefs(context);
+        SharedPreferences.Editor editor = prefs.edit();
+        long nextExpiry = Long.MAX_VALUE;
+        long reclaimedBytes = 0;
+        int reclaimedFiles = 0;
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (!(entry.getValue() instanceof String) || !entry.getKey().startsWith("/")) {
+                continue;
+            }
+            String[] parts = ((String) entry.getValue()).split(" ", 3);
+            long expiry;
+            long size;
+            try {
+                expiry = Long.parseLong(parts[0]);
+                size = Long.parseLong(parts[1]);
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                expiry = Long.MIN_VALUE;
+                size = 0;
+            }
+            boolean released = canonicalUrl != null && parts.length == 3 && canonicalUrl.equals(parts[2]);
+            if (!released && expiry > now) {
+                nextExpiry = Math.min(nextExpiry, expiry);
+                continue;
+            }
+            File file = new File(entry.getKey());
+            if (file.exists() && FileUtils.deleteQuietly(file)) {
+                Utils.debugLog(TAG, "Deleted staged " + file);
+                reclaimedBytes += size;
+                reclaimedFiles++;
+            }
+            editor.remove(entry.getKey());
+        }
+        if (reclaimedFiles > 0) {
+            editor.putLong(RECLAIMED_BYTES, prefs.getLong(RECLAIMED_BYTES, 0) + reclaimedBytes);
+            editor.putInt(RECLAIMED_FILES, prefs.getInt(RECLAIMED_FILES, 0) + reclaimedFiles);
+        }
+        editor.apply();
+        return nextExpiry;
+    }
+
+    /**
+     * @return the total bytes freed up by deleting staged APKs so far
+     */
+    public static long getReclaimedBytes(Context context) {
+        return getPrefs(context).getLong(RECLAIMED_BYTES, 0);
+    }
+
+    /**
+     * @return the total number of staged APKs that were deleted so far
+     */
+    public static int getReclaimedFiles(Context context) {
+        return getPrefs(context).getInt(RECLAIMED_FILES, 0);
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
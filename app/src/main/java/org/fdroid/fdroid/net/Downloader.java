@@ -7,15 +7,21 @@ import org.fdroid.fdroid.ProgressListener;
 import org.fdroid.fdroid.Utils;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ConnectException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Timer;
 import java.util.TimerTask;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import vendored.org.apache.commons.codec.binary.Hex;
 
 public abstract class Downloader {
 
@@ -57,6 +63,7 @@ public abstract class Downloader {
     final String urlString;
     String cacheTag;
     boolean notFound;
+    private String sha256;
 
     private volatile int timeout = DEFAULT_TIMEOUT;
 
@@ -113,6 +120,17 @@ public abstract class Downloader {
 
     public abstract void download() throws ConnectException, IOException, InterruptedException;
 
+    /**
+     * The SHA-256 of {@link #outputFile}, calculated while it was written, so
+     * it does not need to be read again to verify it.
+     *
+     * @return the lowercase hex digest, or {@code null} if nothing was downloaded
+     */
+    @Nullable
+    public String getSha256() {
+        return sha256;
+    }
+
     /**
      * @return whether the requested file was not found in the repo (e.g. HTTP 404 Not Found)
      */
@@ -122,8 +140,19 @@ public abstract class Downloader {
 
     void downloadFromStream(boolean resumable) throws IOException, InterruptedException {
         Utils.debugLog(TAG, "Downloading from stream");
+        sha256 = null;
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        if (resumable) {
+            // the part that was already downloaded has to be hashed first
+            updateDigest(digest, outputFile);
+        }
         InputStream input = null;
-        OutputStream outputStream = new FileOutputStream(outputFile, resumable);
+        OutputStream outputStream = new DigestOutputStream(new FileOutputStream(outputFile, resumable), digest);
         try {
             input = getInputStream();
 
@@ -140,6 +169,20 @@ public abstract class Downloader {
         // Even if we have completely downloaded the file, we should probably respect
         // the wishes of the user who wanted to cancel us.
         throwExceptionIfInterrupted();
+        sha256 = Hex.encodeHexString(digest.digest());
+    }
+
+    private static void updateDigest(MessageDigest digest, File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            Utils.closeQuietly(input);
+        }
     }
 
     /**
@@ -243,6 +243,9 @@ public class DownloaderService extends Service {
                 sendBroadcast(uri, Downloader.ACTION_INTERRUPTED, localFile, getString(R.string.download_404),
                         repoId, canonicalUrl);
             } else {
+                if (downloader.getSha256() != null) {
+                    ApkCache.saveDownloadedSha256(localFile, downloader.getSha256());
+                }
                 sendBroadcast(uri, Downloader.ACTION_COMPLETE, localFile, repoId, canonicalUrl);
             }
         } catch (InterruptedException e) {
@@ -4,9 +4,12 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 
+import com.bumptech.glide.Glide;
 import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
 import com.bumptech.glide.annotation.GlideModule;
 import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.model.GlideUrl;
 import com.bumptech.glide.load.resource.bitmap.BitmapTransitionOptions;
 import com.bumptech.glide.load.resource.drawable.DrawableTransitionOptions;
 import com.bumptech.glide.module.AppGlideModule;
@@ -15,6 +18,8 @@ import com.bumptech.glide.request.RequestOptions;
 import org.fdroid.fdroid.FDroidApp;
 import org.fdroid.fdroid.Preferences;
 
+import java.io.InputStream;
+
 import androidx.annotation.NonNull;
 
 /**
@@ -32,4 +37,13 @@ public class FDroidGlideModule extends AppGlideModule {
                         .onlyRetrieveFromCache(!Preferences.get().isBackgroundDownloadAllowed())
                         .timeout(FDroidApp.getTimeout()));
     }
+
+    /**
+     * Replace Glide's own HTTP stack so all images go through
+     * {@link HttpDownloader} and the repo mirrors.
+     */
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
+        registry.replace(GlideUrl.class, InputStream.class, new RepoImageModelLoader.Factory(context));
+    }
 }
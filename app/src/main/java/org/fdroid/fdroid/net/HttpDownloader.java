@@ -134,14 +134,14 @@ public class HttpDownloader extends Downloader {
         HttpURLConnection tmpConn = getConnection();
         tmpConn.setRequestMethod("HEAD");
 
-        int contentLength = -1;
+        long contentLength = -1;
         int statusCode = tmpConn.getResponseCode();
         tmpConn.disconnect();
         newFileAvailableOnServer = false;
         switch (statusCode) {
             case HttpURLConnection.HTTP_OK:
                 String headETag = tmpConn.getHeaderField(HEADER_FIELD_ETAG);
-                contentLength = tmpConn.getContentLength();
+                contentLength = getContentLength(tmpConn);
                 fileFullSize = contentLength;
                 if (!TextUtils.isEmpty(cacheTag)) {
                     if (cacheTag.equals(headETag)) {
@@ -177,11 +177,33 @@ public class HttpDownloader extends Downloader {
             resumable = true;
         }
         setupConnection(resumable);
+        if (resumable && connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+            // the server ignored the Range header, so appending would corrupt the file
+            Utils.debugLog(TAG, urlString + " returned " + connection.getResponseCode() + ", not resuming");
+            resumable = false;
+        }
         Utils.debugLog(TAG, "downloading " + urlString + " (is resumable: " + resumable + ")");
         downloadFromStream(resumable);
         cacheTag = connection.getHeaderField(HEADER_FIELD_ETAG);
     }
 
+    /**
+     * {@link HttpURLConnection#getContentLength()} is an {@code int}, so it
+     * does not work with files bigger than 2 GB, and
+     * {@link HttpURLConnection#getContentLengthLong()} requires {@code android-24}.
+     */
+    private static long getContentLength(HttpURLConnection connection) {
+        String contentLength = connection.getHeaderField("Content-Length");
+        if (contentLength != null) {
+            try {
+                return Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                Utils.debugLog(TAG, "Invalid Content-Length: " + contentLength);
+            }
+        }
+        return -1;
+    }
+
     public static boolean isSwapUrl(Uri uri) {
         return isSwapUrl(uri.getHost(), uri.getPort());
     }
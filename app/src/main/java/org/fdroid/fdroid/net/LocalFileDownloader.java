@@ -25,6 +25,7 @@ public class LocalFileDownloader extends Downloader {
 
     private InputStream inputStream;
     private final File sourceFile;
+    private long alreadyDownloaded;
 
     LocalFileDownloader(Uri uri, File destFile) {
         super(uri, destFile);
@@ -44,6 +45,7 @@ public class LocalFileDownloader extends Downloader {
     protected InputStream getDownloadersInputStream() throws IOException {
         try {
             inputStream = new FileInputStream(sourceFile);
+            IOUtils.skipFully(inputStream, alreadyDownloaded);
             return inputStream;
         } catch (FileNotFoundException | SecurityException e) {
             throw new ProtocolException(e.getLocalizedMessage());
@@ -82,6 +84,7 @@ public class LocalFileDownloader extends Downloader {
         } else if (fileLength > 0) {
             resumable = true;
         }
+        alreadyDownloaded = resumable ? fileLength : 0;
         downloadFromStream(resumable);
     }
 }
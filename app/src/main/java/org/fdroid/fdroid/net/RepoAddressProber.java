@@ -0,0 +1,183 @@
+package org.fdroid.fdroid.net;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import org.fdroid.fdroid.IndexUpdater;
+import org.fdroid.fdroid.Utils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.Nullable;
+
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.functions.Consumer;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Finds where exactly a repo is when the user adds one, since people often
+ * enter just the host name, or leave off {@code /repo}.  All the usual
+ * {@link #PATHS_TO_CHECK paths} below the address, and below each mirror that
+ * came with it, are asked for the signed index at the same time.  The first
+ * one in the order of {@link #getCandidates(String, List)} that has it wins,
+ * even if a less preferred one answered earlier, and the others are then
+ * cancelled.  A slow or filtered network costs one timeout rather than one
+ * for each path.
+ * <p>
+ * Answers from servers are remembered for {@link #CACHE_MILLIS}, so trying to
+ * add the same repo again, e.g. after cancelling the credentials dialog, does
+ * not probe everything again.  Failed requests are not remembered.
+ */
+public final class RepoAddressProber {
+    private static final String TAG = "RepoAddressProber";
+
+    /**
+     * Where repos are usually found below the address that was entered.
+     */
+    static final String[] PATHS_TO_CHECK = {"", "fdroid/repo", "repo"};
+
+    static final long CACHE_MILLIS = 60 * 1000;
+
+    private static final Map<String, Result> CACHE = new ConcurrentHashMap<>();
+
+    public static final class Result {
+        /**
+         * The address of the repo, without the index file name.
+         */
+        public final String address;
+
+        /**
+         * The HTTP status code for the index, or {@code -1} if the request failed.
+         */
+        public final int statusCode;
+
+        private final long timeMillis;
+
+        Result(String address, int statusCode) {
+            this.address = address;
+            this.statusCode = statusCode;
+            this.timeMillis = SystemClock.elapsedRealtime();
+        }
+
+        /**
+         * @return whether there is a repo at {@link #address}, even if it needs
+         * a username and password
+         */
+        public boolean isFound() {
+            return statusCode == HttpURLConnection.HTTP_OK || statusCode == HttpURLConnection.HTTP_UNAUTHORIZED;
+        }
+    }
+
+    private RepoAddressProber() {
+    }
+
+    /**
+     * @return all addresses to check for {@code address}, in the order they
+     * would be preferred
+     */
+    public static List<String> getCandidates(String address, List<String> mirrors) {
+        Set<String> candidates = new LinkedHashSet<>();
+        List<String> baseAddresses = new ArrayList<>(mirrors.size() + 1);
+        baseAddresses.add(address);
+        baseAddresses.addAll(mirrors);
+        for (String baseAddress : baseAddresses) {
+            for (String path : PATHS_TO_CHECK) {
+                candidates.add(Uri.parse(baseAddress).buildUpon().appendEncodedPath(path).build().toString());
+            }
+        }
+        return new ArrayList<>(candidates);
+    }
+
+    /**
+     * Check all {@code candidates} at once.
+     *
+     * @param fallbackAddress what to return when none of the candidates has a repo
+     * @param timeout         for connecting to and reading from each candidate
+     * @param waitingFor      called with each candidate whose answer is needed next
+     * @return the first candidate that has a repo, or the {@code fallbackAddress}
+     * with the status code {@code -1}
+     */
+    public static Single<Result> probe(final List<String> candidates, String fallbackAddress, final int timeout,
+                                       @Nullable final Consumer<String> waitingFor) {
+        final AtomicInteger next = new AtomicInteger();
+        return Observable.fromIterable(candidates)
+                // all are requested right away, but the results come in the order of the candidates
+                .concatMapEager(candidate -> probe(candidate, timeout).toObservable())
+                .doOnSubscribe(disposable -> reportWaitingFor(waitingFor, candidates, next.get()))
+                .doOnNext(result -> {
+                    if (!result.isFound()) {
+                        reportWaitingFor(waitingFor, candidates, next.incrementAndGet());
+                    }
+                })
+                .filter(Result::isFound)
+                .firstElement()
+                .defaultIfEmpty(new Result(fallbackAddress, -1));
+    }
+
+    public static Single<Result> probe(List<String> candidates, String fallbackAddress, int timeout) {
+        return probe(candidates, fallbackAddress, timeout, null);
+    }
+
+    private static void reportWaitingFor(@Nullable Consumer<String> waitingFor, List<String> candidates, int index)
+            throws Throwable {
+        if (waitingFor != null && index < candidates.size()) {
+            waitingFor.accept(candidates.get(index));
+        }
+    }
+
+    static Maybe<Result> probe(final String address, final int timeout) {
+        Result cached = CACHE.get(address);
+        if (cached != null && SystemClock.elapsedRealtime() - cached.timeMillis < CACHE_MILLIS) {
+            return Maybe.just(cached);
+        }
+        return Maybe.<Result>create(emitter -> {
+            Utils.debugLog(TAG, "Check for repo at " + address);
+            HttpURLConnection connection = null;
+            int statusCode;
+            try {
+                Uri uri = Uri.parse(address).buildUpon().appendPath(IndexUpdater.SIGNED_FILE_NAME).build();
+                connection = (HttpURLConnection) new URL(uri.toString()).openConnection();
+                // blocking network calls cannot be interrupted, but closing the connection ends them
+                emitter.setCancellable(connection::disconnect);
+                connection.setRequestMethod("HEAD");
+                connection.setConnectTimeout(timeout);
+                connection.setReadTimeout(timeout);
+                statusCode = connection.getResponseCode();
+            } catch (IOException e) {
+                if (emitter.isDisposed()) {
+                    return;
+                }
+                Utils.debugLog(TAG, "Error while searching for repo at " + address + ": " + e.getLocalizedMessage());
+                statusCode = -1;
+            } finally {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+            }
+            Result result = new Result(address, statusCode);
+            if (statusCode != -1) {
+                // failures might just be the network, which could be back when trying again
+                CACHE.put(address, result);
+            }
+            if (result.isFound()) {
+                Utils.debugLog(TAG, "Found F-Droid repo at " + address);
+            }
+            emitter.onSuccess(result);
+        }).subscribeOn(Schedulers.io());
+    }
+
+    static void clearCache() {
+        CACHE.clear();
+    }
+}
@@ -0,0 +1,187 @@
+package org.fdroid.fdroid.net;
+
+import android.content.Context;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.load.model.stream.HttpGlideUrlLoader;
+
+import org.fdroid.fdroid.FDroidApp;
+import org.fdroid.fdroid.RepoIconBundle;
+import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.data.Repo;
+import org.fdroid.fdroid.data.RepoCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Loads all HTTP images for Glide, e.g. icons, feature graphics and
+ * screenshots, using {@link HttpDownloader}, so they get the same proxy/Tor
+ * settings, HTTP Basic Auth, and {@code User-Agent} as all other downloads.
+ * <p>
+ * If the URL is from a known repo, this also uses the repo's mirrors, with
+ * the same mirror state and timeouts as the index and APK downloads: each
+ * image is first tried from the mirror that was last used for that repo,
+ * and on errors {@link FDroidApp#getNewMirrorOnError(String, Repo)} picks
+ * the next one.  Glide still caches the image by its canonical URL, so it
+ * is only downloaded once no matter which mirror it came from.
+ * <p>
+ * Icons that are in the repo's {@link RepoIconBundle} are read from disk
+ * instead of being downloaded at all.
+ */
+public class RepoImageModelLoader implements ModelLoader<GlideUrl, InputStream> {
+    private static final String TAG = "RepoImageModelLoader";
+
+    private final Context context;
+
+    RepoImageModelLoader(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public boolean handles(@NonNull GlideUrl glideUrl) {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public LoadData<InputStream> buildLoadData(@NonNull GlideUrl glideUrl, int width, int height,
+                                               @NonNull Options options) {
+        Integer timeout = options.get(HttpGlideUrlLoader.TIMEOUT);
+        return new LoadData<>(glideUrl, new Fetcher(context, glideUrl.toStringUrl(),
+                timeout == null ? Downloader.DEFAULT_TIMEOUT : timeout));
+    }
+
+    static class Fetcher implements DataFetcher<InputStream> {
+        private final Context context;
+        private final String urlString;
+        private final int timeout;
+
+        private volatile boolean cancelled;
+        private InputStream inputStream;
+        private DataSource dataSource = DataSource.REMOTE;
+
+        Fetcher(Context context, String urlString, int timeout) {
+            this.context = context;
+            this.urlString = urlString;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super InputStream> callback) {
+            Repo repo = RepoCache.findByUrl(context, urlString);
+            if (repo == null || TextUtils.isEmpty(repo.address) || !urlString.startsWith(repo.address)) {
+                try {
+                    inputStream = open(urlString, null, timeout);
+                    callback.onDataReady(inputStream);
+                } catch (IOException e) {
+                    callback.onLoadFailed(e);
+                }
+                return;
+            }
+
+            String path = urlString.substring(repo.address.length());
+            File cachedIcon = RepoIconBundle.getCachedIcon(context, repo.getId(), path);
+            if (cachedIcon != null) {
+                try {
+                    inputStream = new FileInputStream(cachedIcon);
+                    dataSource = DataSource.LOCAL;
+                    callback.onDataReady(inputStream);
+                    return;
+                } catch (IOException e) {
+                    Utils.debugLog(TAG, "Failed to read " + cachedIcon + ": " + e.getLocalizedMessage());
+                }
+            }
+
+            String url = FDroidApp.switchUrlToLastWorkingMirror(urlString, repo);
+            int n = repo.getMirrorCount() * 3; // 3 is the number of timeouts we have. 10s, 30s & 60s
+            for (int i = 0; i <= n && !cancelled; i++) {
+                try {
+                    inputStream = open(url, repo, FDroidApp.getTimeout());
+                    callback.onDataReady(inputStream);
+                    return;
+                } catch (IOException e) {
+                    Utils.debugLog(TAG, "Failed to get " + url + ": " + e.getLocalizedMessage());
+                }
+                try {
+                    url = FDroidApp.getNewMirrorOnError(url, repo);
+                } catch (IOException e) {
+                    callback.onLoadFailed(e);
+                    return;
+                }
+            }
+            callback.onLoadFailed(new IOException("Failed to get " + urlString));
+        }
+
+        private InputStream open(String url, @Nullable Repo repo, int timeout) throws IOException {
+            HttpDownloader downloader;
+            if (repo == null) {
+                downloader = new HttpDownloader(Uri.parse(url), null);
+            } else {
+                downloader = new HttpDownloader(Uri.parse(url), null, repo.username, repo.password);
+            }
+            downloader.setTimeout(timeout);
+            try {
+                return downloader.getInputStream();
+            } catch (IOException e) {
+                downloader.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void cleanup() {
+            Utils.closeQuietly(inputStream);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @NonNull
+        @Override
+        public Class<InputStream> getDataClass() {
+            return InputStream.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+    }
+
+    public static class Factory implements ModelLoaderFactory<GlideUrl, InputStream> {
+        private final Context context;
+
+        public Factory(Context context) {
+            this.context = context;
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<GlideUrl, InputStream> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new RepoImageModelLoader(context);
+        }
+
+        @Override
+        public void teardown() {
+            // nothing to clean up
+        }
+    }
+}
@@ -35,6 +35,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
@@ -74,6 +75,8 @@ import androidx.core.content.ContextCompat;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.disposables.Disposable;
 
 public class AppDetailsActivity extends AppCompatActivity
         implements AppDetailsRecyclerViewAdapter.AppDetailsRecyclerViewAdapterCallbacks {
@@ -85,11 +88,20 @@ public class AppDetailsActivity extends AppCompatActivity
     private static final int REQUEST_PERMISSION_DIALOG = 3;
     private static final int REQUEST_UNINSTALL_DIALOG = 4;
 
+    /**
+     * How long to hold back the enter transition while the app is still being
+     * loaded, so a slow database does not leave the user without any feedback.
+     */
+    private static final long MAX_POSTPONE_MILLIS = 500;
+
     @SuppressWarnings("unused")
     protected BluetoothAdapter bluetoothAdapter;
 
     private FDroidApp fdroidApp;
+    private String packageName;
     private App app;
+    private Disposable loadDisposable;
+    private long createdMillis;
     private RecyclerView recyclerView;
     private AppDetailsRecyclerViewAdapter adapter;
     private LocalBroadcastManager localBroadcastManager;
@@ -116,9 +128,10 @@ public class AppDetailsActivity extends AppCompatActivity
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         getSupportActionBar().setDisplayShowTitleEnabled(false); // clear title
         supportPostponeEnterTransition();
+        createdMillis = SystemClock.uptimeMillis();
 
-        String packageName = getPackageNameFromIntent(getIntent());
-        if (!resetCurrentApp(packageName)) {
+        packageName = getPackageNameFromIntent(getIntent());
+        if (TextUtils.isEmpty(packageName)) {
             finish();
             return;
         }
@@ -128,20 +141,80 @@ public class AppDetailsActivity extends AppCompatActivity
         localBroadcastManager = LocalBroadcastManager.getInstance(this);
 
         recyclerView = (RecyclerView) findViewById(R.id.rvDetails);
-        adapter = new AppDetailsRecyclerViewAdapter(this, app, this);
         LinearLayoutManager lm = new LinearLayoutManager(this, LinearLayoutManager.VERTICAL, false);
         lm.setStackFromEnd(false);
+        recyclerView.setLayoutManager(lm);
+
+        AppDetailsCache.Details details = AppDetailsCache.getIfCached(this, packageName);
+        if (details != null) {
+            onDetailsLoaded(details);
+        } else {
+            recyclerView.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    supportStartPostponedEnterTransition();
+                }
+            }, MAX_POSTPONE_MILLIS);
+            loadDetails();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (loadDisposable != null) {
+            loadDisposable.dispose();
+        }
+    }
+
+    /**
+     * Load {@link #app} and its versions in the background, the result is
+     * delivered to {@link #onDetailsLoaded(AppDetailsCache.Details)}.
+     */
+    private void loadDetails() {
+        if (loadDisposable != null) {
+            loadDisposable.dispose();
+        }
+        loadDisposable = AppDetailsCache.load(this, packageName)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(this::onDetailsLoaded,
+                        throwable -> {
+                            Log.e(TAG, "Could not load " + packageName, throwable);
+                            onDetailsLoaded(null);
+                        },
+                        () -> onDetailsLoaded(null));
+    }
+
+    private void onDetailsLoaded(@Nullable AppDetailsCache.Details details) {
+        if (!resetCurrentApp(details)) {
+            finish();
+            return;
+        }
+
+        if (adapter != null) {
+            adapter.updateItems(app, details.apks);
+            refreshStatus();
+            supportInvalidateOptionsMenu();
+            return;
+        }
+
+        adapter = new AppDetailsRecyclerViewAdapter(this, app, details.apks, this);
 
         // Has to be invoked after AppDetailsRecyclerViewAdapter is created.
         refreshStatus();
 
-        recyclerView.setLayoutManager(lm);
         recyclerView.setAdapter(adapter);
+        supportInvalidateOptionsMenu();
 
         recyclerView.getViewTreeObserver().addOnPreDrawListener(
                 new ViewTreeObserver.OnPreDrawListener() {
                     @Override
                     public boolean onPreDraw() {
+                        if (createdMillis > 0) {
+                            Utils.debugLog(TAG, "First draw of " + packageName + " after "
+                                    + (SystemClock.uptimeMillis() - createdMillis) + "ms");
+                            createdMillis = 0;
+                        }
                         supportStartPostponedEnterTransition();
                         return true;
                     }
@@ -170,14 +243,12 @@ public class AppDetailsActivity extends AppCompatActivity
      * refresh the notifications, so they are displayed again.
      */
     private void updateNotificationsForApp() {
-        if (app != null) {
-            AppUpdateStatusManager ausm = AppUpdateStatusManager.getInstance(this);
-            for (AppUpdateStatusManager.AppUpdateStatus status : ausm.getByPackageName(app.packageName)) {
-                if (status.status == AppUpdateStatusManager.Status.Installed) {
-                    ausm.removeApk(status.getCanonicalUrl());
-                } else {
-                    ausm.refreshApk(status.getCanonicalUrl());
-                }
+        AppUpdateStatusManager ausm = AppUpdateStatusManager.getInstance(this);
+        for (AppUpdateStatusManager.AppUpdateStatus status : ausm.getByPackageName(packageName)) {
+            if (status.status == AppUpdateStatusManager.Status.Installed) {
+                ausm.removeApk(status.getCanonicalUrl());
+            } else {
+                ausm.refreshApk(status.getCanonicalUrl());
             }
         }
     }
@@ -185,13 +256,11 @@ public class AppDetailsActivity extends AppCompatActivity
     @Override
     protected void onResume() {
         super.onResume();
-        if (app != null) {
-            visiblePackageName = app.packageName;
-        }
+        visiblePackageName = packageName;
 
         appObserver = new AppObserver(new Handler());
         getContentResolver().registerContentObserver(
-                AppProvider.getHighestPriorityMetadataUri(app.packageName),
+                AppProvider.getHighestPriorityMetadataUri(packageName),
                 true,
                 appObserver);
 
@@ -208,8 +277,12 @@ public class AppDetailsActivity extends AppCompatActivity
      * Then, asks the view to update itself to reflect this status.
      */
     private void refreshStatus() {
+        if (adapter == null) {
+            // still loading, this is called again once it is done
+            return;
+        }
         AppUpdateStatusManager ausm = AppUpdateStatusManager.getInstance(this);
-        Iterator<AppUpdateStatusManager.AppUpdateStatus> statuses = ausm.getByPackageName(app.packageName).iterator();
+        Iterator<AppUpdateStatusManager.AppUpdateStatus> statuses = ausm.getByPackageName(packageName).iterator();
         if (statuses.hasNext()) {
             AppUpdateStatusManager.AppUpdateStatus status = statuses.next();
             updateAppStatus(status, false);
@@ -284,6 +357,10 @@ public class AppDetailsActivity extends AppCompatActivity
      */
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
+        if (app == null && item.getItemId() != android.R.id.home) {
+            // still loading
+            return true;
+        }
         if (item.getItemId() == R.id.action_share) {
             String extraText = String.format("%s (%s)\nhttps://f-droid.org/packages/%s/",
                     app.name, app.summary, app.packageName);
@@ -475,6 +552,10 @@ public class AppDetailsActivity extends AppCompatActivity
     }
 
     private void updateAppStatus(@Nullable AppUpdateStatusManager.AppUpdateStatus newStatus, boolean justReceived) {
+        if (adapter == null || app == null) {
+            // still loading, refreshStatus() gets the current status once it is done
+            return;
+        }
         this.currentStatus = newStatus;
         if (this.currentStatus == null) {
             return;
@@ -543,9 +624,9 @@ public class AppDetailsActivity extends AppCompatActivity
                     && !TextUtils.equals(status.getCanonicalUrl(), currentStatus.getCanonicalUrl())) {
                 Utils.debugLog(TAG, "Ignoring app status change because it belongs to "
                         + status.getCanonicalUrl() + " not " + currentStatus.getCanonicalUrl());
-            } else if (status != null && !TextUtils.equals(status.apk.packageName, app.packageName)) {
+            } else if (status != null && !TextUtils.equals(status.apk.packageName, packageName)) {
                 Utils.debugLog(TAG, "Ignoring app status change because it belongs to "
-                        + status.apk.packageName + " not " + app.packageName);
+                        + status.apk.packageName + " not " + packageName);
             } else {
                 updateAppStatus(status, true);
             }
@@ -689,13 +770,9 @@ public class AppDetailsActivity extends AppCompatActivity
      *
      * @return whether the {@link App} for a given {@code packageName} is still available
      */
-    private boolean resetCurrentApp(String packageName) {
-        if (TextUtils.isEmpty(packageName)) {
-            return false;
-        }
-        app = AppProvider.Helper.findHighestPriorityMetadata(getContentResolver(), packageName);
+    private boolean resetCurrentApp(@Nullable AppDetailsCache.Details details) {
+        app = details == null ? null : details.app;
 
-        //
         AppUpdateStatusManager ausm = AppUpdateStatusManager.getInstance(this);
         for (AppUpdateStatusManager.AppUpdateStatus status : ausm.getByPackageName(packageName)) {
             if (status.status == AppUpdateStatusManager.Status.Installed) {
@@ -711,20 +788,9 @@ public class AppDetailsActivity extends AppCompatActivity
     }
 
     private void onAppChanged() {
-        recyclerView.post(new Runnable() {
-            @Override
-            public void run() {
-                String packageName = app != null ? app.packageName : null;
-                if (!resetCurrentApp(packageName)) {
-                    AppDetailsActivity.this.finish();
-                    return;
-                }
-                AppDetailsRecyclerViewAdapter adapter = (AppDetailsRecyclerViewAdapter) recyclerView.getAdapter();
-                adapter.updateItems(app);
-                refreshStatus();
-                supportInvalidateOptionsMenu();
-            }
-        });
+        // the cache might not have been told about this change yet
+        AppDetailsCache.remove(packageName);
+        loadDetails();
     }
 
     @Override
@@ -736,6 +802,9 @@ public class AppDetailsActivity extends AppCompatActivity
 
     @Override
     public void enableAndroidBeam() {
+        if (app == null) {
+            return;
+        }
         NfcHelper.setAndroidBeam(this, app.packageName);
     }
 
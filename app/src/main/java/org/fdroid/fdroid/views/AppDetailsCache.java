@@ -0,0 +1,194 @@
+package org.fdroid.fdroid.views;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.util.Log;
+import android.util.LruCache;
+
+import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.data.Apk;
+import org.fdroid.fdroid.data.ApkProvider;
+import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.AppProvider;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Everything {@link AppDetailsActivity} needs from the database before it can
+ * show anything: the {@link App} and all its {@link Apk}s.  Apps with many
+ * versions take a while to load, and finding the installed APK can mean
+ * reading the file, so this is loaded in the background, and the last few
+ * apps are kept in memory.  App lists {@link #prefetch(Context, String) prefetch}
+ * an app while the user presses its item, so it is often ready when
+ * {@link AppDetailsActivity} starts.
+ * <p>
+ * The cache is cleared whenever {@link AppProvider} or {@link ApkProvider}
+ * notify about a change, which includes installs and uninstalls.  A load
+ * that raced with a change is not cached, that is what {@link #generation}
+ * is for.  Loads run one after the other, so a prefetch which is still
+ * running when the activity asks for the same app is not done twice.
+ * <p>
+ * The returned instances are shared by everything showing the same app, so
+ * changes to them which are not written to the database stay around until
+ * the cache is cleared.
+ */
+public final class AppDetailsCache {
+    private static final String TAG = "AppDetailsCache";
+
+    private static final int MAX_APPS = 8;
+
+    private static final LruCache<String, Details> CACHE = new LruCache<>(MAX_APPS);
+
+    private static final Scheduler SCHEDULER = Schedulers.from(Executors.newSingleThreadExecutor());
+
+    private static ContentResolver observedResolver;
+    private static int generation;
+
+    private static final ContentObserver OBSERVER = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            clear();
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            clear();
+        }
+    };
+
+    public static final class Details {
+        @NonNull
+        public final App app;
+        @NonNull
+        public final List<Apk> apks;
+
+        Details(@NonNull App app, @NonNull List<Apk> apks) {
+            this.app = app;
+            this.apks = Collections.unmodifiableList(apks);
+        }
+    }
+
+    private AppDetailsCache() {
+    }
+
+    /**
+     * @return the details of {@code packageName} if they are in memory
+     * already, so they can be shown right away
+     */
+    @Nullable
+    static Details getIfCached(Context context, String packageName) {
+        observe(context);
+        return CACHE.get(packageName);
+    }
+
+    /**
+     * Loads the details of {@code packageName} in the background, unless they
+     * are cached.  Completes without a value if there is no such app.
+     */
+    static Maybe<Details> load(Context context, final String packageName) {
+        final Context appContext = context.getApplicationContext();
+        return Maybe.fromCallable(() -> get(appContext, packageName)).subscribeOn(SCHEDULER);
+    }
+
+    /**
+     * Start loading the details of {@code packageName}, because the user is
+     * likely about to open it.
+     */
+    public static void prefetch(Context context, String packageName) {
+        if (getIfCached(context, packageName) != null) {
+            return;
+        }
+        load(context, packageName).subscribe(
+                details -> Utils.debugLog(TAG, "Prefetched " + packageName),
+                throwable -> Log.e(TAG, "Could not prefetch " + packageName, throwable));
+    }
+
+    /**
+     * Forget {@code packageName}, e.g. when it is known to have changed, but
+     * the {@link ContentObserver} might not have been called yet.
+     */
+    static synchronized void remove(String packageName) {
+        generation++;
+        CACHE.remove(packageName);
+    }
+
+    /**
+     * Forget all cached apps, so they are loaded from the database again.
+     */
+    public static synchronized void clear() {
+        generation++;
+        CACHE.evictAll();
+    }
+
+    @WorkerThread
+    @Nullable
+    private static Details get(Context context, String packageName) {
+        int loadGeneration = observe(context);
+        Details details = CACHE.get(packageName);
+        if (details != null) {
+            return details;
+        }
+        App app = AppProvider.Helper.findHighestPriorityMetadata(context.getContentResolver(), packageName);
+        if (app == null) {
+            return null;
+        }
+        details = new Details(app, findApks(context, app));
+        synchronized (AppDetailsCache.class) {
+            if (loadGeneration == generation) {
+                CACHE.put(packageName, details);
+            }
+        }
+        return details;
+    }
+
+    /**
+     * All {@link Apk}s of {@code app} from the repos, plus the installed one
+     * if it is not from any repo, e.g. because it was installed from elsewhere.
+     */
+    @WorkerThread
+    static List<Apk> findApks(Context context, App app) {
+        List<Apk> apks = ApkProvider.Helper.findByPackageName(context, app.packageName);
+        Apk installedApk = app.getInstalledApk(context);
+        // These conditions should be enough to determine if the installedApk
+        // is a generated dummy or a proper APK containing data from a repository.
+        if (installedApk != null && installedApk.added == null && installedApk.sig == null) {
+            installedApk.compatible = true;
+            installedApk.sig = app.installedSig;
+            installedApk.maxSdkVersion = -1;
+            apks.add(installedApk);
+        }
+        return apks;
+    }
+
+    /**
+     * Make sure changes in the {@link ContentResolver} of {@code context}
+     * clear the cache.  Tests get a new {@code Application} with a new
+     * database each time, so the cache starts over when that changes.
+     *
+     * @return the current {@link #generation}
+     */
+    private static synchronized int observe(Context context) {
+        ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        if (resolver != observedResolver) {
+            if (observedResolver != null) {
+                observedResolver.unregisterContentObserver(OBSERVER);
+            }
+            clear();
+            resolver.registerContentObserver(AppProvider.getContentUri(), true, OBSERVER);
+            resolver.registerContentObserver(ApkProvider.getContentUri(), true, OBSERVER);
+            observedResolver = resolver;
+        }
+        return generation;
+    }
+}
@@ -36,10 +36,9 @@ import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.data.Apk;
-import org.fdroid.fdroid.data.ApkProvider;
 import org.fdroid.fdroid.data.App;
 import org.fdroid.fdroid.data.Repo;
-import org.fdroid.fdroid.data.RepoProvider;
+import org.fdroid.fdroid.data.RepoCache;
 import org.fdroid.fdroid.installer.Installer;
 import org.fdroid.fdroid.privileged.views.AppDiff;
 import org.fdroid.fdroid.privileged.views.AppSecurityPermissions;
@@ -121,21 +120,23 @@ public class AppDetailsRecyclerViewAdapter
     private Apk downloadedApk;
     private final HashMap<String, Boolean> versionsExpandTracker = new HashMap<>();
 
-    public AppDetailsRecyclerViewAdapter(Context context, @NonNull App app, AppDetailsRecyclerViewAdapterCallbacks callbacks) {
+    /**
+     * @param apks all versions of {@code app}, as loaded by {@link AppDetailsCache}
+     */
+    public AppDetailsRecyclerViewAdapter(Context context, @NonNull App app, @NonNull List<Apk> apks,
+                                         AppDetailsRecyclerViewAdapterCallbacks callbacks) {
         this.context = context;
         this.callbacks = callbacks;
         this.app = app;
-        updateItems(app);
+        updateItems(app, apks);
     }
 
-    public void updateItems(@NonNull App app) {
+    public void updateItems(@NonNull App app, @NonNull List<Apk> apks) {
         this.app = app;
 
         // Get versions
         versions = new ArrayList<>();
         compatibleVersionsDifferentSig = new ArrayList<>();
-        final List<Apk> apks = ApkProvider.Helper.findByPackageName(context, this.app.packageName);
-        ensureInstalledApkExists(apks);
         boolean showIncompatibleVersions = Preferences.get().showIncompatibleVersions();
         for (final Apk apk : apks) {
             boolean allowByCompatibility = apk.compatible || showIncompatibleVersions;
@@ -175,18 +176,6 @@ public class AppDetailsRecyclerViewAdapter
         notifyDataSetChanged();
     }
 
-    private void ensureInstalledApkExists(final List<Apk> apks) {
-        Apk installedApk = app.getInstalledApk(this.context);
-        // These conditions should be enough to determine if the installedApk
-        // is a generated dummy or a proper APK containing data from a repository.
-        if (installedApk != null && installedApk.added == null && installedApk.sig == null) {
-            installedApk.compatible = true;
-            installedApk.sig = app.installedSig;
-            installedApk.maxSdkVersion = -1;
-            apks.add(installedApk);
-        }
-    }
-
     void setShowVersions(boolean showVersions) {
         setShowVersions(showVersions, false);
     }
@@ -1143,7 +1132,7 @@ public class AppDetailsRecyclerViewAdapter
             }
 
             // Repository name, APK size and required Android version
-            Repo repo = RepoProvider.Helper.findById(context, apk.repoId);
+            Repo repo = RepoCache.get(context, apk.repoId);
             if (repo != null) {
                 repository.setVisibility(View.VISIBLE);
                 repository.setText(String.format(context.getString(R.string.app_repository), repo.getName()));
@@ -56,7 +56,6 @@ import com.google.android.material.textfield.TextInputLayout;
 
 import org.fdroid.fdroid.AddRepoIntentService;
 import org.fdroid.fdroid.FDroidApp;
-import org.fdroid.fdroid.IndexUpdater;
 import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.UpdateService;
@@ -65,15 +64,18 @@ import org.fdroid.fdroid.data.NewRepoConfig;
 import org.fdroid.fdroid.data.Repo;
 import org.fdroid.fdroid.data.RepoProvider;
 import org.fdroid.fdroid.data.Schema.RepoTable;
+import org.fdroid.fdroid.net.Downloader;
+import org.fdroid.fdroid.net.RepoAddressProber;
 
 import java.io.File;
-import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 
 import androidx.annotation.NonNull;
@@ -231,6 +233,7 @@ public class ManageReposActivity extends AppCompatActivity
          */
         String text = getPrimaryClipAsText();
         String fingerprint = null;
+        List<String> mirrors = Collections.emptyList();
         String username = null;
         StringBuilder password = null;
         if (!TextUtils.isEmpty(text)) {
@@ -242,6 +245,7 @@ public class ManageReposActivity extends AppCompatActivity
                 if (TextUtils.isEmpty(fingerprint)) {
                     fingerprint = uri.getQueryParameter("FINGERPRINT");
                 }
+                mirrors = NewRepoConfig.parseMirrors(uri);
 
                 String userInfo = uri.getUserInfo();
                 if (userInfo != null) {
@@ -264,15 +268,16 @@ public class ManageReposActivity extends AppCompatActivity
         if (TextUtils.isEmpty(text)) {
             text = DEFAULT_NEW_REPO_TEXT;
         }
-        showAddRepo(text, fingerprint, username, password != null ? password.toString() : null);
+        showAddRepo(text, fingerprint, mirrors, username, password != null ? password.toString() : null);
     }
 
-    private void showAddRepo(String newAddress, String newFingerprint, String username, String password) {
+    private void showAddRepo(String newAddress, String newFingerprint, List<String> mirrors,
+                             String username, String password) {
         if (hasDisallowInstallUnknownSources(this)) {
             String msg = getDisallowInstallUnknownSourcesErrorMessage(this);
             Toast.makeText(this, msg, Toast.LENGTH_LONG).show();
         } else {
-            new AddRepo(newAddress, newFingerprint, username, password);
+            new AddRepo(newAddress, newFingerprint, mirrors, username, password);
         }
     }
 
@@ -282,13 +287,15 @@ public class ManageReposActivity extends AppCompatActivity
      * for managing the lifecycle of adding a repo:
      * <li>Showing the add dialog
      * <li>Deciding whether to add a new repo or update an existing one
-     * <li>Search for repos at common suffixes (/, /fdroid/repo, /repo)
+     * <li>Search for repos at common suffixes (/, /fdroid/repo, /repo) and mirrors, see {@link RepoAddressProber}
      */
     private class AddRepo {
 
         private final Context context;
         private final HashMap<String, Repo> urlRepoMap = new HashMap<>();
         private final HashMap<String, Repo> fingerprintRepoMap = new HashMap<>();
+        private final String initialAddress;
+        private final List<String> mirrors;
         private final AlertDialog addRepoDialog;
         private final TextView overwriteMessage;
         private final ColorStateList defaultTextColour;
@@ -302,9 +309,18 @@ public class ManageReposActivity extends AppCompatActivity
          * since the user input is validated as they are typing.  This also
          * checks that the repo type matches, e.g. "repo" or "archive".
          */
-        AddRepo(String newAddress, String newFingerprint, final String username, final String password) {
+        AddRepo(String newAddress, String newFingerprint, List<String> mirrors,
+                final String username, final String password) {
 
             context = ManageReposActivity.this;
+            this.mirrors = mirrors;
+            String address = newAddress;
+            try {
+                address = AddRepoIntentService.normalizeUrl(newAddress);
+            } catch (URISyntaxException e) {
+                // mirrors will not be used then
+            }
+            initialAddress = address;
 
             for (Repo repo : RepoProvider.Helper.all(context)) {
                 urlRepoMap.put(repo.address, repo);
@@ -608,53 +624,31 @@ public class ManageReposActivity extends AppCompatActivity
             skip.setText(R.string.skip);
 
             final int refreshDialog = Integer.MAX_VALUE;
-            final Disposable disposable = Single.fromCallable(() -> {
-                int statusCode = -1;
-
+            final Disposable disposable = Single.defer(() -> {
                 if (fingerprintRepoMap.containsKey(fingerprint)) {
-                    statusCode = refreshDialog;
-                    return Pair.create(statusCode, originalAddress);
+                    return Single.just(Pair.create(refreshDialog, originalAddress));
                 }
 
                 if (originalAddress.startsWith(ContentResolver.SCHEME_CONTENT)
                         || originalAddress.startsWith(ContentResolver.SCHEME_FILE)) {
                     // TODO check whether there is read access
-                    return Pair.create(statusCode, originalAddress);
+                    return Single.just(Pair.create(-1, originalAddress));
                 }
 
-                final String[] pathsToCheck = {"", "fdroid/repo", "repo"};
-                for (final String path : pathsToCheck) {
-                    Utils.debugLog(TAG, "Check for repo at " + originalAddress + " with suffix '" + path + "'");
-                    Uri.Builder builder = Uri.parse(originalAddress).buildUpon().appendEncodedPath(path);
-                    final String addressWithoutIndex = builder.build().toString();
-                    runOnUiThread(() -> textSearching.setText(getString(R.string.repo_searching_address,
-                            addressWithoutIndex)));
-
-                    if (urlRepoMap.containsKey(addressWithoutIndex)) {
-                        statusCode = refreshDialog;
-                        return Pair.create(statusCode, addressWithoutIndex);
-                    }
-
-                    final Uri uri = builder.appendPath(IndexUpdater.SIGNED_FILE_NAME).build();
-
-                    try {
-                        final URL url = new URL(uri.toString());
-                        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                        connection.setRequestMethod("HEAD");
-
-                        statusCode = connection.getResponseCode();
-
-                        if (statusCode == HttpURLConnection.HTTP_UNAUTHORIZED
-                                || statusCode == HttpURLConnection.HTTP_OK) {
-                            Utils.debugLog(TAG, "Found F-Droid repo at " + addressWithoutIndex);
-                            return Pair.create(statusCode, addressWithoutIndex);
-                        }
-                    } catch (IOException e) {
-                        Log.e(TAG, "Error while searching for repo at " + addressWithoutIndex, e);
-                        return Pair.create(statusCode, originalAddress);
+                // mirrors are only for the address they came with, not for whatever the user typed instead
+                List<String> candidates = RepoAddressProber.getCandidates(originalAddress,
+                        TextUtils.equals(originalAddress, initialAddress)
+                                ? mirrors : Collections.<String>emptyList());
+                for (String candidate : candidates) {
+                    if (urlRepoMap.containsKey(candidate)) {
+                        return Single.just(Pair.create(refreshDialog, candidate));
                     }
                 }
-                return Pair.create(statusCode, originalAddress);
+
+                return RepoAddressProber.probe(candidates, originalAddress, Downloader.DEFAULT_TIMEOUT,
+                        candidate -> runOnUiThread(() -> textSearching.setText(
+                                getString(R.string.repo_searching_address, candidate))))
+                        .map(result -> Pair.create(result.statusCode, result.address));
             })
                     .subscribeOn(Schedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
@@ -708,6 +702,11 @@ public class ManageReposActivity extends AppCompatActivity
                                 createNewRepo(newAddress, fingerprint);
                             }
                         }
+                    }, throwable -> {
+                        Log.e(TAG, "Error while searching for repo at " + originalAddress, throwable);
+                        if (addRepoDialog.isShowing()) {
+                            createNewRepo(originalAddress, fingerprint);
+                        }
                     });
             compositeDisposable.add(disposable);
 
@@ -821,7 +820,7 @@ public class ManageReposActivity extends AppCompatActivity
         if (newRepoConfig.isValidRepo()) {
             finishAfterAddingRepo = intent.getBooleanExtra(EXTRA_FINISH_AFTER_ADDING_REPO, true);
             showAddRepo(newRepoConfig.getRepoUriString(), newRepoConfig.getFingerprint(),
-                    newRepoConfig.getUsername(), newRepoConfig.getPassword());
+                    newRepoConfig.getMirrors(), newRepoConfig.getUsername(), newRepoConfig.getPassword());
             checkIfNewRepoOnSameWifi(newRepoConfig);
         } else if (newRepoConfig.getErrorMessage() != null) {
             Toast.makeText(this, newRepoConfig.getErrorMessage(), Toast.LENGTH_LONG).show();
@@ -33,6 +33,7 @@ import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.text.TextUtils;
+import android.text.format.Formatter;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.TextView;
@@ -54,6 +55,7 @@ import org.fdroid.fdroid.installer.InstallHistoryService;
 import org.fdroid.fdroid.installer.PrivilegedInstaller;
 import org.fdroid.fdroid.work.CleanCacheWorker;
 import org.fdroid.fdroid.work.FDroidMetricsWorker;
+import org.fdroid.fdroid.work.SuggestedApksWorker;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
@@ -68,6 +70,7 @@ import androidx.preference.SeekBarPreference;
 import androidx.preference.SwitchPreferenceCompat;
 import androidx.recyclerview.widget.LinearSmoothScroller;
 import androidx.recyclerview.widget.RecyclerView;
+import androidx.work.WorkInfo;
 import info.guardianproject.netcipher.proxy.OrbotHelper;
 
 public class PreferencesFragment extends PreferenceFragmentCompat
@@ -87,6 +90,7 @@ public class PreferencesFragment extends PreferenceFragmentCompat
             Preferences.PREF_LOCAL_REPO_NAME,
             Preferences.PREF_LANGUAGE,
             Preferences.PREF_KEEP_CACHE_TIME,
+            Preferences.PREF_APK_CACHE_SIZE,
             Preferences.PREF_EXPERT,
             Preferences.PREF_PRIVILEGED_INSTALLER,
             Preferences.PREF_ENABLE_PROXY,
@@ -182,6 +186,28 @@ public class PreferencesFragment extends PreferenceFragmentCompat
             }
         });
 
+        ListPreference apkCacheSizePref = (ListPreference) findPreference(Preferences.PREF_APK_CACHE_SIZE);
+        CharSequence[] apkCacheSizeValues = apkCacheSizePref.getEntryValues();
+        CharSequence[] apkCacheSizeNames = new CharSequence[apkCacheSizeValues.length];
+        for (int i = 0; i < apkCacheSizeValues.length; i++) {
+            long bytes = Long.parseLong(apkCacheSizeValues[i].toString());
+            apkCacheSizeNames[i] = bytes == Long.MAX_VALUE
+                    ? getString(R.string.cache_downloaded_size_unlimited)
+                    : Formatter.formatShortFileSize(getActivity(), bytes);
+        }
+        apkCacheSizePref.setEntries(apkCacheSizeNames);
+
+        final Preference unstableUpdatesPref = findPreference(Preferences.PREF_UNSTABLE_UPDATES);
+        SuggestedApksWorker.getWorkInfos(getActivity()).observe(this, workInfos -> {
+            WorkInfo workInfo = workInfos == null || workInfos.isEmpty() ? null : workInfos.get(0);
+            if (workInfo != null && !workInfo.getState().isFinished()) {
+                int progress = workInfo.getProgress().getInt(SuggestedApksWorker.PROGRESS, 0);
+                unstableUpdatesPref.setSummary(getString(R.string.unstable_updates_recalculating, progress));
+            } else {
+                unstableUpdatesPref.setSummary(R.string.unstable_updates_summary);
+            }
+        });
+
         ListPreference languagePref = (ListPreference) findPreference(Preferences.PREF_LANGUAGE);
         if (Build.VERSION.SDK_INT >= 24) {
             PreferenceCategory category = (PreferenceCategory) findPreference("pref_category_display");
@@ -343,6 +369,13 @@ public class PreferencesFragment extends PreferenceFragmentCompat
                 }
                 break;
 
+            case Preferences.PREF_APK_CACHE_SIZE:
+                entrySummary(key);
+                if (changing) {
+                    CleanCacheWorker.force(requireContext());
+                }
+                break;
+
             case Preferences.PREF_EXPERT:
                 checkSummary(key, R.string.expert_on);
                 int expertPreferencesCount = 0;
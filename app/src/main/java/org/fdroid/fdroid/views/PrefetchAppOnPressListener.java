@@ -0,0 +1,53 @@
+package org.fdroid.fdroid.views;
+
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Starts loading an app for {@link AppDetailsActivity} once the user keeps
+ * pressing its item for longer than a tap, or when the press ends in a tap.
+ * A press which turns into scrolling the list is cancelled before that, so
+ * flinging through a list does not load every app that was touched.
+ */
+public abstract class PrefetchAppOnPressListener implements View.OnTouchListener {
+
+    private View pressedView;
+
+    private final Runnable prefetch = new Runnable() {
+        @Override
+        public void run() {
+            String packageName = getPackageName();
+            if (pressedView != null && packageName != null) {
+                AppDetailsCache.prefetch(pressedView.getContext(), packageName);
+            }
+        }
+    };
+
+    /**
+     * @return the package name of the app currently shown by the item
+     */
+    @Nullable
+    protected abstract String getPackageName();
+
+    @Override
+    public boolean onTouch(View v, MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                pressedView = v;
+                v.postDelayed(prefetch, ViewConfiguration.getTapTimeout());
+                break;
+            case MotionEvent.ACTION_UP:
+                if (v.removeCallbacks(prefetch)) {
+                    prefetch.run();
+                }
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                v.removeCallbacks(prefetch);
+                break;
+        }
+        return false;
+    }
+}
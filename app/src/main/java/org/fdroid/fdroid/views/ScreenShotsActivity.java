@@ -22,6 +22,7 @@ import com.bumptech.glide.Glide;
 import org.fdroid.fdroid.FDroidApp;
 import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.R;
+import org.fdroid.fdroid.ScreenshotThumbnails;
 import org.fdroid.fdroid.data.App;
 import org.fdroid.fdroid.data.AppProvider;
 
@@ -31,7 +32,8 @@ import org.fdroid.fdroid.data.AppProvider;
  * e.g. WiFi.  That is because the user has to click on the thumbnail in
  * {@link AppDetailsActivity} in order to bring up this activity.
  * That makes it a specific request for that image, rather than regular
- * background loading.
+ * background loading.  While the full size screenshot is downloaded, the
+ * thumbnail from the gallery is shown.
  */
 public class ScreenShotsActivity extends AppCompatActivity {
 
@@ -60,9 +62,11 @@ public class ScreenShotsActivity extends AppCompatActivity {
 
         App app = AppProvider.Helper.findHighestPriorityMetadata(getContentResolver(), packageName);
         String[] screenshots = app.getAllScreenshots(this);
+        String[] thumbnails = app.getAllScreenshotThumbnails(this);
 
         ViewPager viewPager = (ViewPager) findViewById(R.id.screenshot_view_pager);
-        ScreenShotPagerAdapter adapter = new ScreenShotPagerAdapter(getSupportFragmentManager(), screenshots);
+        ScreenShotPagerAdapter adapter = new ScreenShotPagerAdapter(getSupportFragmentManager(),
+                screenshots, thumbnails);
         viewPager.setAdapter(adapter);
         viewPager.setCurrentItem(startPosition);
 
@@ -85,15 +89,17 @@ public class ScreenShotsActivity extends AppCompatActivity {
     private static class ScreenShotPagerAdapter extends FragmentStatePagerAdapter {
 
         private final String[] screenshots;
+        private final String[] thumbnails;
 
-        ScreenShotPagerAdapter(FragmentManager fragmentManager, String[] screenshots) {
+        ScreenShotPagerAdapter(FragmentManager fragmentManager, String[] screenshots, String[] thumbnails) {
             super(fragmentManager);
             this.screenshots = screenshots;
+            this.thumbnails = thumbnails;
         }
 
         @Override
         public Fragment getItem(int position) {
-            return ScreenShotPageFragment.newInstance(screenshots[position]);
+            return ScreenShotPageFragment.newInstance(screenshots[position], thumbnails[position]);
         }
 
         @Override
@@ -108,21 +114,25 @@ public class ScreenShotsActivity extends AppCompatActivity {
     public static class ScreenShotPageFragment extends Fragment {
 
         private static final String ARG_SCREENSHOT_URL = "ARG_SCREENSHOT_URL";
+        private static final String ARG_THUMBNAIL_URL = "ARG_THUMBNAIL_URL";
 
-        static ScreenShotPageFragment newInstance(String screenshotUrl) {
+        static ScreenShotPageFragment newInstance(String screenshotUrl, String thumbnailUrl) {
             ScreenShotPageFragment fragment = new ScreenShotPageFragment();
             Bundle args = new Bundle();
             args.putString(ARG_SCREENSHOT_URL, screenshotUrl);
+            args.putString(ARG_THUMBNAIL_URL, thumbnailUrl);
             fragment.setArguments(args);
             return fragment;
         }
 
         private String screenshotUrl;
+        private String thumbnailUrl;
 
         @Override
         public void onCreate(Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
             screenshotUrl = getArguments() != null ? getArguments().getString(ARG_SCREENSHOT_URL) : null;
+            thumbnailUrl = getArguments() != null ? getArguments().getString(ARG_THUMBNAIL_URL) : null;
         }
 
         @Nullable
@@ -134,6 +144,10 @@ public class ScreenShotsActivity extends AppCompatActivity {
             ImageView screenshotView = (ImageView) rootView.findViewById(R.id.screenshot);
             Glide.with(this)
                     .load(screenshotUrl)
+                    .thumbnail(Glide.with(this)
+                            .load(thumbnailUrl)
+                            .apply(ScreenshotThumbnails.getRequestOptions(inflater.getContext()))
+                            .onlyRetrieveFromCache(!allowDownload))
                     .onlyRetrieveFromCache(!allowDownload)
                     .error(R.drawable.screenshot_placeholder)
                     .fallback(R.drawable.screenshot_placeholder)
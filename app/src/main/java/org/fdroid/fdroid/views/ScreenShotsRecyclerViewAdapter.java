@@ -1,24 +1,32 @@
 package org.fdroid.fdroid.views;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
 import com.bumptech.glide.request.RequestOptions;
 
 import org.fdroid.fdroid.R;
+import org.fdroid.fdroid.ScreenshotThumbnails;
 import org.fdroid.fdroid.data.App;
 
 /**
- * Loads and displays the small screenshots that are inline in {@link AppDetailsActivity}
+ * Loads and displays the small screenshots that are inline in {@link AppDetailsActivity},
+ * using the repo's thumbnails if it has them, see {@link ScreenshotThumbnails}.
+ * If a thumbnail is missing, the full screenshot is shown instead.
  */
 class ScreenShotsRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+    private final String[] thumbnails;
     private final String[] screenshots;
     private final RequestOptions displayImageOptions;
     private final Listener listener;
@@ -27,9 +35,10 @@ class ScreenShotsRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.V
         super();
         this.listener = listener;
 
+        thumbnails = app.getAllScreenshotThumbnails(context);
         screenshots = app.getAllScreenshots(context);
 
-        displayImageOptions = new RequestOptions()
+        displayImageOptions = ScreenshotThumbnails.getRequestOptions(context)
                 .fallback(R.drawable.screenshot_placeholder)
                 .error(R.drawable.screenshot_placeholder);
     }
@@ -37,7 +46,25 @@ class ScreenShotsRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.V
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, final int position) {
         final ScreenShotViewHolder vh = (ScreenShotViewHolder) holder;
-        Glide.with(vh.itemView).load(screenshots[position]).apply(displayImageOptions).into(vh.image);
+        RequestBuilder<Drawable> request = Glide.with(vh.itemView).load(thumbnails[position])
+                .apply(displayImageOptions);
+        String fallbackUrl = getFallbackUrl(position);
+        if (fallbackUrl != null) {
+            request = request.error(Glide.with(vh.itemView).load(fallbackUrl).apply(displayImageOptions));
+        }
+        request.into(vh.image);
+    }
+
+    /**
+     * @return the full screenshot to load if the thumbnail at {@code position}
+     * cannot be loaded, or {@code null} if there is no thumbnail
+     */
+    @Nullable
+    String getFallbackUrl(int position) {
+        if (TextUtils.equals(thumbnails[position], screenshots[position])) {
+            return null;
+        }
+        return screenshots[position];
     }
 
     @NonNull
@@ -50,7 +77,7 @@ class ScreenShotsRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.V
 
     @Override
     public int getItemCount() {
-        return screenshots.length;
+        return thumbnails.length;
     }
 
     public interface Listener {
@@ -54,7 +54,6 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 import androidx.core.graphics.drawable.DrawableCompat;
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -72,6 +71,19 @@ public class AppListActivity extends AppCompatActivity implements LoaderManager.
     public static final String EXTRA_SEARCH_TERMS
             = "org.fdroid.fdroid.views.apps.AppListActivity.EXTRA_SEARCH_TERMS";
 
+    /**
+     * How long to wait after the last change to the search terms before searching.
+     */
+    private static final long SEARCH_DELAY_MILLIS = 300;
+    /**
+     * How many results to show while the rest of them are still loading, enough to fill the screen.
+     */
+    private static final int FIRST_PAGE_SIZE = 20;
+    /**
+     * Up to how many results are searched again directly when the search terms get more specific.
+     */
+    private static final int MAX_REFINED_RESULTS = 500;
+
     private static final String SEARCH_TERMS_KEY = "searchTerms";
     private static final String SORT_CLAUSE_KEY = "sortClauseSelected";
     private static SharedPreferences savedSearchSettings;
@@ -87,6 +99,13 @@ public class AppListActivity extends AppCompatActivity implements LoaderManager.
     private View hiddenAppNotice;
     private Utils.KeyboardStateMonitor keyboardStateMonitor;
 
+    @Nullable
+    private String loadedCategory;
+    @Nullable
+    private String loadedSearchTerms;
+    @Nullable
+    private AppListCursor refinableResults;
+
     private interface SortClause {
         String WORDS = Cols.NAME;
         String LAST_UPDATED = Cols.LAST_UPDATED;
@@ -240,21 +259,71 @@ public class AppListActivity extends AppCompatActivity implements LoaderManager.
         hiddenAppNotice.setVisibility(show ? View.VISIBLE : View.GONE);
     }
 
+    /**
+     * If the search terms only got more specific since the last search, then
+     * all the results have to be among the previous ones.  So as long as
+     * there were not too many of those, only they are searched again.
+     */
     @NonNull
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        return new CursorLoader(
+        String[] refinedPackageNames = null;
+        if (refinableResults != null && TextUtils.equals(category, loadedCategory)
+                && isRefinement(loadedSearchTerms, searchTerms)) {
+            refinedPackageNames = refinableResults.getPackageNames();
+        }
+        loadedCategory = category;
+        loadedSearchTerms = searchTerms;
+        refinableResults = null;
+        AppSearchLoader loader = new AppSearchLoader(
                 this,
                 AppProvider.getSearchUri(searchTerms, category),
                 AppMetadataTable.Cols.ALL,
                 null,
                 null,
-                getSortOrder()
+                getSortOrder(),
+                FIRST_PAGE_SIZE
         );
+        if (refinedPackageNames != null) {
+            loader.narrowTo(refinedPackageNames);
+        }
+        loader.setShownCursor(appAdapter.getAppCursor());
+        return loader;
+    }
+
+    /**
+     * {@link AppProvider} matches apps which contain all the keywords, so
+     * the results for {@code searchTerms} can only be fewer than the ones for
+     * {@code previousSearchTerms} if every previous keyword is part of one of
+     * the new keywords, e.g. when more letters or keywords are typed.
+     */
+    static boolean isRefinement(@Nullable String previousSearchTerms, @Nullable String searchTerms) {
+        if (TextUtils.isEmpty(previousSearchTerms)) {
+            return true;
+        }
+        if (searchTerms == null) {
+            return false;
+        }
+        String[] keywords = searchTerms.split("\\s");
+        for (String previousKeyword : previousSearchTerms.split("\\s")) {
+            boolean found = previousKeyword.isEmpty();
+            for (int i = 0; !found && i < keywords.length; i++) {
+                found = keywords[i].contains(previousKeyword);
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor cursor) {
+        refinableResults = null;
+        if (cursor instanceof AppListCursor && !((AppListCursor) cursor).isFirstPage()
+                && cursor.getCount() <= MAX_REFINED_RESULTS) {
+            refinableResults = (AppListCursor) cursor;
+        }
         setShowHiddenAppsNotice(false);
         appAdapter.setHasHiddenAppsCallback(() -> setShowHiddenAppsNotice(true));
         appAdapter.setAppCursor(cursor);
@@ -272,12 +341,16 @@ public class AppListActivity extends AppCompatActivity implements LoaderManager.
         appAdapter.setAppCursor(null);
     }
 
+    /**
+     * Wait until there was no typing for {@link #SEARCH_DELAY_MILLIS} before
+     * searching, so there is not a search for each letter.
+     */
     @Override
     public void onSearchTermsChanged(@Nullable String category, @NonNull String searchTerms) {
         this.category = category;
         this.searchTerms = searchTerms;
-        appView.scrollToPosition(0);
-        getSupportLoaderManager().restartLoader(0, null, this);
+        appView.removeCallbacks(search);
+        appView.postDelayed(search, SEARCH_DELAY_MILLIS);
         if (TextUtils.isEmpty(searchTerms)) {
             removeSavedSearchSettings(this, SEARCH_TERMS_KEY);
         } else {
@@ -285,6 +358,23 @@ public class AppListActivity extends AppCompatActivity implements LoaderManager.
         }
     }
 
+    private final Runnable search = new Runnable() {
+        @Override
+        public void run() {
+            if (TextUtils.equals(category, loadedCategory) && TextUtils.equals(searchTerms, loadedSearchTerms)) {
+                return;
+            }
+            appView.scrollToPosition(0);
+            getSupportLoaderManager().restartLoader(0, null, AppListActivity.this);
+        }
+    };
+
+    @Override
+    protected void onDestroy() {
+        appView.removeCallbacks(search);
+        super.onDestroy();
+    }
+
     private String getSortOrder() {
         final String table = AppMetadataTable.NAME;
         final String nameCol = table + "." + AppMetadataTable.Cols.NAME;
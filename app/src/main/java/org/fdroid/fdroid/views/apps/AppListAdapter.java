@@ -9,7 +9,9 @@ import org.fdroid.fdroid.data.App;
 import org.fdroid.fdroid.data.Schema;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 class AppListAdapter extends RecyclerView.Adapter<StandardAppListItemController> {
@@ -23,9 +25,28 @@ class AppListAdapter extends RecyclerView.Adapter<StandardAppListItemController>
         setHasStableIds(true);
     }
 
+    /**
+     * Show the apps from {@code cursor}.  If it came from an {@link AppListCursorLoader},
+     * only the rows which changed since the previous cursor are rebound.
+     */
     public void setAppCursor(Cursor cursor) {
+        if (this.cursor == cursor) {
+            return;
+        }
+        Cursor previous = this.cursor;
         this.cursor = cursor;
-        notifyDataSetChanged();
+        DiffUtil.DiffResult diff = cursor instanceof AppListCursor
+                ? ((AppListCursor) cursor).getDiff(previous) : null;
+        if (diff != null) {
+            diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    @Nullable
+    Cursor getAppCursor() {
+        return cursor;
     }
 
     public void setHasHiddenAppsCallback(Runnable callback) {
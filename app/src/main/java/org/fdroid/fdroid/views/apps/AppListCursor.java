@@ -0,0 +1,162 @@
+package org.fdroid.fdroid.views.apps;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.text.TextUtils;
+
+import org.fdroid.fdroid.data.Schema.AppMetadataTable.Cols;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ * A {@link Cursor} of apps which knows the package name of each row, and a
+ * hash of the columns that are shown in app lists.  These are read by
+ * {@link AppListCursorLoader} on its background thread, so adapters can
+ * find out which rows actually changed between two loads.  The loader also
+ * compares them with the cursor that is currently shown, see
+ * {@link #calculateDiff(AppListCursor)}, so the UI thread only has to
+ * dispatch the result from {@link #getDiff(Cursor)}.  Only the rows that
+ * changed get rebound then, instead of all of them after
+ * {@code notifyDataSetChanged()}.
+ */
+public class AppListCursor extends CursorWrapper {
+
+    /**
+     * The columns an app list item shows, changes to any other column do not rebind it.
+     */
+    private static final String[] CONTENT_COLUMNS = {
+            Cols.NAME, Cols.SUMMARY, Cols.ICON, Cols.ICON_URL, Cols.REPO_ID, Cols.IS_COMPATIBLE,
+            Cols.ANTI_FEATURES, Cols.LAST_UPDATED, Cols.SUGGESTED_VERSION_CODE, Cols.AUTO_INSTALL_VERSION_CODE,
+            Cols.InstalledApp.VERSION_CODE, Cols.InstalledApp.VERSION_NAME,
+    };
+
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final long id = NEXT_ID.getAndIncrement();
+    private final String[] packageNames;
+    private final int[] contentHashes;
+    private final boolean firstPage;
+
+    @Nullable
+    private volatile DiffUtil.DiffResult diff;
+    private volatile long diffBaseId = -1;
+
+    AppListCursor(Cursor cursor) {
+        this(cursor, false);
+    }
+
+    /**
+     * @param firstPage whether these are only the first rows of the result,
+     *                  while the rest is still loading
+     */
+    AppListCursor(Cursor cursor, boolean firstPage) {
+        super(cursor);
+        this.firstPage = firstPage;
+        int count = cursor.getCount();
+        packageNames = new String[count];
+        contentHashes = new int[count];
+        int packageNameIndex = cursor.getColumnIndex(Cols.Package.PACKAGE_NAME);
+        int[] contentIndexes = new int[CONTENT_COLUMNS.length];
+        for (int i = 0; i < CONTENT_COLUMNS.length; i++) {
+            contentIndexes[i] = cursor.getColumnIndex(CONTENT_COLUMNS[i]);
+        }
+        String[] values = new String[CONTENT_COLUMNS.length];
+        for (int row = 0; row < count && cursor.moveToPosition(row); row++) {
+            if (packageNameIndex >= 0) {
+                packageNames[row] = cursor.getString(packageNameIndex);
+            }
+            for (int i = 0; i < contentIndexes.length; i++) {
+                values[i] = contentIndexes[i] < 0 ? null : cursor.getString(contentIndexes[i]);
+            }
+            contentHashes[row] = Arrays.hashCode(values);
+        }
+        cursor.moveToPosition(-1);
+    }
+
+    boolean isFirstPage() {
+        return firstPage;
+    }
+
+    /**
+     * @return the package name of each row, in order
+     */
+    String[] getPackageNames() {
+        return packageNames.clone();
+    }
+
+    /**
+     * @return whether {@code previous} has the same apps in the same order,
+     * and none of them changed in a way that would show in a list
+     */
+    public boolean hasSameContent(@Nullable Cursor previous) {
+        if (!(previous instanceof AppListCursor)) {
+            return false;
+        }
+        AppListCursor old = (AppListCursor) previous;
+        return Arrays.equals(old.packageNames, packageNames) && Arrays.equals(old.contentHashes, contentHashes);
+    }
+
+    /**
+     * Compare with the cursor that is shown, which is a lot of work for long
+     * lists, so this must not be called on the UI thread.  It only reads the
+     * package names and hashes of {@code previous}, which never change, so it
+     * does not matter if {@code previous} is closed meanwhile.
+     */
+    @WorkerThread
+    void calculateDiff(@Nullable AppListCursor previous) {
+        if (previous == null) {
+            return;
+        }
+        diff = calculateDiff(previous.packageNames, previous.contentHashes, packageNames, contentHashes);
+        diffBaseId = previous.id;
+    }
+
+    /**
+     * @return how to get from {@code shown} to this, or {@code null} if that
+     * was not calculated in the background for exactly {@code shown}, so
+     * everything has to be rebound
+     */
+    @Nullable
+    public DiffUtil.DiffResult getDiff(@Nullable Cursor shown) {
+        DiffUtil.DiffResult result = diff;
+        if (result == null || !(shown instanceof AppListCursor) || ((AppListCursor) shown).id != diffBaseId) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * This only keeps the arrays, not the cursors, so a {@link DiffUtil.DiffResult}
+     * does not keep a chain of all previous cursors alive.
+     */
+    private static DiffUtil.DiffResult calculateDiff(final String[] oldPackageNames, final int[] oldContentHashes,
+                                                     final String[] packageNames, final int[] contentHashes) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldPackageNames.length;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return packageNames.length;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                String packageName = packageNames[newItemPosition];
+                return packageName != null && TextUtils.equals(oldPackageNames[oldItemPosition], packageName);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldContentHashes[oldItemPosition] == contentHashes[newItemPosition];
+            }
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package org.fdroid.fdroid.views.apps;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+import org.fdroid.fdroid.UpdateService;
+
+import androidx.annotation.Nullable;
+import androidx.loader.content.CursorLoader;
+
+/**
+ * A {@link CursorLoader} for app lists, which delivers an {@link AppListCursor}
+ * so the adapter can rebind only the rows that changed.
+ * <p>
+ * {@link org.fdroid.fdroid.data.AppProvider} notifies about changes all the
+ * time while a repo is updated, and on every install, so reloads caused by
+ * those are throttled.  While {@link UpdateService} is running, the list is
+ * reloaded at most every {@link #UPDATING_THROTTLE_MILLIS}.  Loading after
+ * {@code initLoader()} or {@code restartLoader()}, e.g. for a new search, is
+ * never delayed.  The rows themselves are read from the database one
+ * {@link android.database.CursorWindow} at a time, all of that happens on the
+ * loader's background thread, and so is comparing them with the apps that
+ * are shown.
+ */
+public class AppListCursorLoader extends CursorLoader {
+
+    private static final long THROTTLE_MILLIS = 500;
+    private static final long UPDATING_THROTTLE_MILLIS = 5000;
+
+    @Nullable
+    private volatile AppListCursor shownCursor;
+
+    public AppListCursorLoader(Context context, Uri uri, @Nullable String[] projection, @Nullable String selection,
+                               @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return wrap(cursor, false);
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wrap a freshly queried cursor, and compare it with the one that is shown.
+     */
+    AppListCursor wrap(Cursor cursor, boolean firstPage) {
+        AppListCursor appListCursor = new AppListCursor(cursor, firstPage);
+        appListCursor.calculateDiff(shownCursor);
+        return appListCursor;
+    }
+
+    /**
+     * Tell a new loader which apps are shown, e.g. after {@code restartLoader()}
+     * for a new search, so its first result can be compared with them too.
+     * After that, it keeps track of what it delivered itself.
+     */
+    public void setShownCursor(@Nullable Cursor cursor) {
+        shownCursor = cursor instanceof AppListCursor ? (AppListCursor) cursor : null;
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset()) {
+            setShownCursor(cursor);
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    public void onContentChanged() {
+        setUpdateThrottle(UpdateService.isUpdating() ? UPDATING_THROTTLE_MILLIS : THROTTLE_MILLIS);
+        super.onContentChanged();
+    }
+}
@@ -33,6 +33,7 @@ import org.fdroid.fdroid.installer.InstallManagerService;
 import org.fdroid.fdroid.installer.Installer;
 import org.fdroid.fdroid.installer.InstallerFactory;
 import org.fdroid.fdroid.views.AppDetailsActivity;
+import org.fdroid.fdroid.views.PrefetchAppOnPressListener;
 import org.fdroid.fdroid.views.updates.UpdatesAdapter;
 
 import java.io.File;
@@ -177,6 +178,12 @@ public abstract class AppListItemController extends RecyclerView.ViewHolder {
         }
 
         itemView.setOnClickListener(onAppClicked);
+        itemView.setOnTouchListener(new PrefetchAppOnPressListener() {
+            @Override
+            protected String getPackageName() {
+                return currentApp == null ? null : currentApp.packageName;
+            }
+        });
     }
 
     @Nullable
@@ -504,7 +511,7 @@ public abstract class AppListItemController extends RecyclerView.ViewHolder {
 
         if (currentStatus != null && currentStatus.status == AppUpdateStatusManager.Status.ReadyToInstall) {
             String canonicalUrl = currentStatus.apk.getCanonicalUrl();
-            File apkFilePath = ApkCache.getApkDownloadPath(activity, canonicalUrl);
+            File apkFilePath = ApkCache.getApkPath(activity, currentStatus.apk);
             Utils.debugLog(TAG, "skip download, we have already downloaded " + currentStatus.apk.getCanonicalUrl() +
                     " to " + apkFilePath);
 
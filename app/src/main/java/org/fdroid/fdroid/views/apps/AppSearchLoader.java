@@ -0,0 +1,137 @@
+package org.fdroid.fdroid.views.apps;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+
+import org.fdroid.fdroid.data.AppProvider;
+import org.fdroid.fdroid.data.Schema.PackageTable;
+
+import java.util.Collections;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Loads search results, delivering the first {@code firstPageSize} apps
+ * as soon as SQLite found them, before the rest of the result set is
+ * read and counted.  Only the first load does this, reloads after changes
+ * to the database replace the whole list at once, so it does not shrink
+ * to the first page for a moment.
+ * <p>
+ * When the search terms change, {@code restartLoader()} cancels the running
+ * load, which cancels the {@link CancellationSignal} of both queries, so
+ * results for outdated search terms do not keep the database busy.
+ * <p>
+ * A search can be {@link #narrowTo(String[]) narrowed} to the results of the
+ * previous one.  That only holds for the first load, once the database
+ * changed, other apps might match too, so reloads search all apps again.
+ */
+class AppSearchLoader extends AppListCursorLoader {
+
+    private final int firstPageSize;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private volatile boolean delivered;
+    private boolean narrowed;
+    @Nullable
+    private CancellationSignal firstPageCancellationSignal;
+
+    AppSearchLoader(Context context, Uri uri, @Nullable String[] projection, @Nullable String selection,
+                    @Nullable String[] selectionArgs, @Nullable String sortOrder, int firstPageSize) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+        this.firstPageSize = firstPageSize;
+    }
+
+    /**
+     * Only search among {@code packageNames} for the first load.
+     */
+    void narrowTo(String[] packageNames) {
+        setSelection(PackageTable.NAME + "." + PackageTable.Cols.PACKAGE_NAME
+                + " IN (" + TextUtils.join(",", Collections.nCopies(packageNames.length, "?")) + ")");
+        setSelectionArgs(packageNames);
+        narrowed = true;
+    }
+
+    @Override
+    public void onContentChanged() {
+        if (narrowed) {
+            narrowed = false;
+            setSelection(null);
+            setSelectionArgs(null);
+        }
+        super.onContentChanged();
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        if (!delivered) {
+            Cursor firstPage = queryFirstPage();
+            if (firstPage != null) {
+                postFirstPage(firstPage);
+            }
+        }
+        return super.loadInBackground();
+    }
+
+    @Nullable
+    private Cursor queryFirstPage() {
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                return null;
+            }
+            firstPageCancellationSignal = cancellationSignal;
+        }
+        Cursor cursor = null;
+        try {
+            cursor = getContext().getContentResolver().query(AppProvider.getLimitedUri(getUri(), firstPageSize),
+                    getProjection(), getSelection(), getSelectionArgs(), getSortOrder(), cancellationSignal);
+            return cursor == null ? null : wrap(cursor, true);
+        } catch (RuntimeException e) {
+            // also OperationCanceledException, the full query will notice that too
+            if (cursor != null) {
+                cursor.close();
+            }
+            return null;
+        } finally {
+            synchronized (this) {
+                firstPageCancellationSignal = null;
+            }
+        }
+    }
+
+    private void postFirstPage(final Cursor firstPage) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (delivered || !isStarted() || isAbandoned() || isReset()) {
+                    firstPage.close();
+                } else {
+                    deliverResult(firstPage);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!(cursor instanceof AppListCursor) || !((AppListCursor) cursor).isFirstPage()) {
+            delivered = true;
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        synchronized (this) {
+            if (firstPageCancellationSignal != null) {
+                firstPageCancellationSignal.cancel();
+            }
+        }
+    }
+}
@@ -9,7 +9,9 @@ import android.widget.TextView;
 import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.Utils;
 import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.AppProvider;
 import org.fdroid.fdroid.views.AppDetailsActivity;
+import org.fdroid.fdroid.views.PrefetchAppOnPressListener;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -30,11 +32,6 @@ import androidx.recyclerview.widget.RecyclerView;
 public class AppCardController extends RecyclerView.ViewHolder
         implements View.OnClickListener {
 
-    /**
-     * After this many days, don't consider showing the "New" tag next to an app.
-     */
-    public static final int DAYS_TO_CONSIDER_NEW = 14;
-
     @NonNull
     private final ImageView icon;
 
@@ -66,9 +63,22 @@ public class AppCardController extends RecyclerView.ViewHolder
         newTag = itemView.findViewById(R.id.new_tag);
 
         itemView.setOnClickListener(this);
+        itemView.setOnTouchListener(new PrefetchAppOnPressListener() {
+            @Override
+            protected String getPackageName() {
+                return currentApp == null ? null : currentApp.packageName;
+            }
+        });
     }
 
     public void bindApp(@NonNull App app) {
+        bindApp(app, app.getIconUrl(icon.getContext()));
+    }
+
+    /**
+     * @param iconUrl the already resolved {@link App#getIconUrl(android.content.Context)}
+     */
+    public void bindApp(@NonNull App app, @Nullable String iconUrl) {
         currentApp = app;
 
         summary.setText(Utils.formatAppNameAndSummary(app.name, app.summary));
@@ -80,7 +90,7 @@ public class AppCardController extends RecyclerView.ViewHolder
                 newTag.setVisibility(View.GONE);
             }
         }
-        Utils.setIconFromRepoOrPM(app, icon, icon.getContext());
+        Utils.setIconFromUrl(iconUrl, icon, icon.getContext());
     }
 
     private boolean isConsideredNew(@NonNull App app) {
@@ -89,7 +99,7 @@ public class AppCardController extends RecyclerView.ViewHolder
             return false;
         }
 
-        return Utils.daysSince(app.added) <= DAYS_TO_CONSIDER_NEW;
+        return Utils.daysSince(app.added) <= AppProvider.DAYS_TO_CONSIDER_NEW;
     }
 
     /**
@@ -5,9 +5,11 @@ import android.view.ViewGroup;
 
 import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.views.apps.AppListCursor;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 class AppPreviewAdapter extends RecyclerView.Adapter<AppCardController> {
@@ -42,7 +44,14 @@ class AppPreviewAdapter extends RecyclerView.Adapter<AppCardController> {
             //don't notify when the cursor did not change
             return;
         }
+        Cursor previous = this.cursor;
         this.cursor = cursor;
-        notifyDataSetChanged();
+        DiffUtil.DiffResult diff = cursor instanceof AppListCursor
+                ? ((AppListCursor) cursor).getDiff(previous) : null;
+        if (diff != null) {
+            diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
     }
 }
@@ -18,7 +18,6 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 import androidx.core.view.ViewCompat;
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -30,6 +29,7 @@ import org.fdroid.fdroid.data.AppProvider;
 import org.fdroid.fdroid.data.Schema;
 import org.fdroid.fdroid.data.Schema.AppMetadataTable.Cols;
 import org.fdroid.fdroid.views.apps.AppListActivity;
+import org.fdroid.fdroid.views.apps.AppListCursorLoader;
 import org.fdroid.fdroid.views.apps.FeatureImage;
 
 import java.util.Locale;
@@ -149,7 +149,7 @@ public class CategoryController extends RecyclerView.ViewHolder implements Loade
         final String added = table + "." + Cols.ADDED;
         final String lastUpdated = table + "." + Cols.LAST_UPDATED;
         if (id == currentCategory.hashCode() + 1) {
-            return new CursorLoader(
+            return new AppListCursorLoader(
                     activity,
                     AppProvider.getCategoryUri(currentCategory),
                     new String[]{Schema.AppMetadataTable.Cols._COUNT},
@@ -158,7 +158,7 @@ public class CategoryController extends RecyclerView.ViewHolder implements Loade
                     null
             );
         } else {
-            return new CursorLoader(
+            return new AppListCursorLoader(
                     activity,
                     AppProvider.getTopFromCategoryUri(currentCategory, NUM_OF_APPS_PER_CATEGORY_ON_OVERVIEW),
                     new String[]{
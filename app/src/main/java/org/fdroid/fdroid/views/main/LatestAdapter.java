@@ -4,23 +4,32 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Rect;
+import android.text.TextUtils;
 import android.view.View;
 import android.view.ViewGroup;
 
 import org.fdroid.fdroid.BuildConfig;
 import org.fdroid.fdroid.R;
 import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.Schema.AppMetadataTable.Cols;
+import org.fdroid.fdroid.views.apps.AppListCursor;
 import org.fdroid.fdroid.views.categories.AppCardController;
 
+import java.util.List;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.view.ViewCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 public class LatestAdapter extends RecyclerView.Adapter<AppCardController> {
 
     private Cursor cursor;
+    @Nullable
+    private List<LatestSnapshot.Entry> snapshot;
     private final AppCompatActivity activity;
     private final RecyclerView.ItemDecoration appListDecorator;
 
@@ -95,6 +104,11 @@ public class LatestAdapter extends RecyclerView.Adapter<AppCardController> {
 
     @Override
     public void onBindViewHolder(@NonNull AppCardController holder, int position) {
+        if (cursor == null && snapshot != null) {
+            LatestSnapshot.Entry entry = snapshot.get(position);
+            holder.bindApp(entry.app, entry.iconUrl);
+            return;
+        }
         cursor.moveToPosition(position);
         final App app = new App(cursor);
         holder.bindApp(app);
@@ -102,7 +116,21 @@ public class LatestAdapter extends RecyclerView.Adapter<AppCardController> {
 
     @Override
     public int getItemCount() {
-        return cursor == null ? 0 : cursor.getCount();
+        if (cursor != null) {
+            return cursor.getCount();
+        }
+        return snapshot == null ? 0 : snapshot.size();
+    }
+
+    /**
+     * Show these apps until the first {@link #setAppsCursor(Cursor)}.
+     */
+    void setSnapshot(@Nullable List<LatestSnapshot.Entry> snapshot) {
+        if (cursor != null) {
+            return;
+        }
+        this.snapshot = snapshot;
+        notifyDataSetChanged();
     }
 
     public void setAppsCursor(Cursor cursor) {
@@ -110,8 +138,67 @@ public class LatestAdapter extends RecyclerView.Adapter<AppCardController> {
             //don't notify when the cursor did not change
             return;
         }
+        List<LatestSnapshot.Entry> previous = snapshot;
+        Cursor previousCursor = this.cursor;
+        snapshot = null;
         this.cursor = cursor;
-        notifyDataSetChanged();
+        if (previous != null && cursor != null) {
+            // only rebind the cards which are different from the snapshot, so it does not flicker
+            DiffUtil.calculateDiff(new SnapshotDiffCallback(previous, cursor)).dispatchUpdatesTo(this);
+            return;
+        }
+        DiffUtil.DiffResult diff = cursor instanceof AppListCursor
+                ? ((AppListCursor) cursor).getDiff(previousCursor) : null;
+        if (diff != null) {
+            diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    private static class SnapshotDiffCallback extends DiffUtil.Callback {
+        private final List<LatestSnapshot.Entry> snapshot;
+        private final String[] packageNames;
+        private final String[] names;
+        private final String[] summaries;
+
+        SnapshotDiffCallback(List<LatestSnapshot.Entry> snapshot, Cursor cursor) {
+            this.snapshot = snapshot;
+            int count = cursor.getCount();
+            packageNames = new String[count];
+            names = new String[count];
+            summaries = new String[count];
+            int packageNameIndex = cursor.getColumnIndex(Cols.Package.PACKAGE_NAME);
+            int nameIndex = cursor.getColumnIndex(Cols.NAME);
+            int summaryIndex = cursor.getColumnIndex(Cols.SUMMARY);
+            for (int i = 0; i < count && cursor.moveToPosition(i); i++) {
+                packageNames[i] = cursor.getString(packageNameIndex);
+                names[i] = cursor.getString(nameIndex);
+                summaries[i] = cursor.getString(summaryIndex);
+            }
+        }
+
+        @Override
+        public int getOldListSize() {
+            return snapshot.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return packageNames.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return TextUtils.equals(snapshot.get(oldItemPosition).app.packageName, packageNames[newItemPosition]);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            App app = snapshot.get(oldItemPosition).app;
+            return TextUtils.equals(app.name, names[newItemPosition])
+                    && TextUtils.equals(app.summary, summaries[newItemPosition]);
+        }
     }
 
     public static class SpanSizeLookup extends GridLayoutManager.SpanSizeLookup {
@@ -0,0 +1,193 @@
+package org.fdroid.fdroid.views.main;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.AppProvider;
+import org.fdroid.fdroid.data.Schema.AppMetadataTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A small binary copy of the first apps in the Latest tab, so that
+ * {@link LatestViewBinder} can show them as soon as F-Droid is opened,
+ * while the full query through {@link AppProvider} is still running.
+ * It is rewritten whenever a repo update changed the database.  The icon
+ * URLs are stored already resolved, so that the icons come straight from
+ * Glide's cache without looking up the {@link org.fdroid.fdroid.data.Repo}.
+ * <p>
+ * The snapshot is ignored if the language or the Anti-Features filter has
+ * changed since it was written, since then it would show the wrong apps.
+ */
+public final class LatestSnapshot {
+    private static final String TAG = "LatestSnapshot";
+
+    private static final int VERSION = 1;
+    private static final String DIR_NAME = "snapshots";
+    private static final String FILE_NAME = "latest-snapshot.bin";
+
+    /**
+     * Enough to fill the first screen of even a large tablet.
+     */
+    static final int MAX_APPS = 20;
+
+    static final class Entry {
+        @NonNull
+        final App app;
+        @Nullable
+        final String iconUrl;
+
+        Entry(@NonNull App app, @Nullable String iconUrl) {
+            this.app = app;
+            this.iconUrl = iconUrl;
+        }
+    }
+
+    private LatestSnapshot() {
+    }
+
+    /**
+     * The snapshot is kept in its own directory, since
+     * {@link org.fdroid.fdroid.work.CleanCacheWorker} deletes all plain files
+     * in {@link Context#getFilesDir()} that were not used in the last hour.
+     */
+    public static File getFile(Context context) {
+        return new File(new File(context.getFilesDir(), DIR_NAME), FILE_NAME);
+    }
+
+    /**
+     * Query the first {@link #MAX_APPS} apps of the Latest tab and write them
+     * to disk.  This must not be called on the UI thread.
+     */
+    public static void write(Context context) {
+        List<Entry> entries = new ArrayList<>(MAX_APPS);
+        String filter = Utils.getAntifeatureSQLFilter(context);
+        Cursor cursor = context.getContentResolver().query(AppProvider.getLatestTabUri(),
+                AppMetadataTable.Cols.ALL, filter, null, LatestViewBinder.SORT_ORDER);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (entries.size() < MAX_APPS && cursor.moveToNext()) {
+                App app = new App(cursor);
+                entries.add(new Entry(app, app.getIconUrl(context)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        File file = getFile(context);
+        File tmpFile = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        DataOutputStream out = null;
+        try {
+            FileUtils.forceMkdir(file.getParentFile());
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(VERSION);
+            out.writeUTF(Locale.getDefault().toString());
+            out.writeUTF(filter);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.app.packageName);
+                out.writeLong(entry.app.repoId);
+                writeNullable(out, entry.app.name);
+                writeNullable(out, entry.app.summary);
+                writeNullable(out, entry.iconUrl);
+                out.writeLong(entry.app.added == null ? -1 : entry.app.added.getTime());
+                out.writeLong(entry.app.lastUpdated == null ? -1 : entry.app.lastUpdated.getTime());
+            }
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + tmpFile + " to " + file);
+            }
+            Utils.debugLog(TAG, "Wrote " + entries.size() + " apps to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write " + file + ": " + e.getMessage());
+            FileUtils.deleteQuietly(tmpFile);
+        } finally {
+            Utils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * This reads only a few kilobytes, so it is fine to call on the UI
+     * thread, which is the whole point of having a snapshot.
+     *
+     * @return the snapshot, or {@code null} if there is none or it does not match the current settings
+     */
+    @Nullable
+    static List<Entry> read(Context context) {
+        File file = getFile(context);
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION
+                    || !Locale.getDefault().toString().equals(in.readUTF())
+                    || !Utils.getAntifeatureSQLFilter(context).equals(in.readUTF())) {
+                return null;
+            }
+            int count = in.readInt();
+            if (count < 0 || count > MAX_APPS) {
+                return null;
+            }
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                App app = new App();
+                app.packageName = in.readUTF();
+                app.repoId = in.readLong();
+                app.name = readNullable(in);
+                app.summary = readNullable(in);
+                String iconUrl = readNullable(in);
+                app.added = readDate(in);
+                app.lastUpdated = readDate(in);
+                entries.add(new Entry(app, iconUrl));
+            }
+            return Collections.unmodifiableList(entries);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read " + file + ": " + e.getMessage());
+            return null;
+        } finally {
+            Utils.closeQuietly(in);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    @Nullable
+    private static Date readDate(DataInputStream in) throws IOException {
+        long time = in.readLong();
+        return time < 0 ? null : new Date(time);
+    }
+}
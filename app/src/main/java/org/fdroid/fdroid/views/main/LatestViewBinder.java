@@ -19,17 +19,15 @@ import org.fdroid.fdroid.data.AppProvider;
 import org.fdroid.fdroid.data.RepoProvider;
 import org.fdroid.fdroid.data.Schema.AppMetadataTable;
 import org.fdroid.fdroid.data.Schema.AppMetadataTable.Cols;
-import org.fdroid.fdroid.data.Schema.RepoTable;
 import org.fdroid.fdroid.panic.HidingManager;
 import org.fdroid.fdroid.views.apps.AppListActivity;
-import org.fdroid.fdroid.views.categories.AppCardController;
+import org.fdroid.fdroid.views.apps.AppListCursorLoader;
 
 import java.util.Date;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -42,6 +40,8 @@ class LatestViewBinder implements LoaderManager.LoaderCallbacks<Cursor> {
 
     private static final int LOADER_ID = 978015789;
 
+    static final String SORT_ORDER = AppMetadataTable.NAME + "." + Cols.LATEST_RANK + " DESC";
+
     private final LatestAdapter latestAdapter;
     private final AppCompatActivity activity;
     private final TextView emptyState;
@@ -96,6 +96,8 @@ class LatestViewBinder implements LoaderManager.LoaderCallbacks<Cursor> {
             }
         });
 
+        latestAdapter.setSnapshot(LatestSnapshot.read(activity));
+
         activity.getSupportLoaderManager().initLoader(LOADER_ID, null, this);
     }
 
@@ -105,9 +107,12 @@ class LatestViewBinder implements LoaderManager.LoaderCallbacks<Cursor> {
      * then if it has WhatsNew/Changelog entries, then by when it was last
      * updated.  Last, it sorts by the date the app was added, putting older
      * ones first, to give preference to apps that have been maintained in
-     * F-Droid longer.
+     * F-Droid longer.  All of that is precalculated into
+     * {@link Cols#LATEST_RANK} whenever a repo is updated.  Until this
+     * finishes, the apps from the {@link LatestSnapshot} are shown.
      *
      * @see AppProvider#getLatestTabUri()
+     * @see AppProvider#getUpdateLatestRankSql(String)
      */
     @NonNull
     @Override
@@ -115,40 +120,13 @@ class LatestViewBinder implements LoaderManager.LoaderCallbacks<Cursor> {
         if (id != LOADER_ID) {
             return null;
         }
-        final String table = AppMetadataTable.NAME;
-        final String added = table + "." + Cols.ADDED;
-        final String lastUpdated = table + "." + Cols.LAST_UPDATED;
-        return new CursorLoader(
+        return new AppListCursorLoader(
                 activity,
                 AppProvider.getLatestTabUri(),
                 AppMetadataTable.Cols.ALL,
                 Utils.getAntifeatureSQLFilter(activity),
                 null,
-                table + "." + Cols.IS_LOCALIZED + " DESC"
-                        + ", " + table + "." + Cols.NAME + " IS NULL ASC"
-                        + ", CASE WHEN " + table + "." + Cols.ICON + " IS NULL"
-                        + "        AND " + table + "." + Cols.ICON_URL + " IS NULL"
-                        + "        THEN 1 ELSE 0 END"
-                        + ", " + table + "." + Cols.SUMMARY + " IS NULL ASC"
-                        + ", " + table + "." + Cols.DESCRIPTION + " IS NULL ASC"
-                        + ", CASE WHEN " + table + "." + Cols.PHONE_SCREENSHOTS + " IS NULL"
-                        + "        AND " + table + "." + Cols.SEVEN_INCH_SCREENSHOTS + " IS NULL"
-                        + "        AND " + table + "." + Cols.TEN_INCH_SCREENSHOTS + " IS NULL"
-                        + "        AND " + table + "." + Cols.TV_SCREENSHOTS + " IS NULL"
-                        + "        AND " + table + "." + Cols.WEAR_SCREENSHOTS + " IS NULL"
-                        + "        AND " + table + "." + Cols.FEATURE_GRAPHIC + " IS NULL"
-                        + "        AND " + table + "." + Cols.PROMO_GRAPHIC + " IS NULL"
-                        + "        AND " + table + "." + Cols.TV_BANNER + " IS NULL"
-                        + "        THEN 1 ELSE 0 END"
-                        + ", CASE WHEN date(" + added + ")  >= date(" + lastUpdated + ")"
-                        + "        AND date((SELECT " + RepoTable.Cols.LAST_UPDATED + " FROM " + RepoTable.NAME
-                        + "                  WHERE _id=" + table + "." + Cols.REPO_ID
-                        + "                  ),'-" + AppCardController.DAYS_TO_CONSIDER_NEW + " days') "
-                        + "          < date(" + lastUpdated + ")"
-                        + "        THEN 0 ELSE 1 END"
-                        + ", " + table + "." + Cols.WHATSNEW + " IS NULL ASC"
-                        + ", " + lastUpdated + " DESC"
-                        + ", " + added + " ASC");
+                SORT_ORDER);
     }
 
     @Override
@@ -7,6 +7,10 @@ import android.content.IntentFilter;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Pair;
 import android.view.ViewGroup;
 
 import com.hannesdorfmann.adapterdelegates3.AdapterDelegatesManager;
@@ -15,6 +19,8 @@ import org.fdroid.fdroid.AppUpdateStatusManager;
 import org.fdroid.fdroid.data.App;
 import org.fdroid.fdroid.data.AppProvider;
 import org.fdroid.fdroid.data.Schema;
+import org.fdroid.fdroid.views.apps.AppListCursor;
+import org.fdroid.fdroid.views.apps.AppListCursorLoader;
 import org.fdroid.fdroid.views.updates.items.AppStatus;
 import org.fdroid.fdroid.views.updates.items.AppUpdateData;
 import org.fdroid.fdroid.views.updates.items.KnownVulnApp;
@@ -29,13 +35,19 @@ import java.util.List;
 import java.util.Set;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
 /**
  * Manages the following types of information:
  * <ul>
@@ -58,11 +70,17 @@ import androidx.recyclerview.widget.RecyclerView;
  * the {@link UpdatesAdapter#delegatesManager}.
  * <p>
  * There are a series of type-safe lists which hold the specific data this adapter is interested in.
- * This data is then collated into a single list (see {@link UpdatesAdapter#populateItems()}) which
- * is the actual thing the adapter binds too. At any point it is safe to clear the single list and
- * repopulate it from the original source lists of data. When this is done, the adapter will notify
- * the recycler view that its data has changed. Sometimes it will also ask the recycler view to
- * scroll to the newly added item (if attached to the recycler view).
+ * This data is then collated into a single list (see {@link #buildItems(List, List, List, boolean)})
+ * which is the actual thing the adapter binds too. At any point it is safe to rebuild the single
+ * list from the original source lists of data. When this is done, the adapter compares the new
+ * list with the old one by {@link AppUpdateData#getItemKey()}, and only tells the recycler view
+ * about the items which were actually added, removed, moved or changed.  Building and comparing
+ * the lists happens in the background, only the result is applied on the UI thread.
+ * <p>
+ * While apps are downloaded and installed, the {@link AppUpdateStatusManager} sends lots of
+ * broadcasts. Those are collected and the list is rebuilt at most every
+ * {@link #REFRESH_INTERVAL_MILLIS}. Download progress does not rebuild the list at all, the
+ * items showing it listen for that themselves.
  * <p>
  * TODO: If a user downloads an old version of an app (resulting in a new update being available
  * instantly), then we need to refresh the list of apps to update.
@@ -73,6 +91,8 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
     private static final int LOADER_CAN_UPDATE = 289753982;
     private static final int LOADER_KNOWN_VULN = 520389740;
 
+    private static final long REFRESH_INTERVAL_MILLIS = 250;
+
     private final AdapterDelegatesManager<List<AppUpdateData>> delegatesManager = new AdapterDelegatesManager<>();
     private final List<AppUpdateData> items = new ArrayList<>();
 
@@ -84,6 +104,25 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 
     private boolean showAllUpdateableApps = false;
 
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private long lastRefreshMillis;
+    private boolean refreshScheduled;
+
+    @Nullable
+    private Disposable refreshDisposable;
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            refreshItems();
+        }
+    };
+
+    @Nullable
+    private Cursor canUpdateCursor;
+    @Nullable
+    private Cursor knownVulnCursor;
+
     public UpdatesAdapter(AppCompatActivity activity) {
         this.activity = activity;
 
@@ -111,27 +150,17 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
     }
 
     /**
-     * Adds items from the {@link AppUpdateStatusManager} to {@link UpdatesAdapter#appsToShowStatus}.
-     * Note that this will then subsequently rebuild the underlying adapter data structure by
-     * invoking {@link UpdatesAdapter#populateItems}. However as per the populateItems method, it
-     * does not know how best to notify the recycler view of any changes. That is up to the caller
-     * of this method.
+     * Replaces {@link UpdatesAdapter#appsToShowStatus} with the current items from the
+     * {@link AppUpdateStatusManager}.  This has to run on the UI thread, since each
+     * {@link AppStatus} takes note of the status it is showing.
      */
     private void populateAppStatuses() {
+        appsToShowStatus.clear();
         for (AppUpdateStatusManager.AppUpdateStatus status : AppUpdateStatusManager.getInstance(activity).getAll()) {
             if (shouldShowStatus(status)) {
                 appsToShowStatus.add(new AppStatus(activity, status));
             }
         }
-
-        Collections.sort(appsToShowStatus, new Comparator<AppStatus>() {
-            @Override
-            public int compare(AppStatus o1, AppStatus o2) {
-                return o1.status.app.name.compareTo(o2.status.app.name);
-            }
-        });
-
-        populateItems();
     }
 
     public boolean canViewAllUpdateableApps() {
@@ -140,42 +169,121 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 
     public void toggleAllUpdateableApps() {
         showAllUpdateableApps = !showAllUpdateableApps;
-        populateItems();
+        refreshItems();
+    }
+
+    /**
+     * Rebuild the list of items from the current app statuses and the last
+     * results of the loaders, and tell the recycler view what changed.  If
+     * this is called again before the previous rebuild was applied, that one
+     * is dropped, so the result is always compared to the items shown.
+     */
+    private void refreshItems() {
+        handler.removeCallbacks(refresh);
+        refreshScheduled = false;
+        lastRefreshMillis = SystemClock.elapsedRealtime();
+
+        populateAppStatuses();
+        final List<AppUpdateData> oldItems = new ArrayList<>(items);
+        final List<AppStatus> statuses = new ArrayList<>(appsToShowStatus);
+        final List<UpdateableApp> updateable = new ArrayList<>(updateableApps);
+        final List<KnownVulnApp> knownVuln = new ArrayList<>(knownVulnApps);
+        final boolean showAll = showAllUpdateableApps;
+        if (refreshDisposable != null) {
+            refreshDisposable.dispose();
+        }
+        refreshDisposable = Single.fromCallable(() -> {
+            List<AppUpdateData> newItems = buildItems(statuses, updateable, knownVuln, showAll);
+            return Pair.create(newItems, calculateDiff(oldItems, newItems));
+        })
+                .subscribeOn(Schedulers.computation())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(result -> {
+                    items.clear();
+                    items.addAll(result.first);
+                    result.second.dispatchUpdatesTo(this);
+                });
+    }
+
+    /**
+     * Like {@link #refreshItems()}, but waits until {@link #REFRESH_INTERVAL_MILLIS}
+     * passed since the last time, so that a burst of status changes only
+     * rebuilds the list once.
+     */
+    private void scheduleRefresh() {
+        if (refreshScheduled) {
+            return;
+        }
+        refreshScheduled = true;
+        long delay = lastRefreshMillis + REFRESH_INTERVAL_MILLIS - SystemClock.elapsedRealtime();
+        handler.postDelayed(refresh, Math.max(0, delay));
+    }
+
+    static DiffUtil.DiffResult calculateDiff(final List<AppUpdateData> oldItems,
+                                             final List<AppUpdateData> newItems) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldItems.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newItems.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldItems.get(oldItemPosition).getItemKey()
+                        .equals(newItems.get(newItemPosition).getItemKey());
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return newItems.get(newItemPosition).hasSameContent(oldItems.get(oldItemPosition));
+            }
+        });
     }
 
     /**
-     * Completely rebuilds the underlying data structure used by this adapter. Note however, that
-     * this does not notify the recycler view of any changes. Thus, it is up to other methods which
-     * initiate a call to this method to make sure they appropriately notify the recyler view.
+     * Completely rebuilds the underlying data structure used by this adapter, this
+     * runs in the background.  Note however, that this does not notify the recycler
+     * view of any changes, {@link #refreshItems()} does that.
      */
-    private void populateItems() {
-        items.clear();
+    private List<AppUpdateData> buildItems(List<AppStatus> statuses, List<UpdateableApp> updateable,
+                                           List<KnownVulnApp> knownVuln, boolean showAll) {
+        List<AppUpdateData> newItems = new ArrayList<>();
 
-        Set<String> toShowStatusPackageNames = new HashSet<>(appsToShowStatus.size());
-        for (AppStatus app : appsToShowStatus) {
+        Collections.sort(statuses, new Comparator<AppStatus>() {
+            @Override
+            public int compare(AppStatus o1, AppStatus o2) {
+                return o1.status.app.name.compareTo(o2.status.app.name);
+            }
+        });
+        Set<String> toShowStatusPackageNames = new HashSet<>(statuses.size());
+        for (AppStatus app : statuses) {
             toShowStatusPackageNames.add(app.status.app.packageName);
-            items.add(app);
+            newItems.add(app);
         }
 
-        if (updateableApps != null) {
-            // Only count/show apps which are not shown above in the "Apps to show status" list.
-            List<UpdateableApp> updateableAppsToShow = new ArrayList<>(updateableApps.size());
-            for (UpdateableApp app : updateableApps) {
-                if (!toShowStatusPackageNames.contains(app.app.packageName)) {
-                    updateableAppsToShow.add(app);
-                }
+        // Only count/show apps which are not shown above in the "Apps to show status" list.
+        List<UpdateableApp> updateableAppsToShow = new ArrayList<>(updateable.size());
+        for (UpdateableApp app : updateable) {
+            if (!toShowStatusPackageNames.contains(app.app.packageName)) {
+                updateableAppsToShow.add(app);
             }
+        }
 
-            if (updateableAppsToShow.size() > 0) {
-                items.add(new UpdateableAppsHeader(activity, this, updateableAppsToShow));
+        if (updateableAppsToShow.size() > 0) {
+            newItems.add(new UpdateableAppsHeader(activity, this, updateableAppsToShow));
 
-                if (showAllUpdateableApps) {
-                    items.addAll(updateableAppsToShow);
-                }
+            if (showAll) {
+                newItems.addAll(updateableAppsToShow);
             }
         }
 
-        items.addAll(knownVulnApps);
+        newItems.addAll(knownVuln);
+        return newItems;
     }
 
     @Override
@@ -216,24 +324,42 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
                 throw new IllegalStateException("Unknown loader requested: " + id);
         }
 
-        return new CursorLoader(
+        return new AppListCursorLoader(
                 activity, uri, Schema.AppMetadataTable.Cols.ALL, null, null, Schema.AppMetadataTable.Cols.NAME);
     }
 
+    /**
+     * Rebuild the list when either loader delivered apps that are different
+     * from what is shown, since every install notifies about changes to all
+     * apps, even though hardly any of them are different afterwards.
+     */
     @Override
     public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor cursor) {
         switch (loader.getId()) {
             case LOADER_CAN_UPDATE:
+                if (isUnchanged(cursor, canUpdateCursor)) {
+                    canUpdateCursor = cursor;
+                    return;
+                }
+                canUpdateCursor = cursor;
                 onCanUpdateLoadFinished(cursor);
                 break;
 
             case LOADER_KNOWN_VULN:
+                if (isUnchanged(cursor, knownVulnCursor)) {
+                    knownVulnCursor = cursor;
+                    return;
+                }
+                knownVulnCursor = cursor;
                 onKnownVulnLoadFinished(cursor);
                 break;
         }
 
-        populateItems();
-        notifyDataSetChanged();
+        refreshItems();
+    }
+
+    private static boolean isUnchanged(Cursor cursor, @Nullable Cursor previous) {
+        return cursor instanceof AppListCursor && ((AppListCursor) cursor).hasSameContent(previous);
     }
 
     private void onCanUpdateLoadFinished(Cursor cursor) {
@@ -258,23 +384,27 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 
     @Override
     public void onLoaderReset(@NonNull Loader<Cursor> loader) {
+        if (loader.getId() == LOADER_CAN_UPDATE) {
+            canUpdateCursor = null;
+        } else if (loader.getId() == LOADER_KNOWN_VULN) {
+            knownVulnCursor = null;
+        }
     }
 
     /**
      * If this adapter is "active" then it is part of the current UI that the user is looking to.
      * Under those circumstances, we want to make sure it is up to date, and also listen to the
      * correct set of broadcasts.
-     * Doesn't listen for {@link AppUpdateStatusManager#BROADCAST_APPSTATUS_CHANGED} because the
-     * individual items in the recycler view will listen for the appropriate changes in state and
+     * Only listens for {@link AppUpdateStatusManager#BROADCAST_APPSTATUS_CHANGED} when the status
+     * changed, because the individual items in the recycler view listen for download progress and
      * update themselves accordingly (if they are displayed).
      */
     public void setIsActive() {
-        appsToShowStatus.clear();
-        populateAppStatuses();
-        notifyDataSetChanged();
+        refreshItems();
 
         IntentFilter filter = new IntentFilter();
         filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_ADDED);
+        filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_CHANGED);
         filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_REMOVED);
         filter.addAction(AppUpdateStatusManager.BROADCAST_APPSTATUS_LIST_CHANGED);
 
@@ -283,6 +413,12 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 
     public void stopListeningForStatusUpdates() {
         LocalBroadcastManager.getInstance(activity).unregisterReceiver(receiverAppStatusChanges);
+        handler.removeCallbacks(refresh);
+        refreshScheduled = false;
+        if (refreshDisposable != null) {
+            refreshDisposable.dispose();
+            refreshDisposable = null;
+        }
     }
 
     private void onManyAppStatusesChanged(String reasonForChange) {
@@ -291,8 +427,8 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
                 onUpdateableAppsChanged();
                 break;
 
-            case AppUpdateStatusManager.REASON_READY_TO_INSTALL:
-                onFoundAppsReadyToInstall();
+            default:
+                scheduleRefresh();
                 break;
         }
     }
@@ -310,27 +446,6 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
         activity.getSupportLoaderManager().initLoader(LOADER_KNOWN_VULN, null, this);
     }
 
-    /**
-     * We have completed a scan of .apk files in the cache, and identified there are
-     * some which are ready to install.
-     */
-    private void onFoundAppsReadyToInstall() {
-        populateAppStatuses();
-        notifyDataSetChanged();
-    }
-
-    private void onAppStatusAdded() {
-        appsToShowStatus.clear();
-        populateAppStatuses();
-        notifyDataSetChanged();
-    }
-
-    private void onAppStatusRemoved() {
-        appsToShowStatus.clear();
-        populateAppStatuses();
-        notifyDataSetChanged();
-    }
-
     private final BroadcastReceiver receiverAppStatusChanges = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -342,12 +457,15 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
                     onManyAppStatusesChanged(intent.getStringExtra(AppUpdateStatusManager.EXTRA_REASON_FOR_CHANGE));
                     break;
 
-                case AppUpdateStatusManager.BROADCAST_APPSTATUS_ADDED:
-                    onAppStatusAdded();
+                case AppUpdateStatusManager.BROADCAST_APPSTATUS_CHANGED:
+                    if (intent.getBooleanExtra(AppUpdateStatusManager.EXTRA_IS_STATUS_UPDATE, false)) {
+                        scheduleRefresh();
+                    }
                     break;
 
+                case AppUpdateStatusManager.BROADCAST_APPSTATUS_ADDED:
                 case AppUpdateStatusManager.BROADCAST_APPSTATUS_REMOVED:
-                    onAppStatusRemoved();
+                    scheduleRefresh();
                     break;
             }
         }
@@ -358,6 +476,6 @@ public class UpdatesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
      * then we should rebuild the list of app statuses and update the adapter.
      */
     public void refreshStatuses() {
-        onAppStatusRemoved();
+        refreshItems();
     }
 }
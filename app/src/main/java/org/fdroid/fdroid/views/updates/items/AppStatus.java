@@ -25,9 +25,29 @@ public class AppStatus extends AppUpdateData {
 
     public final AppUpdateStatusManager.AppUpdateStatus status;
 
+    /**
+     * {@link #status} is the live entry, which keeps changing, this is what it was when listed.
+     */
+    private final AppUpdateStatusManager.Status listedStatus;
+
     public AppStatus(AppCompatActivity activity, AppUpdateStatusManager.AppUpdateStatus status) {
         super(activity);
         this.status = status;
+        this.listedStatus = status.status;
+    }
+
+    @Override
+    public String getItemKey() {
+        return "status:" + status.getCanonicalUrl();
+    }
+
+    /**
+     * Download progress is not compared, the view shows that by itself.
+     */
+    @Override
+    public boolean hasSameContent(AppUpdateData other) {
+        return other instanceof AppStatus && ((AppStatus) other).listedStatus == listedStatus
+                && ((AppStatus) other).status.app == status.app;
     }
 
     public static class Delegate extends AdapterDelegate<List<AppUpdateData>> {
@@ -4,15 +4,31 @@ import androidx.appcompat.app.AppCompatActivity;
 
 /**
  * Used as a common base class for all data types in the {@link
- * org.fdroid.fdroid.views.updates.UpdatesAdapter}. Doesn't have any
- * functionality of its own, but allows the {@link
+ * org.fdroid.fdroid.views.updates.UpdatesAdapter}. Allows the {@link
  * org.fdroid.fdroid.views.updates.UpdatesAdapter#delegatesManager}
- * to specify a data type more specific than just {@link Object}.
+ * to specify a data type more specific than just {@link Object}, and
+ * lets the adapter find out which items changed when it rebuilds its list.
  */
-public abstract class AppUpdateData { // NOPMD This abstract class does not have any abstract methods
+public abstract class AppUpdateData {
     public final AppCompatActivity activity;
 
     public AppUpdateData(AppCompatActivity activity) {
         this.activity = activity;
     }
+
+    /**
+     * @return what identifies this item in an older version of the list, so
+     * the adapter can tell which items were added, removed or moved
+     */
+    public abstract String getItemKey();
+
+    /**
+     * @param other an item with the same {@link #getItemKey() key} from an
+     *              older version of the list
+     * @return whether {@code other} shows the same, so its view does not need
+     * to be bound again
+     */
+    public boolean hasSameContent(AppUpdateData other) {
+        return other == this;
+    }
 }
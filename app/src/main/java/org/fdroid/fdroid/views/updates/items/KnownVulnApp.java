@@ -30,6 +30,11 @@ public class KnownVulnApp extends AppUpdateData {
         this.app = app;
     }
 
+    @Override
+    public String getItemKey() {
+        return "knownVuln:" + app.packageName;
+    }
+
     public static class Delegate extends AdapterDelegate<List<AppUpdateData>> {
 
         private final AppCompatActivity activity;
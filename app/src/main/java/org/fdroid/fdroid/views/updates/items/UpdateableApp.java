@@ -30,6 +30,11 @@ public class UpdateableApp extends AppUpdateData {
         this.app = app;
     }
 
+    @Override
+    public String getItemKey() {
+        return "updateable:" + app.packageName;
+    }
+
     public static class Delegate extends AdapterDelegate<List<AppUpdateData>> {
 
         private final AppCompatActivity activity;
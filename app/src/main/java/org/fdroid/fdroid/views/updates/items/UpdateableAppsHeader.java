@@ -39,6 +39,25 @@ public class UpdateableAppsHeader extends AppUpdateData {
         adapter = updatesAdapter;
     }
 
+    @Override
+    public String getItemKey() {
+        return "header";
+    }
+
+    @Override
+    public boolean hasSameContent(AppUpdateData other) {
+        if (!(other instanceof UpdateableAppsHeader) || ((UpdateableAppsHeader) other).apps.size() != apps.size()) {
+            return false;
+        }
+        List<UpdateableApp> otherApps = ((UpdateableAppsHeader) other).apps;
+        for (int i = 0; i < apps.size(); i++) {
+            if (otherApps.get(i) != apps.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static class Delegate extends AdapterDelegate<List<AppUpdateData>> {
 
         private final LayoutInflater inflater;
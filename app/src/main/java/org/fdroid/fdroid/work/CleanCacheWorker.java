@@ -106,11 +106,14 @@ public class CleanCacheWorker extends Worker {
     /**
      * All downloaded APKs will be cached for a certain amount of time, which is
      * specified by the user in the "Keep Cache Time" preference.  This removes
-     * any APK in the cache that is older than that preference specifies.
+     * any APK in the cache that is older than that preference specifies.  Then
+     * the least recently used APKs are removed until the rest fits into
+     * {@link Preferences#getApkCacheSize()}.
      */
     static void deleteExpiredApksFromCache(@NonNull Context context) {
         File cacheDir = ApkCache.getApkCacheDir(context);
         clearOldFiles(cacheDir, Preferences.get().getKeepCacheTime());
+        ApkCache.trim(context, Preferences.get().getApkCacheSize());
     }
 
     /**
@@ -0,0 +1,113 @@
+package org.fdroid.fdroid.work;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.data.AppProvider;
+import org.fdroid.fdroid.data.DBHelper;
+import org.fdroid.fdroid.data.Schema.AppMetadataTable;
+
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+/**
+ * Keeps the database fast and small, see {@link DBHelper#runMaintenance(Context)}.
+ * Since that can rewrite the whole database file, it only runs while the device
+ * is charging and idle.  How long the query for the Latest tab took before and
+ * after the last run is kept, to see whether this is worth it.
+ */
+public class DatabaseMaintenanceWorker extends Worker {
+    public static final String TAG = "DatabaseMaintenanceWork";
+
+    private static final String PREFS_NAME = "database-maintenance";
+    static final String PREF_LAST_RUN = "lastRun";
+    static final String PREF_QUERY_MILLIS_BEFORE = "queryMillisBefore";
+    static final String PREF_QUERY_MILLIS_AFTER = "queryMillisAfter";
+
+    public DatabaseMaintenanceWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    /**
+     * Schedule the weekly maintenance, unless it is already scheduled.  Unlike
+     * {@link CleanCacheWorker}, the interval never changes, so replacing the
+     * work on each start would only reset the period, and then run it again
+     * the next time the device is idle.
+     */
+    public static void schedule(@NonNull final Context context) {
+        final Constraints.Builder constraintsBuilder = new Constraints.Builder()
+                .setRequiresCharging(true)
+                .setRequiresBatteryNotLow(true);
+        if (Build.VERSION.SDK_INT >= 23) {
+            constraintsBuilder.setRequiresDeviceIdle(true);
+        }
+        final PeriodicWorkRequest maintenance =
+                new PeriodicWorkRequest.Builder(DatabaseMaintenanceWorker.class, 7, TimeUnit.DAYS)
+                        .setConstraints(constraintsBuilder.build())
+                        .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(TAG, ExistingPeriodicWorkPolicy.KEEP, maintenance);
+        Utils.debugLog(TAG, "Scheduled periodic work for database maintenance.");
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+        try {
+            runMaintenance(getApplicationContext());
+            return Result.success();
+        } catch (Exception e) {
+            Log.e(TAG, "Could not run database maintenance", e);
+            return Result.failure();
+        }
+    }
+
+    static void runMaintenance(@NonNull Context context) {
+        // The maintenance itself reads the whole database, so without a first
+        // run that is thrown away, only the "after" time would be from a warm
+        // page cache.
+        timeLatestTabQuery(context);
+        long before = timeLatestTabQuery(context);
+        DBHelper.runMaintenance(context);
+        long after = timeLatestTabQuery(context);
+        Log.i(TAG, "Querying the Latest tab took " + before + "ms before maintenance, " + after + "ms after");
+        getPrefs(context).edit()
+                .putLong(PREF_LAST_RUN, System.currentTimeMillis())
+                .putLong(PREF_QUERY_MILLIS_BEFORE, before)
+                .putLong(PREF_QUERY_MILLIS_AFTER, after)
+                .apply();
+    }
+
+    /**
+     * @return how long it took to get all apps shown in the Latest tab, which
+     * is the biggest query run when starting the app
+     */
+    private static long timeLatestTabQuery(Context context) {
+        long startTime = System.currentTimeMillis();
+        Cursor cursor = context.getContentResolver().query(AppProvider.getLatestTabUri(),
+                AppMetadataTable.Cols.ALL, null, null, null);
+        if (cursor != null) {
+            // the rows are only read from the database when the cursor is first used
+            cursor.getCount();
+            cursor.close();
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,66 @@
+package org.fdroid.fdroid.work;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.installer.StagedApkRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+/**
+ * Deletes the APKs staged for installing once they timed out, see
+ * {@link StagedApkRegistry}.  There is only ever one of these pending, no
+ * matter how many APKs are staged.  If there are still APKs left after it
+ * ran, it schedules itself again for when the next one times out.
+ */
+public class StagedApkCleanupWorker extends Worker {
+    public static final String TAG = "StagedApkCleanupWorker";
+
+    public StagedApkCleanupWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    /**
+     * Make sure a cleanup runs in {@code delayMillis}.  If one is already
+     * pending, that is kept, since it will schedule the next one itself.
+     */
+    public static void schedule(@NonNull Context context, long delayMillis) {
+        enqueue(context, delayMillis, ExistingWorkPolicy.KEEP);
+    }
+
+    private static void enqueue(Context context, long delayMillis, ExistingWorkPolicy policy) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(StagedApkCleanupWorker.class)
+                .setInitialDelay(delayMillis, TimeUnit.MILLISECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(TAG, policy, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+        Context context = getApplicationContext();
+        try {
+            long nextDelay = StagedApkRegistry.deleteExpired(context);
+            if (nextDelay >= 0) {
+                // KEEP would see this run as still pending, so chain the next one after it
+                enqueue(context, nextDelay, ExistingWorkPolicy.APPEND);
+            }
+            Utils.debugLog(TAG, "Reclaimed " + StagedApkRegistry.getReclaimedBytes(context) + " bytes in "
+                    + StagedApkRegistry.getReclaimedFiles(context) + " staged APKs so far");
+            return Result.success();
+        } catch (Exception e) {
+            Log.e(TAG, "Could not delete staged APKs", e);
+            return Result.failure();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.fdroid.fdroid.work;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.data.AppProvider;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+/**
+ * Recalculates the suggested version of every app in the background, e.g.
+ * after the "Unstable updates" preference was changed.  This runs over
+ * every app in the database, which takes long enough on big databases to
+ * freeze the UI if run directly from the preference change.
+ * <p>
+ * Each {@link #schedule(Context)} replaces any pending or running
+ * recalculation, and it waits {@link #DELAY_MILLIS} before starting, so
+ * toggling the preference back and forth only recalculates once.  The
+ * progress is published as {@link #PROGRESS} in percent.  Once finished,
+ * the app lists are notified so they reload.
+ */
+public class SuggestedApksWorker extends Worker {
+    public static final String TAG = "SuggestedApksWorker";
+
+    public static final String PROGRESS = "progress";
+
+    private static final long DELAY_MILLIS = 500;
+
+    public SuggestedApksWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    public static void schedule(@NonNull Context context) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(SuggestedApksWorker.class)
+                .setInitialDelay(DELAY_MILLIS, TimeUnit.MILLISECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(TAG, ExistingWorkPolicy.REPLACE, request);
+        Utils.debugLog(TAG, "Enqueued recalculating suggested versions.");
+    }
+
+    public static LiveData<List<WorkInfo>> getWorkInfos(@NonNull Context context) {
+        return WorkManager.getInstance(context).getWorkInfosForUniqueWorkLiveData(TAG);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        Context context = getApplicationContext();
+        try {
+            setProgressAsync(new Data.Builder().putInt(PROGRESS, 0).build());
+            AppProvider.Helper.calcSuggestedApksFromUpstream(context);
+            if (isStopped()) {
+                // replaced by a newer request, which starts over from the beginning
+                return Result.failure();
+            }
+            setProgressAsync(new Data.Builder().putInt(PROGRESS, 50).build());
+            AppProvider.Helper.calcSuggestedApksFromLatest(context);
+            context.getContentResolver().notifyChange(AppProvider.getContentUri(), null);
+            return Result.success();
+        } catch (Exception e) {
+            Log.e(TAG, "Could not recalculate suggested versions", e);
+            return Result.failure();
+        }
+    }
+}
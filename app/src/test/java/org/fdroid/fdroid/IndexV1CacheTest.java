@@ -0,0 +1,156 @@
+package org.fdroid.fdroid;
+
+import android.app.Application;
+
+import org.fdroid.fdroid.data.Apk;
+import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.DBHelper;
+import org.fdroid.fdroid.data.FDroidProviderTest;
+import org.fdroid.fdroid.data.Repo;
+import org.fdroid.fdroid.data.RepoProviderTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = Application.class)
+@RunWith(RobolectricTestRunner.class)
+public class IndexV1CacheTest extends FDroidProviderTest {
+
+    private static final String CERT = "308202cf308201b7a0030201020204410b599a300d06092a864886f70d01010b";
+
+    private Repo repo;
+
+    @Before
+    public void setup() {
+        Preferences.setupForTests(context);
+        repo = RepoProviderTest.insertRepo(context, "http://www.example.com/fdroid/repo", "", "", "Test Repo");
+        repo.signingCertificate = CERT;
+        repo.timestamp = 1000;
+    }
+
+    @After
+    public void teardown() {
+        IndexV1Cache.delete(context, repo.getId());
+        DBHelper.clearDbHelperSingleton();
+    }
+
+    private IndexV1Cache.Index createIndex() {
+        IndexV1Cache.Index index = new IndexV1Cache.Index(2000, "abc123", "etag");
+        index.repoMap = new HashMap<>();
+        index.repoMap.put("name", "Test Repo");
+        index.repoMap.put("timestamp", 2000000L);
+        index.repoMap.put("version", 21);
+        index.repoMap.put("mirrors", Arrays.asList("http://mirror.example.com/fdroid/repo"));
+        index.requests = new HashMap<>();
+        index.requests.put("install", new String[]{"org.example.app"});
+
+        App app = new App();
+        app.packageName = "org.example.app";
+        app.name = "Example";
+        app.summary = null;
+        app.categories = new String[]{"System", "Internet"};
+        app.added = new Date(1500000000000L);
+        app.repoId = repo.getId();
+        index.apps = new App[]{app};
+
+        Apk apk = new Apk();
+        apk.packageName = "org.example.app";
+        apk.versionCode = 42;
+        apk.hash = "0123456789abcdef";
+        apk.nativecode = null;
+        apk.repoId = repo.getId();
+        index.packages = new HashMap<>();
+        index.packages.put(app.packageName, Collections.singletonList(apk));
+        return index;
+    }
+
+    @Test
+    public void testWriteAndLoad() {
+        assertNull(IndexV1Cache.load(context, repo));
+        IndexV1Cache.write(context, repo, createIndex());
+
+        IndexV1Cache.Index index = IndexV1Cache.load(context, repo);
+        assertNotNull(index);
+        assertEquals(2000, index.timestamp);
+        assertEquals("abc123", index.jarSha256);
+        assertEquals("etag", index.etag);
+        assertEquals(createIndex().repoMap, index.repoMap);
+        assertArrayEquals(new String[]{"org.example.app"}, index.requests.get("install"));
+
+        assertEquals(1, index.apps.length);
+        App app = index.apps[0];
+        assertEquals("org.example.app", app.packageName);
+        assertEquals("Example", app.name);
+        assertNull(app.summary);
+        assertArrayEquals(new String[]{"System", "Internet"}, app.categories);
+        assertEquals(new Date(1500000000000L), app.added);
+        assertEquals(repo.getId(), app.repoId);
+
+        List<Apk> apks = index.packages.get("org.example.app");
+        assertEquals(1, apks.size());
+        assertEquals(42, apks.get(0).versionCode);
+        assertEquals("0123456789abcdef", apks.get(0).hash);
+        assertNull(apks.get(0).nativecode);
+    }
+
+    @Test
+    public void testRejected() {
+        IndexV1Cache.write(context, repo, createIndex());
+
+        repo.signingCertificate = CERT + "00";
+        assertNull(IndexV1Cache.load(context, repo));
+        repo.signingCertificate = CERT;
+
+        repo.timestamp = 3000;
+        assertNull(IndexV1Cache.load(context, repo));
+        repo.timestamp = 0;
+
+        assertNotNull(IndexV1Cache.load(context, repo));
+    }
+
+    @Test
+    public void testCorrupt() throws IOException {
+        IndexV1Cache.write(context, repo, createIndex());
+        File file = new File(new File(context.getCacheDir(), "repo-index-cache"), repo.getId() + ".bin");
+        assertTrue(file.isFile());
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(raf.length() - 40);
+        int b = raf.read();
+        raf.seek(raf.length() - 40);
+        raf.write(b ^ 0xff);
+        raf.close();
+
+        assertNull(IndexV1Cache.load(context, repo));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testUnsupportedRepoValue() {
+        IndexV1Cache.Index index = createIndex();
+        Map<String, Object> repoMap = index.repoMap;
+        repoMap.put("unknown", new Object());
+        IndexV1Cache.write(context, repo, index);
+        assertNull(IndexV1Cache.load(context, repo));
+    }
+}
@@ -0,0 +1,116 @@
+package org.fdroid.fdroid;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.data.Repo;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class RepoIconBundleTest {
+
+    private static final byte[] ICON = {(byte) 0x89, 'P', 'N', 'G'};
+
+    private Context context;
+    private File repoDir;
+
+    @Before
+    public void setUp() throws IOException {
+        context = ApplicationProvider.getApplicationContext();
+        Preferences.setupForTests(context);
+        repoDir = new File(context.getFilesDir(), "repo");
+        FileUtils.deleteDirectory(repoDir);
+        assertTrue(repoDir.mkdirs());
+        RepoIconBundle.delete(context, 0);
+    }
+
+    private File writeBundle(String iconsDir) throws IOException {
+        File zip = new File(repoDir, iconsDir + ".zip");
+        ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zip));
+        for (String name : new String[]{
+                iconsDir + "/org.example.one.png",
+                "org.example.two.png",
+                "../org.example.evil.png",
+                iconsDir + "/sub/org.example.nested.png",
+                ".sha256",
+        }) {
+            zipOutputStream.putNextEntry(new ZipEntry(name));
+            zipOutputStream.write(ICON);
+            zipOutputStream.closeEntry();
+        }
+        zipOutputStream.putNextEntry(new ZipEntry("org.example.huge.png"));
+        zipOutputStream.write(new byte[RepoIconBundle.MAX_ICON_SIZE + 1]);
+        zipOutputStream.closeEntry();
+        zipOutputStream.close();
+        return zip;
+    }
+
+    @Test
+    public void testUnpack() throws IOException {
+        File zip = writeBundle("icons-640");
+        File destDir = RepoIconBundle.getIconsDir(context, 0, "icons-640");
+        assertEquals(2, RepoIconBundle.unpack(zip, destDir, "abc"));
+
+        File one = RepoIconBundle.getCachedIcon(context, 0, "/icons-640/org.example.one.png");
+        assertNotNull(one);
+        assertArrayEquals(ICON, FileUtils.readFileToByteArray(one));
+        assertNotNull(RepoIconBundle.getCachedIcon(context, 0, "icons-640/org.example.two.png"));
+        assertNull(RepoIconBundle.getCachedIcon(context, 0, "/icons-640/org.example.huge.png"));
+        assertNull(RepoIconBundle.getCachedIcon(context, 0, "/icons-480/org.example.one.png"));
+        assertNull(RepoIconBundle.getCachedIcon(context, 0, "/icons-640/.sha256"));
+        assertNull(RepoIconBundle.getCachedIcon(context, 0, "/org.example.one/en-US/icon.png"));
+        assertFalse(new File(destDir.getParentFile(), "org.example.evil.png").exists());
+        assertFalse(new File(destDir.getParentFile(), destDir.getName() + ".tmp").exists());
+    }
+
+    @Test
+    public void testUpdate() throws IOException {
+        String iconsDir = Utils.getIconsDir(context, 1.0);
+        File zip = writeBundle(iconsDir);
+        Repo repo = new Repo();
+        repo.address = Uri.fromFile(repoDir).toString();
+
+        Map<String, Object> bundle = new HashMap<>();
+        bundle.put("name", zip.getName());
+        bundle.put("sha256", "0000000000000000000000000000000000000000000000000000000000000000");
+        Map<String, Object> bundles = new HashMap<>();
+        bundles.put(iconsDir, bundle);
+
+        RepoIconBundle.update(context, repo, bundles);
+        String path = "/" + iconsDir + "/org.example.one.png";
+        assertNull("bundles not matching the index are ignored", RepoIconBundle.getCachedIcon(context, 0, path));
+
+        bundle.put("sha256", Utils.getFileHexDigest(zip, "sha256"));
+        RepoIconBundle.update(context, repo, bundles);
+        assertNotNull(RepoIconBundle.getCachedIcon(context, 0, path));
+
+        // already unpacked, so the bundle is not downloaded again
+        FileUtils.deleteQuietly(zip);
+        RepoIconBundle.update(context, repo, bundles);
+        assertNotNull(RepoIconBundle.getCachedIcon(context, 0, path));
+
+        RepoIconBundle.update(context, repo, null);
+        assertNull("removed from the index", RepoIconBundle.getCachedIcon(context, 0, path));
+    }
+}
@@ -0,0 +1,118 @@
+package org.fdroid.fdroid;
+
+import android.net.Uri;
+
+import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.FDroidProviderTest;
+import org.fdroid.fdroid.data.Repo;
+import org.fdroid.fdroid.data.RepoProviderTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ScreenshotThumbnailsTest extends FDroidProviderTest {
+
+    private static final String PACKAGE_NAME = "org.example.app";
+    private static final String[] SCREENSHOTS = {
+            "en-US/phoneScreenshots/1.png",
+            "en-US/phoneScreenshots/2.png",
+            "en-US/phoneScreenshots/3.png",
+            "en-US/phoneScreenshots/4.png",
+    };
+    private static final int SCREENSHOT_SIZE = 1500 * 1024;
+    private static final int THUMBNAIL_SIZE = 40 * 1024;
+
+    private File repoDir;
+    private Repo repo;
+
+    @Before
+    public void setUp() throws IOException {
+        Preferences.setupForTests(context);
+        repoDir = new File(context.getFilesDir(), "screenshots-repo");
+        FileUtils.deleteDirectory(repoDir);
+        assertTrue(repoDir.mkdirs());
+        repo = RepoProviderTest.insertRepo(context, Uri.fromFile(repoDir).toString(), "", "", "");
+    }
+
+    @Test
+    public void testUpdate() {
+        // gallery is 240dp high, which is 240px on Robolectric's default mdpi screen
+        assertEquals(240, ScreenshotThumbnails.getGalleryHeight(context));
+        assertEquals(0, ScreenshotThumbnails.getThumbnailHeight(context, repo.getId()));
+
+        ScreenshotThumbnails.update(context, repo, Arrays.asList(720, 160, "480", -1, 320, 160));
+        assertEquals(320, ScreenshotThumbnails.getThumbnailHeight(context, repo.getId()));
+
+        ScreenshotThumbnails.update(context, repo, Arrays.asList(120, 160));
+        assertEquals(160, ScreenshotThumbnails.getThumbnailHeight(context, repo.getId()));
+
+        ScreenshotThumbnails.update(context, repo, Collections.singletonMap("heights", 240));
+        assertEquals(0, ScreenshotThumbnails.getThumbnailHeight(context, repo.getId()));
+
+        ScreenshotThumbnails.update(context, repo, Collections.singletonList(240));
+        assertEquals(240, ScreenshotThumbnails.getThumbnailHeight(context, repo.getId()));
+        ScreenshotThumbnails.delete(context, repo.getId());
+        assertEquals(0, ScreenshotThumbnails.getThumbnailHeight(context, repo.getId()));
+    }
+
+    @Test
+    public void testThumbnailPath() {
+        assertEquals("en-US/phoneScreenshots/thumbnails-480/1.png",
+                ScreenshotThumbnails.getThumbnailPath("en-US/phoneScreenshots/1.png", 480));
+        assertEquals("thumbnails-240/1.png", ScreenshotThumbnails.getThumbnailPath("1.png", 240));
+        assertEquals("en-US/phoneScreenshots/1.png",
+                ScreenshotThumbnails.getThumbnailPath("en-US/phoneScreenshots/1.png", 0));
+    }
+
+    /**
+     * How much the gallery in {@link org.fdroid.fdroid.views.AppDetailsActivity}
+     * has to download from a local test repo, with and without thumbnails.
+     */
+    @Test
+    public void testBytesTransferred() throws IOException {
+        App app = new App();
+        app.packageName = PACKAGE_NAME;
+        app.repoId = repo.getId();
+        app.phoneScreenshots = SCREENSHOTS;
+        for (String screenshot : SCREENSHOTS) {
+            writeFile(screenshot, SCREENSHOT_SIZE);
+            writeFile(ScreenshotThumbnails.getThumbnailPath(screenshot, 240), THUMBNAIL_SIZE);
+            writeFile(ScreenshotThumbnails.getThumbnailPath(screenshot, 480), THUMBNAIL_SIZE * 3);
+        }
+
+        long withoutThumbnails = getBytes(app.getAllScreenshotThumbnails(context));
+        assertEquals(getBytes(app.getAllScreenshots(context)), withoutThumbnails);
+
+        ScreenshotThumbnails.update(context, repo, Arrays.asList(240, 480));
+        long withThumbnails = getBytes(app.getAllScreenshotThumbnails(context));
+        assertEquals(SCREENSHOTS.length * THUMBNAIL_SIZE, withThumbnails);
+
+        System.out.println("Gallery of " + SCREENSHOTS.length + " screenshots downloads "
+                + withoutThumbnails / 1024 + "KiB without thumbnails, " + withThumbnails / 1024 + "KiB with");
+    }
+
+    private void writeFile(String path, int size) throws IOException {
+        FileUtils.writeByteArrayToFile(new File(new File(repoDir, PACKAGE_NAME), path), new byte[size]);
+    }
+
+    private static long getBytes(String[] urls) {
+        long bytes = 0;
+        for (String url : urls) {
+            File file = new File(Uri.parse(url).getPath());
+            assertTrue(url, file.isFile());
+            bytes += file.length();
+        }
+        return bytes;
+    }
+}
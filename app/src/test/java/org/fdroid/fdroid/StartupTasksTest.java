@@ -0,0 +1,100 @@
+package org.fdroid.fdroid;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class StartupTasksTest {
+
+    private final List<Runnable> queue = new ArrayList<>();
+    private final Executor executor = queue::add;
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<>());
+
+    private Runnable record(final String name) {
+        return () -> ran.add(name);
+    }
+
+    private void runQueue() {
+        while (!queue.isEmpty()) {
+            queue.remove(0).run();
+        }
+    }
+
+    @Test
+    public void testDependencies() {
+        StartupTasks tasks = new StartupTasks(executor)
+                .add("update", StartupTasks.When.AFTER_FIRST_DRAW, record("update"), "provision", "compare")
+                .add("compare", StartupTasks.When.BACKGROUND, record("compare"))
+                .add("provision", StartupTasks.When.BACKGROUND, record("provision"), "compare")
+                .add("clean", StartupTasks.When.AFTER_FIRST_DRAW, record("clean"));
+        tasks.start();
+        runQueue();
+        assertEquals(Arrays.asList("compare", "provision"), ran);
+
+        tasks.onFirstDraw();
+        runQueue();
+        assertEquals(Arrays.asList("compare", "provision", "clean", "update"), ran);
+        assertEquals(ran, new ArrayList<>(tasks.getTimings().keySet()));
+    }
+
+    @Test
+    public void testAfterFirstDrawDependingOnBackground() {
+        StartupTasks tasks = new StartupTasks(executor)
+                .add("compare", StartupTasks.When.BACKGROUND, record("compare"))
+                .add("recheck", StartupTasks.When.AFTER_FIRST_DRAW, record("recheck"), "compare");
+        tasks.start();
+        tasks.onFirstDraw();
+        assertTrue(ran.isEmpty());
+        runQueue();
+        assertEquals(Arrays.asList("compare", "recheck"), ran);
+    }
+
+    @Test
+    public void testFailureDoesNotBlockDependents() {
+        StartupTasks tasks = new StartupTasks(executor)
+                .add("fails", StartupTasks.When.BACKGROUND, () -> {
+                    throw new IllegalStateException("expected");
+                })
+                .add("after", StartupTasks.When.BACKGROUND, record("after"), "fails");
+        tasks.start();
+        runQueue();
+        assertEquals(Collections.singletonList("after"), ran);
+        assertEquals(2, tasks.getTimings().size());
+    }
+
+    @Test
+    public void testInvalidDependencies() {
+        try {
+            new StartupTasks(executor)
+                    .add("a", StartupTasks.When.BACKGROUND, record("a"), "missing")
+                    .start();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        try {
+            new StartupTasks(executor)
+                    .add("a", StartupTasks.When.BACKGROUND, record("a"), "c")
+                    .add("b", StartupTasks.When.BACKGROUND, record("b"), "a")
+                    .add("c", StartupTasks.When.BACKGROUND, record("c"), "b")
+                    .add("d", StartupTasks.When.BACKGROUND, record("d"))
+                    .start();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,156 @@
+package org.fdroid.fdroid.data;
+
+import android.app.Application;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.preference.PreferenceManager;
+
+import org.fdroid.fdroid.Assert;
+import org.fdroid.fdroid.Preferences;
+import org.fdroid.fdroid.R;
+import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.data.Schema.AppMetadataTable;
+import org.fdroid.fdroid.data.Schema.AppMetadataTable.Cols;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = Application.class)
+@RunWith(RobolectricTestRunner.class)
+public class AntiFeatureFlagsTest extends FDroidProviderTest {
+
+    private static final int REPOS = 3;
+    private static final int APPS_PER_REPO = 300;
+    private static final int RUNS = 20;
+
+    @Before
+    public void setup() {
+        Preferences.setupForTests(context);
+    }
+
+    @Test
+    public void testKnownMatchesResources() {
+        List<String> values = new ArrayList<>(Arrays.asList(
+                context.getResources().getStringArray(R.array.antifeaturesValues)));
+        assertTrue(values.remove(context.getString(R.string.antiothers_key)));
+        assertEquals(AntiFeatureFlags.OTHERS_KEY, context.getString(R.string.antiothers_key));
+        assertEquals(values, Arrays.asList(AntiFeatureFlags.KNOWN));
+    }
+
+    @Test
+    public void testFlags() {
+        assertEquals(0, AntiFeatureFlags.fromCommaSeparated(null));
+        assertEquals(0, AntiFeatureFlags.fromCommaSeparated(""));
+        int adsAndTracking = AntiFeatureFlags.fromCommaSeparated("Ads,Tracking");
+        assertEquals(0b11, adsAndTracking);
+        assertEquals(AntiFeatureFlags.OTHERS, AntiFeatureFlags.fromCommaSeparated("NSFW"));
+
+        int mask = AntiFeatureFlags.getUnwantedMask(new HashSet<>(Arrays.asList("Ads", "Tracking")));
+        assertEquals(0, adsAndTracking & mask);
+        assertFalse((AntiFeatureFlags.fromCommaSeparated("Ads,KnownVuln") & mask) == 0);
+        assertFalse((AntiFeatureFlags.OTHERS & mask) == 0);
+        assertEquals(0, AntiFeatureFlags.OTHERS & AntiFeatureFlags.getUnwantedMask(
+                Collections.singleton(AntiFeatureFlags.OTHERS_KEY)));
+    }
+
+    @Test
+    public void testFlagsStoredOnInsert() {
+        ContentValues values = new ContentValues();
+        values.put(Cols.ANTI_FEATURES, "Tracking,NonFreeNet");
+        App app = Assert.insertApp(context, "com.example.tracking", "Tracking", values);
+        Cursor cursor = contentResolver.query(AppProvider.getContentUri(), new String[]{Cols.Package.PACKAGE_NAME},
+                "(" + AppMetadataTable.NAME + "." + Cols.ANTI_FEATURE_FLAGS + " & "
+                        + AntiFeatureFlags.fromCommaSeparated("NonFreeNet") + ") != 0", null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(app.packageName, cursor.getString(0));
+        cursor.close();
+    }
+
+    /**
+     * Compares the old {@code NOT LIKE} filter with the bitmask filter from
+     * {@link Utils#getAntifeatureSQLFilter(android.content.Context)} on a
+     * database with apps from multiple repos, checking they return the same apps.
+     */
+    @Test
+    public void benchmarkListQuery() {
+        Random random = new Random(86);
+        for (long repoId = 1; repoId <= REPOS; repoId++) {
+            for (int i = 0; i < APPS_PER_REPO; i++) {
+                ContentValues values = new ContentValues();
+                values.put(Cols.REPO_ID, repoId);
+                if (random.nextBoolean()) {
+                    Set<String> antiFeatures = new HashSet<>();
+                    for (int j = random.nextInt(3); j >= 0; j--) {
+                        antiFeatures.add(AntiFeatureFlags.KNOWN[random.nextInt(AntiFeatureFlags.KNOWN.length)]);
+                    }
+                    values.put(Cols.ANTI_FEATURES, Utils.serializeCommaSeparatedString(
+                            antiFeatures.toArray(new String[0])));
+                }
+                Assert.insertApp(context, "com.example.app" + i, "App " + i, values);
+            }
+        }
+        AppProvider.Helper.recalculatePreferredMetadata(context);
+
+        Set<String> acceptable = new HashSet<>(Arrays.asList("Ads", "NonFreeDep", AntiFeatureFlags.OTHERS_KEY));
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putStringSet(Preferences.PREF_SHOW_ANTI_FEATURES, acceptable).commit();
+
+        StringBuilder likeFilter = new StringBuilder(AppMetadataTable.NAME + "." + Cols.ANTI_FEATURES + " IS NULL");
+        String separator = " OR (";
+        for (String antiFeature : AntiFeatureFlags.KNOWN) {
+            if (!acceptable.contains(antiFeature)) {
+                likeFilter.append(separator).append(AppMetadataTable.NAME).append('.').append(Cols.ANTI_FEATURES)
+                        .append(" NOT LIKE '%").append(antiFeature).append("%'");
+                separator = " AND ";
+            }
+        }
+        likeFilter.append(')');
+        String flagsFilter = Utils.getAntifeatureSQLFilter(context);
+
+        Set<String> expected = query(likeFilter.toString());
+        Set<String> actual = query(flagsFilter);
+        assertEquals(expected, actual);
+        assertTrue(actual.size() > 0);
+
+        long likeNanos = time(likeFilter.toString());
+        long flagsNanos = time(flagsFilter);
+        System.out.println("Listing " + actual.size() + " of " + (REPOS * APPS_PER_REPO) + " apps took "
+                + likeNanos / RUNS / 1000 + "µs with NOT LIKE, " + flagsNanos / RUNS / 1000 + "µs with "
+                + Cols.ANTI_FEATURE_FLAGS);
+    }
+
+    private Set<String> query(String selection) {
+        Set<String> packageNames = new HashSet<>();
+        Cursor cursor = contentResolver.query(AppProvider.getContentUri(),
+                new String[]{Cols.Package.PACKAGE_NAME}, selection, null, null);
+        while (cursor.moveToNext()) {
+            packageNames.add(cursor.getString(0));
+        }
+        cursor.close();
+        return packageNames;
+    }
+
+    private long time(String selection) {
+        query(selection); // warm up
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            query(selection);
+        }
+        return System.nanoTime() - start;
+    }
+}
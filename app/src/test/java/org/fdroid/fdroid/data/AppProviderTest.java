@@ -6,6 +6,8 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 
 import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.TestUtils;
@@ -20,6 +22,7 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
@@ -100,6 +103,27 @@ public class AppProviderTest extends FDroidProviderTest {
         cursor.close();
     }
 
+    @Test
+    public void testLimitedUri() {
+        insertApps(30);
+        assertResultCount(contentResolver, 30, AppProvider.getSearchUri("test", null), PROJ);
+        assertResultCount(contentResolver, 10, AppProvider.getLimitedUri(AppProvider.getSearchUri("test", null), 10),
+                PROJ);
+    }
+
+    @Test(expected = OperationCanceledException.class)
+    public void testCancelledQuery() {
+        insertApps(10);
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        cancellationSignal.cancel();
+        Cursor cursor = contentResolver.query(AppProvider.getSearchUri("test", null), PROJ, null, null, null,
+                cancellationSignal);
+        if (cursor != null) {
+            cursor.getCount();
+            cursor.close();
+        }
+    }
+
     private void insertApps(int count) {
         for (int i = 0; i < count; i++) {
             insertApp("com.example.test." + i, "Test app " + i);
@@ -301,6 +325,67 @@ public class AppProviderTest extends FDroidProviderTest {
         new App(cursor);
     }
 
+    @Test
+    public void testRecalculateCompatibility() {
+        App tooNew = insertApp("com.example.toonew", "Too new", "summary");
+        ContentValues tooNewValues = new ContentValues();
+        tooNewValues.put(Schema.ApkTable.Cols.MIN_SDK_VERSION, 9999);
+        insertApk(context, tooNew, 1, tooNewValues);
+
+        App fine = insertApp("com.example.fine", "Fine", "summary");
+        insertApk(context, fine, 1);
+        ContentValues wasIncompatible = new ContentValues();
+        wasIncompatible.put(Schema.ApkTable.Cols.IS_COMPATIBLE, 0);
+        wasIncompatible.put(Schema.ApkTable.Cols.INCOMPATIBLE_REASONS, "android.hardware.nfc");
+        insertApk(context, fine, 2, wasIncompatible);
+
+        AppProvider.Helper.recalculateCompatibility(context);
+
+        Apk tooNewApk = ApkProvider.Helper.findApkFromAnyRepo(context, "com.example.toonew", 1);
+        assertFalse(tooNewApk.compatible);
+        assertNotNull(tooNewApk.incompatibleReasons);
+        assertFalse(AppProvider.Helper.findSpecificApp(contentResolver, "com.example.toonew", 1, PROJ).compatible);
+
+        Apk fineApk = ApkProvider.Helper.findApkFromAnyRepo(context, "com.example.fine", 2);
+        assertTrue(fineApk.compatible);
+        assertNull(fineApk.incompatibleReasons);
+        App fineApp = AppProvider.Helper.findSpecificApp(contentResolver, "com.example.fine", 1, PROJ);
+        assertTrue(fineApp.compatible);
+        assertEquals(2, fineApp.autoInstallVersionCode);
+    }
+
+    @Test
+    public void testLatestRank() {
+        insertLatestApp("com.example.e", Cols.LAST_UPDATED, "2019-06-01");
+        insertLatestApp("com.example.d", Cols.LAST_UPDATED, "2020-06-01", Cols.ADDED, "2016-01-01");
+        insertLatestApp("com.example.c", Cols.LAST_UPDATED, "2020-06-01", Cols.ADDED, "2015-01-01");
+        insertLatestApp("com.example.b", Cols.LAST_UPDATED, "2018-01-01", Cols.ICON, "icon.png");
+        insertLatestApp("com.example.a", Cols.LAST_UPDATED, "2017-01-01", Cols.IS_LOCALIZED, "1");
+
+        DBHelper.getInstance(context).getWritableDatabase()
+                .execSQL(AppProvider.getUpdateLatestRankSql(Schema.AppMetadataTable.NAME));
+
+        Cursor cursor = contentResolver.query(AppProvider.getContentUri(),
+                new String[]{Cols.Package.PACKAGE_NAME}, null, null,
+                Schema.AppMetadataTable.NAME + "." + Cols.LATEST_RANK + " DESC");
+        assertNotNull(cursor);
+        List<String> packageNames = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            packageNames.add(cursor.getString(0));
+        }
+        cursor.close();
+        assertEquals(Arrays.asList("com.example.a", "com.example.b", "com.example.c", "com.example.d",
+                "com.example.e"), packageNames);
+    }
+
+    private void insertLatestApp(String packageName, String... keysAndValues) {
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            values.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        insertApp(contentResolver, context, packageName, packageName, values);
+    }
+
     private Cursor queryAllApps() {
         String[] projection = new String[]{
                 Cols._ID,
@@ -0,0 +1,98 @@
+package org.fdroid.fdroid.data;
+
+import android.app.Application;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.Signature;
+
+import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.Preferences;
+import org.fdroid.fdroid.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@Config(application = Application.class)
+@RunWith(RobolectricTestRunner.class)
+public class InstalledAppProviderServiceTest extends FDroidProviderTest {
+
+    private static final String PACKAGE_PREFIX = "org.example.installed";
+
+    /**
+     * More than two {@link InstalledAppProviderService#SYNC_BATCH_SIZE batches}.
+     */
+    private static final int PACKAGES = InstalledAppProviderService.SYNC_BATCH_SIZE * 2 + 20;
+
+    @Before
+    public void setup() {
+        TestUtils.registerContentProvider(InstalledAppProvider.getAuthority(), InstalledAppProvider.class);
+        Preferences.setupForTests(context);
+    }
+
+    private void install(String packageName, long lastUpdateTime) throws IOException {
+        File apk = File.createTempFile(packageName, ".apk");
+        apk.deleteOnExit();
+        FileUtils.writeStringToFile(apk, packageName, "UTF-8");
+
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = packageName;
+        packageInfo.versionCode = 1;
+        packageInfo.versionName = "1.0";
+        packageInfo.lastUpdateTime = lastUpdateTime;
+        packageInfo.signatures = new Signature[]{new Signature("0123456789abcdef")};
+        packageInfo.applicationInfo = new ApplicationInfo();
+        packageInfo.applicationInfo.packageName = packageName;
+        packageInfo.applicationInfo.sourceDir = apk.getAbsolutePath();
+        packageInfo.applicationInfo.publicSourceDir = apk.getAbsolutePath();
+        shadowOf(context.getPackageManager()).installPackage(packageInfo);
+    }
+
+    private Map<String, Long> getInstalled() {
+        Map<String, Long> installed = InstalledAppProvider.Helper.lastUpdateTimes(context);
+        Iterator<String> packageNames = installed.keySet().iterator();
+        while (packageNames.hasNext()) {
+            if (!packageNames.next().startsWith(PACKAGE_PREFIX)) {
+                packageNames.remove();
+            }
+        }
+        return installed;
+    }
+
+    @Test
+    public void testSync() throws IOException {
+        for (int i = 0; i < PACKAGES; i++) {
+            install(PACKAGE_PREFIX + i, 1500000000000L);
+        }
+
+        long start = System.nanoTime();
+        InstalledAppProviderService.syncWithPackageManager(context, null);
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println("Synced " + PACKAGES + " installed packages in " + millis + "ms");
+
+        Map<String, Long> installed = getInstalled();
+        assertEquals(PACKAGES, installed.size());
+        assertEquals(1500000000000L, (long) installed.get(PACKAGE_PREFIX + 0));
+
+        shadowOf(context.getPackageManager()).removePackage(PACKAGE_PREFIX + 0);
+        install(PACKAGE_PREFIX + 1, 1600000000000L);
+        InstalledAppProviderService.syncWithPackageManager(context, null);
+
+        installed = getInstalled();
+        assertEquals(PACKAGES - 1, installed.size());
+        assertFalse(installed.containsKey(PACKAGE_PREFIX + 0));
+        assertEquals(1600000000000L, (long) installed.get(PACKAGE_PREFIX + 1));
+        assertTrue(installed.containsKey(PACKAGE_PREFIX + (PACKAGES - 1)));
+    }
+}
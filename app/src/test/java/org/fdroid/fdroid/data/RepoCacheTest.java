@@ -0,0 +1,134 @@
+package org.fdroid.fdroid.data;
+
+import android.app.Application;
+import android.content.ContentValues;
+
+import org.fdroid.fdroid.Preferences;
+import org.fdroid.fdroid.data.Schema.RepoTable.Cols;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@Config(application = Application.class)
+@RunWith(RobolectricTestRunner.class)
+public class RepoCacheTest extends FDroidProviderTest {
+
+    private static final int REPOS = 3;
+    private static final int LIST_ITEMS = 200;
+    private static final int RUNS = 20;
+
+    private Repo repo;
+
+    @Before
+    public void setup() {
+        Preferences.setupForTests(context);
+        repo = RepoProviderTest.insertRepo(context, "https://example.com/fdroid/repo", "", "", "Example");
+    }
+
+    @After
+    public void teardown() {
+        RepoCache.clear();
+    }
+
+    @Test
+    public void testCached() {
+        Repo cached = RepoCache.get(context, repo.getId());
+        assertEquals("Example", cached.getName());
+        assertSame(cached, RepoCache.get(context, repo.getId()));
+        assertNull(RepoCache.get(context, 12345));
+    }
+
+    @Test
+    public void testInvalidatedOnUpdate() {
+        assertEquals("Example", RepoCache.get(context, repo.getId()).getName());
+
+        ContentValues values = new ContentValues();
+        values.put(Cols.NAME, "Renamed");
+        RepoProvider.Helper.update(context, repo, values);
+        assertEquals("Renamed", RepoCache.get(context, repo.getId()).getName());
+
+        RepoProvider.Helper.remove(context, repo.getId());
+        assertNull(RepoCache.get(context, repo.getId()));
+    }
+
+    @Test
+    public void testFindByUrl() {
+        Repo nested = RepoProviderTest.insertRepo(context, "https://example.com/fdroid/repo/nested", "", "", null);
+        String icon = "https://example.com/fdroid/repo/org.example/en-US/icon.png?v=1";
+        assertEquals(repo.getId(), RepoCache.findByUrl(context, icon).getId());
+        assertEquals(repo.getId(), RepoCache.findByUrl(context, repo.address).getId());
+        assertEquals(nested.getId(), RepoCache.findByUrl(context, nested.address + "/icon.png").getId());
+        assertEquals(repo.getId(), RepoCache.findByUrl(context, repo.address + "/nestedicon.png").getId());
+        assertNull(RepoCache.findByUrl(context, "https://example.com/fdroid/repository/icon.png"));
+        assertNull(RepoCache.findByUrl(context, "https://example.org/fdroid/repo/icon.png"));
+
+        Repo added = RepoProviderTest.insertRepo(context, "https://example.org/fdroid/repo", "", "", null);
+        assertEquals(added.getId(), RepoCache.findByUrl(context, added.address + "/icon.png").getId());
+    }
+
+    /**
+     * Builds the icon URLs of a list of apps from a few repos, like binding
+     * an app list does, once looking up the repo of each item in the
+     * database, and once through {@link RepoCache}.
+     */
+    @Test
+    public void benchmarkIconUrls() {
+        long[] repoIds = new long[REPOS];
+        for (int i = 0; i < REPOS; i++) {
+            repoIds[i] = RepoProviderTest.insertRepo(context, "https://example.com/repo" + i, "", "", null).getId();
+        }
+        List<App> apps = new ArrayList<>();
+        for (int i = 0; i < LIST_ITEMS; i++) {
+            App app = new App();
+            app.packageName = "com.example.app" + i;
+            app.iconUrl = "icon.png";
+            app.repoId = repoIds[i % REPOS];
+            apps.add(app);
+        }
+
+        for (App app : apps) {
+            Repo uncached = RepoProvider.Helper.findById(context, app.repoId);
+            assertEquals(uncached.getFileUrl(app.packageName, app.iconUrl), app.getIconUrl(context));
+        }
+
+        bindWithProvider(apps); // warm up
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            bindWithProvider(apps);
+        }
+        long providerNanos = System.nanoTime() - start;
+
+        bindWithCache(apps); // warm up
+        start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            bindWithCache(apps);
+        }
+        long cacheNanos = System.nanoTime() - start;
+
+        System.out.println("Binding " + LIST_ITEMS + " icon URLs took " + providerNanos / RUNS / 1000
+                + "µs with a query per item, " + cacheNanos / RUNS / 1000 + "µs with RepoCache");
+    }
+
+    private void bindWithProvider(List<App> apps) {
+        for (App app : apps) {
+            Repo repo = RepoProvider.Helper.findById(context, app.repoId);
+            repo.getFileUrl(app.packageName, app.iconUrl);
+        }
+    }
+
+    private void bindWithCache(List<App> apps) {
+        for (App app : apps) {
+            app.getIconUrl(context);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.fdroid.fdroid.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import org.fdroid.fdroid.IndexUpdater;
+import org.fdroid.fdroid.Preferences;
+import org.fdroid.fdroid.TestUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class RepoPersisterTest extends FDroidProviderTest {
+
+    private static int packageIdQueries;
+    private static int categoryQueries;
+
+    public static class CountingPackageIdProvider extends PackageIdProvider {
+        @Override
+        public Cursor query(@NonNull Uri uri, String[] projection,
+                            String customSelection, String[] selectionArgs, String sortOrder) {
+            packageIdQueries++;
+            return super.query(uri, projection, customSelection, selectionArgs, sortOrder);
+        }
+    }
+
+    public static class CountingCategoryProvider extends CategoryProvider {
+        @Override
+        public Cursor query(@NonNull Uri uri, String[] projection,
+                            String customSelection, String[] selectionArgs, String sortOrder) {
+            categoryQueries++;
+            return super.query(uri, projection, customSelection, selectionArgs, sortOrder);
+        }
+    }
+
+    @Before
+    public void setup() {
+        Preferences.setupForTests(context);
+        TestUtils.registerContentProvider(PackageIdProvider.getAuthority(), CountingPackageIdProvider.class);
+        TestUtils.registerContentProvider(CategoryProvider.getAuthority(), CountingCategoryProvider.class);
+        packageIdQueries = 0;
+        categoryQueries = 0;
+    }
+
+    @Test
+    public void queriesDoNotGrowWithApps() throws IndexUpdater.UpdateException {
+        Repo small = RepoProviderTest.insertRepo(context, "https://small.example.org/fdroid/repo", "", "", "");
+        persist(small, "org.example.small", 10);
+        int smallPackageIdQueries = packageIdQueries;
+        int smallCategoryQueries = categoryQueries;
+
+        packageIdQueries = 0;
+        categoryQueries = 0;
+        Repo large = RepoProviderTest.insertRepo(context, "https://large.example.org/fdroid/repo", "", "", "");
+        persist(large, "org.example.large", 300);
+
+        assertEquals(smallPackageIdQueries, packageIdQueries);
+        assertEquals(smallCategoryQueries, categoryQueries);
+    }
+
+    @Test
+    public void idsAreResolved() throws IndexUpdater.UpdateException {
+        // these already exist, so their ids have to be reused rather than inserted again
+        long existingPackageId = PackageIdProvider.Helper.ensureExists(context, "org.example.app1");
+        CategoryProvider.Helper.ensureExists(context, "Category1");
+
+        Repo repo = RepoProviderTest.insertRepo(context, "https://example.org/fdroid/repo", "", "", "");
+        persist(repo, "org.example.app", 120);
+
+        for (int i = 0; i < 120; i++) {
+            String packageName = "org.example.app" + i;
+            App app = AppProvider.Helper.findSpecificApp(contentResolver, packageName, repo.getId());
+            assertNotNull(app);
+            assertEquals(packageName, app.packageName);
+        }
+        assertEquals(existingPackageId, PackageIdProvider.Helper.getPackageId(context, "org.example.app1"));
+
+        // every app is in "Common" and one of five numbered categories, in varying case
+        assertEquals(120, countApps(AppProvider.getCategoryUri("Common")));
+        assertEquals(24, countApps(AppProvider.getCategoryUri("Category1")));
+        assertEquals(24, countApps(AppProvider.getCategoryUri("Category4")));
+    }
+
+    @Test
+    public void updateKeepsWriteAheadLogging() throws IndexUpdater.UpdateException {
+        SQLiteDatabase db = DBHelper.getInstance(context).getWritableDatabase();
+        assertTrue(db.isWriteAheadLoggingEnabled());
+
+        Repo repo = RepoProviderTest.insertRepo(context, "https://example.org/fdroid/repo", "", "", "");
+        persist(repo, "org.example.app", 10);
+
+        assertTrue(db.isWriteAheadLoggingEnabled());
+        assertEquals(0, countTempTables(db));
+    }
+
+    @Test
+    public void maintenanceFreesPagesOfUpdates() throws IndexUpdater.UpdateException {
+        Repo repo = RepoProviderTest.insertRepo(context, "https://example.org/fdroid/repo", "", "", "");
+        persist(repo, "org.example.app", 300);
+        persist(repo, "org.example.app", 300);
+
+        SQLiteDatabase db = DBHelper.getInstance(context).getWritableDatabase();
+        long freePages = getLong(db, "PRAGMA freelist_count");
+        assertTrue(freePages > 0);
+
+        DBHelper.runMaintenance(context);
+        assertEquals(2, DBHelper.getAutoVacuum(db));
+        assertEquals(0, getLong(db, "PRAGMA freelist_count"));
+        assertEquals(300, countApps(AppProvider.getCategoryUri("Common")));
+        System.out.println("Maintenance freed " + freePages + " pages of " + getLong(db, "PRAGMA page_size")
+                + " bytes left behind by updating one repo twice");
+    }
+
+    private static int countTempTables(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE name LIKE 'temp\\_%' ESCAPE '\\'", null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private static long getLong(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        assertTrue(cursor.moveToFirst());
+        long value = cursor.getLong(0);
+        cursor.close();
+        return value;
+    }
+
+    private void persist(Repo repo, String packagePrefix, int count) throws IndexUpdater.UpdateException {
+        RepoPersister persister = new RepoPersister(context, repo);
+        for (int i = 0; i < count; i++) {
+            App app = new App();
+            app.repoId = repo.getId();
+            app.packageName = packagePrefix + i;
+            app.name = "App " + i;
+            app.summary = "Summary " + i;
+            app.categories = new String[]{
+                    "Common",
+                    i % 2 == 0 ? "Category" + i % 5 : "CATEGORY" + i % 5,
+                    "common",
+            };
+            persister.saveToDb(app, new ArrayList<Apk>());
+        }
+        ContentValues values = new ContentValues(1);
+        values.put(Schema.RepoTable.Cols.LAST_UPDATED, "2020-01-01");
+        persister.commit(values, repo.getId());
+    }
+
+    private int countApps(Uri uri) {
+        Cursor cursor = contentResolver.query(uri, Schema.AppMetadataTable.Cols.ALL, null, null, null);
+        assertNotNull(cursor);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+}
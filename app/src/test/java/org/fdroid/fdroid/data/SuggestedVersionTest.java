@@ -20,17 +20,19 @@ import static org.junit.Assert.assertEquals;
 @RunWith(RobolectricTestRunner.class)
 public class SuggestedVersionTest extends FDroidProviderTest {
 
+    private final Preferences.ChangeListener calcSuggestedApksListener = new Preferences.ChangeListener() {
+        @Override
+        public void onPreferenceChange() {
+            AppProvider.Helper.calcSuggestedApks(context);
+        }
+    };
+
     @Before
     public void setup() {
         Preferences.setupForTests(context);
 
-        // This is what the FDroidApp does when this preference is changed. Need to also do this under testing.
-        Preferences.get().registerUnstableUpdatesChangeListener(new Preferences.ChangeListener() {
-            @Override
-            public void onPreferenceChange() {
-                AppProvider.Helper.calcSuggestedApks(context);
-            }
-        });
+        // This is what SuggestedApksWorker does when this preference is changed, but synchronously.
+        Preferences.get().registerUnstableUpdatesChangeListener(calcSuggestedApksListener);
     }
 
     @Test
@@ -49,6 +51,24 @@ public class SuggestedVersionTest extends FDroidProviderTest {
         assertSuggested("single.app", 3);
     }
 
+    @Test
+    public void singleRepoSingleSigInSteps() {
+        Preferences.get().unregisterUnstableUpdatesChangeListener(calcSuggestedApksListener);
+        App singleApp = TestUtils.insertApp(
+                context, "single.app", "Single App (with beta)", 2, "https://beta.simple.repo", TestUtils.FDROID_SIG);
+        TestUtils.insertApk(context, singleApp, 1, TestUtils.FDROID_SIG);
+        TestUtils.insertApk(context, singleApp, 2, TestUtils.FDROID_SIG);
+        TestUtils.insertApk(context, singleApp, 3, TestUtils.FDROID_SIG);
+        TestUtils.updateDbAfterInserting(context);
+        assertSuggested("single.app", 2);
+
+        Preferences.get().setUnstableUpdates(true);
+        assertSuggested("single.app", 2);
+        AppProvider.Helper.calcSuggestedApksFromUpstream(context);
+        AppProvider.Helper.calcSuggestedApksFromLatest(context);
+        assertSuggested("single.app", 3);
+    }
+
     @Test
     public void singleRepoMultiSig() {
         App unrelatedApp = TestUtils.insertApp(context, "noisy.app", "Noisy App", 3, "https://simple.repo",
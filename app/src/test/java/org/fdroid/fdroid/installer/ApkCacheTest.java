@@ -3,6 +3,11 @@ package org.fdroid.fdroid.installer;
 import android.content.ContextWrapper;
 import android.util.Log;
 
+import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.Preferences;
+import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.data.Apk;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -10,10 +15,16 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.shadows.ShadowLog;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 
 import androidx.test.core.app.ApplicationProvider;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(RobolectricTestRunner.class)
@@ -28,6 +39,12 @@ public class ApkCacheTest {
         context = ApplicationProvider.getApplicationContext();
         cacheDir = ApkCache.getApkCacheDir(context);
         ShadowLog.stream = System.out;
+        Preferences.setupForTests(context);
+    }
+
+    @After
+    public final void tearDown() {
+        ApkCacheIndex.clearInstance();
     }
 
     @Test
@@ -61,4 +78,98 @@ public class ApkCacheTest {
                 ApkCache.getApkDownloadPath(context,
                         "https://example.com/fdroid/repo/Norway_bouvet_europe_2.obf"));
     }
+
+    private File downloadFakeApk(Apk apk, String content) throws IOException {
+        apk.packageName = "org.example.app";
+        apk.apkName = "org.example.app_" + content.length() + ".apk";
+        File file = ApkCache.getApkDownloadPath(context, "https://f-droid.org/repo/" + apk.apkName);
+        FileUtils.writeStringToFile(file, content);
+        apk.size = (int) file.length();
+        apk.hashType = "sha256";
+        apk.hash = Utils.getFileHexDigest(file, apk.hashType);
+        return file;
+    }
+
+    @Test
+    public void testVerifiedApkFromAnyRepo() throws IOException {
+        Apk apk = new Apk();
+        File downloaded = downloadFakeApk(apk, "not really an APK");
+        assertNull(ApkCache.getVerifiedApk(context, apk));
+
+        ApkCache.addVerifiedApk(context, downloaded, apk);
+        assertFalse(downloaded.exists());
+        File verified = ApkCache.getVerifiedApk(context, apk);
+        assertNotNull(verified);
+        assertEquals(verified, ApkCache.getApkPath(context, apk));
+
+        // the same APK in another repo
+        Apk sameApk = new Apk();
+        sameApk.apkName = "renamed.apk";
+        sameApk.size = apk.size;
+        sameApk.hashType = apk.hashType;
+        sameApk.hash = apk.hash.toUpperCase();
+        assertEquals(verified, ApkCache.getVerifiedApk(context, sameApk));
+
+        // the index survives a restart
+        ApkCacheIndex.clearInstance();
+        assertEquals(verified, ApkCache.getVerifiedApk(context, apk));
+
+        // modified since it was verified
+        FileUtils.writeStringToFile(verified, "something else");
+        assertNull(ApkCache.getVerifiedApk(context, apk));
+        assertFalse(verified.exists());
+    }
+
+    @Test
+    public void testLookupsAreWrittenInBatches() throws IOException {
+        ApkCacheIndex index = ApkCacheIndex.get(context);
+        index.put(new ApkCacheIndex.Entry("sha256-0123", "sha256-0123.apk", 1, 2, 3, 4));
+        File indexFile = new File(context.getCacheDir(), "apk-cache.bin");
+        byte[] written = FileUtils.readFileToByteArray(indexFile);
+
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(index.use("sha256-0123"));
+        }
+        assertArrayEquals("lookups do not write the index", written, FileUtils.readFileToByteArray(indexFile));
+
+        index.flush();
+        assertFalse(Arrays.equals(written, FileUtils.readFileToByteArray(indexFile)));
+        ApkCacheIndex.clearInstance();
+        assertTrue(ApkCacheIndex.get(context).use("sha256-0123").lastUsed > 4);
+    }
+
+    @Test
+    public void testTrim() throws IOException {
+        Apk first = new Apk();
+        Apk second = new Apk();
+        Apk third = new Apk();
+        ApkCache.addVerifiedApk(context, downloadFakeApk(first, "1"), first);
+        ApkCache.addVerifiedApk(context, downloadFakeApk(second, "22"), second);
+        ApkCache.addVerifiedApk(context, downloadFakeApk(third, "333"), third);
+        assertNotNull(ApkCache.getVerifiedApk(context, first));
+
+        ApkCache.trim(context, 5);
+        assertNull("least recently used", ApkCache.getVerifiedApk(context, second));
+        assertNotNull(ApkCache.getVerifiedApk(context, third));
+        assertNotNull(ApkCache.getVerifiedApk(context, first));
+
+        ApkCache.trim(context, 0);
+        assertNull(ApkCache.getVerifiedApk(context, third));
+        assertNotNull("the most recently used one is always kept", ApkCache.getVerifiedApk(context, first));
+    }
+
+    @Test
+    public void testDownloadedSha256() throws IOException {
+        Apk apk = new Apk();
+        File downloaded = downloadFakeApk(apk, "downloaded");
+        assertNull(ApkCache.getDownloadedSha256(downloaded));
+
+        ApkCache.saveDownloadedSha256(downloaded, apk.hash);
+        assertEquals(apk.hash, ApkCache.getDownloadedSha256(downloaded));
+        assertTrue(ApkCache.apkIsCached(downloaded, apk));
+
+        FileUtils.writeStringToFile(downloaded, "modified");
+        assertNull("not trusted after the file changed", ApkCache.getDownloadedSha256(downloaded));
+        assertFalse(ApkCache.apkIsCached(downloaded, apk));
+    }
 }
@@ -0,0 +1,68 @@
+package org.fdroid.fdroid.installer;
+
+import android.content.Context;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class StagedApkRegistryTest {
+    private static final String URL = "https://f-droid.org/repo/org.fdroid.fdroid_1008000.apk";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    private File stage(String name, byte[] content, boolean hardLink, String canonicalUrl) throws IOException {
+        File file = new File(context.getFilesDir(), name);
+        FileUtils.writeByteArrayToFile(file, content);
+        StagedApkRegistry.add(context, file, hardLink ? 0 : file.length(), canonicalUrl);
+        return file;
+    }
+
+    @Test
+    public void testRelease() throws IOException {
+        File copied = stage("copied.apk", new byte[1000], false, URL);
+        File linked = stage("linked.apk", new byte[500], true, URL);
+        File other = stage("other.apk", new byte[200], false, null);
+
+        StagedApkRegistry.release(context, "https://f-droid.org/repo/other.apk");
+        assertTrue(copied.exists());
+
+        StagedApkRegistry.release(context, URL);
+        assertFalse(copied.exists());
+        assertFalse(linked.exists());
+        assertTrue(other.exists());
+        assertEquals(1000, StagedApkRegistry.getReclaimedBytes(context));
+        assertEquals(2, StagedApkRegistry.getReclaimedFiles(context));
+    }
+
+    @Test
+    public void testDeleteExpired() throws IOException {
+        assertEquals(-1, StagedApkRegistry.deleteExpired(context));
+
+        File file = stage("pending.apk", new byte[100], false, URL);
+        long delay = StagedApkRegistry.deleteExpired(context);
+        assertTrue(file.exists());
+        assertTrue(delay > 0 && delay <= StagedApkRegistry.TIMEOUT_MILLIS);
+
+        StagedApkRegistry.release(context, URL);
+        assertEquals(-1, StagedApkRegistry.deleteExpired(context));
+        assertEquals(100, StagedApkRegistry.getReclaimedBytes(context));
+    }
+}
@@ -0,0 +1,62 @@
+package org.fdroid.fdroid.net;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.apache.commons.io.FileUtils;
+import org.fdroid.fdroid.Utils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class LocalFileDownloaderTest {
+
+    private File sourceFile;
+    private File destFile;
+    private String expectedSha256;
+
+    @Before
+    public void setUp() throws IOException {
+        Context context = ApplicationProvider.getApplicationContext();
+        sourceFile = new File(context.getCacheDir(), "source.apk");
+        destFile = new File(context.getFilesDir(), "dest.apk");
+        byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        FileUtils.writeByteArrayToFile(sourceFile, content);
+        FileUtils.deleteQuietly(destFile);
+        expectedSha256 = Utils.getFileHexDigest(sourceFile, "sha256");
+    }
+
+    @Test
+    public void testSha256() throws IOException, InterruptedException {
+        LocalFileDownloader downloader = new LocalFileDownloader(Uri.fromFile(sourceFile), destFile);
+        assertNull(downloader.getSha256());
+        downloader.download();
+        assertEquals(expectedSha256, downloader.getSha256());
+        assertEquals(expectedSha256, Utils.getFileHexDigest(destFile, "sha256"));
+    }
+
+    @Test
+    public void testSha256OfResumedDownload() throws IOException, InterruptedException {
+        byte[] content = FileUtils.readFileToByteArray(sourceFile);
+        FileUtils.writeByteArrayToFile(destFile, Arrays.copyOf(content, 12345));
+
+        LocalFileDownloader downloader = new LocalFileDownloader(Uri.fromFile(sourceFile), destFile);
+        downloader.download();
+        assertEquals(expectedSha256, downloader.getSha256());
+        assertEquals(expectedSha256, Utils.getFileHexDigest(destFile, "sha256"));
+    }
+}
@@ -0,0 +1,168 @@
+package org.fdroid.fdroid.net;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Probes a local HTTP server which is slow for all paths but one, like a
+ * network where some requests are filtered and just time out.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RepoAddressProberTest {
+
+    private static final int SLOW_MILLIS = 2000;
+    private static final int FAST_MILLIS = 100;
+    private static final int TIMEOUT = 10000;
+
+    private HttpServer server;
+    private String address;
+    private final Map<String, Integer> requests = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        RepoAddressProber.clearCache();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        serve("/", 404, 0);
+        server.start();
+        address = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void serve(final String path, final int statusCode, final int delayMillis) {
+        server.createContext(path, exchange -> {
+            requests.put(path, requests.containsKey(path) ? requests.get(path) + 1 : 1);
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                // answer right away then
+            }
+            exchange.sendResponseHeaders(statusCode, -1);
+            exchange.close();
+        });
+    }
+
+    @Test
+    public void testFirstFoundWins() {
+        serve("/index-v1.jar", 404, 0);
+        serve("/repo/index-v1.jar", 404, SLOW_MILLIS);
+        serve("/fdroid/repo/index-v1.jar", 200, FAST_MILLIS);
+
+        List<String> candidates = RepoAddressProber.getCandidates(address, Collections.<String>emptyList());
+        assertEquals(Arrays.asList(address, address + "/fdroid/repo", address + "/repo"), candidates);
+
+        long start = System.nanoTime();
+        RepoAddressProber.Result result = RepoAddressProber.probe(candidates, address, TIMEOUT).blockingGet();
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(address + "/fdroid/repo", result.address);
+        assertEquals(200, result.statusCode);
+        assertTrue(result.isFound());
+        assertTrue("took " + millis + "ms", millis < SLOW_MILLIS);
+
+        start = System.nanoTime();
+        result = RepoAddressProber.probe(candidates, address, TIMEOUT).blockingGet();
+        millis = (System.nanoTime() - start) / 1000000;
+        assertEquals(address + "/fdroid/repo", result.address);
+        assertEquals(1, (int) requests.get("/fdroid/repo/index-v1.jar"));
+        assertTrue("took " + millis + "ms", millis < FAST_MILLIS);
+    }
+
+    @Test
+    public void testMirror() {
+        serve("/blocked", 404, SLOW_MILLIS);
+        serve("/mirror/index-v1.jar", 200, FAST_MILLIS);
+
+        List<String> candidates = RepoAddressProber.getCandidates(address + "/blocked",
+                Collections.singletonList(address + "/mirror"));
+        assertEquals(6, candidates.size());
+
+        long start = System.nanoTime();
+        RepoAddressProber.Result result = RepoAddressProber.probe(candidates, address, TIMEOUT).blockingGet();
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(address + "/mirror", result.address);
+        // the blocked paths are waited for, but all at the same time
+        assertTrue("took " + millis + "ms", millis < 2 * SLOW_MILLIS);
+        System.out.println("Found repo in " + millis + "ms, checking one path after the other would take at least "
+                + (3 * SLOW_MILLIS + FAST_MILLIS) + "ms");
+    }
+
+    @Test
+    public void testPreferredWinsOverFaster() {
+        serve("/slow/index-v1.jar", 200, 5 * FAST_MILLIS);
+        serve("/slow/fdroid/repo/index-v1.jar", 200, 0);
+        serve("/mirror/index-v1.jar", 200, 0);
+
+        List<String> candidates = RepoAddressProber.getCandidates(address + "/slow",
+                Collections.singletonList(address + "/mirror"));
+        final List<String> waitingFor = new ArrayList<>();
+        RepoAddressProber.Result result = RepoAddressProber.probe(candidates, address, TIMEOUT, waitingFor::add)
+                .blockingGet();
+
+        assertEquals(address + "/slow", result.address);
+        assertEquals(Collections.singletonList(address + "/slow"), waitingFor);
+    }
+
+    @Test
+    public void testNothingFound() {
+        serve("/unauthorized/index-v1.jar", 401, 0);
+
+        RepoAddressProber.Result result = RepoAddressProber.probe(
+                RepoAddressProber.getCandidates(address + "/nothing", Collections.<String>emptyList()),
+                address + "/nothing", TIMEOUT).blockingGet();
+        assertEquals(address + "/nothing", result.address);
+        assertEquals(-1, result.statusCode);
+        assertFalse(result.isFound());
+
+        result = RepoAddressProber.probe(
+                RepoAddressProber.getCandidates(address + "/unauthorized", Collections.<String>emptyList()),
+                address, TIMEOUT).blockingGet();
+        assertEquals(address + "/unauthorized", result.address);
+        assertTrue("needs a username and password, but it is there", result.isFound());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        RepoAddressProber.Result result = RepoAddressProber.probe("unknown://example.org/fdroid/repo", TIMEOUT)
+                .blockingGet();
+        assertEquals(-1, result.statusCode);
+
+        // the first request is dropped without an answer, like on a flaky network
+        server.createContext("/flaky/index-v1.jar", exchange -> {
+            if (requests.put("/flaky", 1) == null) {
+                exchange.close();
+            } else {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        result = RepoAddressProber.probe(address + "/flaky", TIMEOUT).blockingGet();
+        assertEquals(-1, result.statusCode);
+        result = RepoAddressProber.probe(address + "/flaky", TIMEOUT).blockingGet();
+        assertEquals(200, result.statusCode);
+    }
+}
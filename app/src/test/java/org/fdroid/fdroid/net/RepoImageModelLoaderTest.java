@@ -0,0 +1,54 @@
+package org.fdroid.fdroid.net;
+
+import org.fdroid.fdroid.FDroidApp;
+import org.fdroid.fdroid.Preferences;
+import org.fdroid.fdroid.data.Repo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class RepoImageModelLoaderTest {
+
+    @Before
+    public void setUp() {
+        Preferences.setupForTests(ApplicationProvider.getApplicationContext());
+        FDroidApp.resetMirrorVars();
+    }
+
+    @After
+    public void tearDown() {
+        FDroidApp.resetMirrorVars();
+    }
+
+    @Test
+    public void testImagesFollowTheSharedMirror() {
+        Repo repo = new Repo();
+        repo.address = "https://f-droid.org/repo";
+        repo.mirrors = new String[]{
+                "https://f-droid.org/repo",
+                "https://mirror.example.com/fdroid/repo",
+        };
+        String iconUrl = repo.address + "/icons-640/org.example.png";
+
+        assertEquals("the canonical address is used without a previous mirror",
+                iconUrl, FDroidApp.switchUrlToLastWorkingMirror(iconUrl, repo));
+
+        String mirrorUrl = FDroidApp.switchUrlToNewMirror(repo.address + "/index-v1.jar", repo);
+        assertEquals("https://mirror.example.com/fdroid/repo/index-v1.jar", mirrorUrl);
+        assertEquals("https://mirror.example.com/fdroid/repo/icons-640/org.example.png",
+                FDroidApp.switchUrlToLastWorkingMirror(iconUrl, repo));
+
+        String nextUrl = FDroidApp.switchUrlToNewMirror(
+                FDroidApp.switchUrlToLastWorkingMirror(iconUrl, repo), repo);
+        assertNotEquals("failover replaces the mirror that was used", mirrorUrl, nextUrl);
+        assertEquals(iconUrl, nextUrl);
+    }
+}
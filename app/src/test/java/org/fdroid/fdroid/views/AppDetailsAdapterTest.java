@@ -1,6 +1,8 @@
 package org.fdroid.fdroid.views;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 
 import android.app.Application;
 import android.content.ContentValues;
@@ -15,6 +17,7 @@ import androidx.test.core.app.ApplicationProvider;
 import org.fdroid.fdroid.Assert;
 import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.R;
+import org.fdroid.fdroid.ScreenshotThumbnails;
 import org.fdroid.fdroid.data.Apk;
 import org.fdroid.fdroid.data.App;
 import org.fdroid.fdroid.data.AppProviderTest;
@@ -29,10 +32,13 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.Collections;
+
 @Config(application = Application.class)
 @RunWith(RobolectricTestRunner.class)
 public class AppDetailsAdapterTest extends FDroidProviderTest {
 
+    private Repo repo;
     private App app;
     private Context themeContext;
 
@@ -40,7 +46,7 @@ public class AppDetailsAdapterTest extends FDroidProviderTest {
     public void setup() {
         Preferences.setupForTests(context);
 
-        Repo repo = RepoProviderTest.insertRepo(context, "http://www.example.com/fdroid/repo", "", "", "Test Repo");
+        repo = RepoProviderTest.insertRepo(context, "http://www.example.com/fdroid/repo", "", "", "Test Repo");
         app = AppProviderTest.insertApp(contentResolver, context, "com.example.app", "Test App",
                 new ContentValues(), repo.getId());
 
@@ -57,7 +63,8 @@ public class AppDetailsAdapterTest extends FDroidProviderTest {
 
     @Test
     public void appWithNoVersionsOrScreenshots() {
-        AppDetailsRecyclerViewAdapter adapter = new AppDetailsRecyclerViewAdapter(context, app, dummyCallbacks);
+        AppDetailsRecyclerViewAdapter adapter = new AppDetailsRecyclerViewAdapter(context, app,
+                AppDetailsCache.findApks(context, app), dummyCallbacks);
         populateViewHolders(adapter);
 
         assertEquals(3, adapter.getItemCount());
@@ -67,20 +74,43 @@ public class AppDetailsAdapterTest extends FDroidProviderTest {
     public void appWithScreenshots() {
         app.phoneScreenshots = new String[]{"screenshot1.png", "screenshot2.png"};
 
-        AppDetailsRecyclerViewAdapter adapter = new AppDetailsRecyclerViewAdapter(context, app, dummyCallbacks);
+        AppDetailsRecyclerViewAdapter adapter = new AppDetailsRecyclerViewAdapter(context, app,
+                AppDetailsCache.findApks(context, app), dummyCallbacks);
         populateViewHolders(adapter);
 
         assertEquals(4, adapter.getItemCount());
 
     }
 
+    /**
+     * The repo says it has thumbnails, but if one is missing, the gallery has
+     * to show the full screenshot instead.
+     */
+    @Test
+    public void screenshotsFallBackToFullSizeWithoutThumbnails() {
+        app.phoneScreenshots = new String[]{"screenshot1.png", "screenshot2.png"};
+        String[] screenshots = app.getAllScreenshots(context);
+
+        ScreenShotsRecyclerViewAdapter adapter = new ScreenShotsRecyclerViewAdapter(context, app, null);
+        assertEquals(2, adapter.getItemCount());
+        assertNull(adapter.getFallbackUrl(0));
+
+        ScreenshotThumbnails.update(context, repo, Collections.singletonList(240));
+        adapter = new ScreenShotsRecyclerViewAdapter(context, app, null);
+        assertEquals(2, adapter.getItemCount());
+        assertEquals(screenshots[0], adapter.getFallbackUrl(0));
+        assertEquals(screenshots[1], adapter.getFallbackUrl(1));
+        assertNotEquals(screenshots[0], app.getAllScreenshotThumbnails(context)[0]);
+    }
+
     @Test
     public void appWithVersions() {
         Assert.insertApk(context, app, 1);
         Assert.insertApk(context, app, 2);
         Assert.insertApk(context, app, 3);
 
-        AppDetailsRecyclerViewAdapter adapter = new AppDetailsRecyclerViewAdapter(context, app, dummyCallbacks);
+        AppDetailsRecyclerViewAdapter adapter = new AppDetailsRecyclerViewAdapter(context, app,
+                AppDetailsCache.findApks(context, app), dummyCallbacks);
         populateViewHolders(adapter);
 
         // Starts collapsed, now showing versions at all.
@@ -0,0 +1,97 @@
+package org.fdroid.fdroid.views;
+
+import android.app.Application;
+
+import org.fdroid.fdroid.Assert;
+import org.fdroid.fdroid.Preferences;
+import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.data.AppProvider;
+import org.fdroid.fdroid.data.FDroidProviderTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@Config(application = Application.class)
+@RunWith(RobolectricTestRunner.class)
+public class AppDetailsCacheTest extends FDroidProviderTest {
+
+    private static final String PACKAGE_NAME = "org.example.app";
+    private static final int VERSIONS = 100;
+    private static final int RUNS = 20;
+
+    @Before
+    public void setup() {
+        Preferences.setupForTests(context);
+        App app = Assert.insertApp(context, PACKAGE_NAME, "Example");
+        for (int i = 1; i <= VERSIONS; i++) {
+            Assert.insertApk(context, app, i);
+        }
+        AppProvider.Helper.recalculatePreferredMetadata(context);
+    }
+
+    @After
+    public void teardown() {
+        AppDetailsCache.clear();
+    }
+
+    @Test
+    public void testCached() {
+        assertNull(AppDetailsCache.getIfCached(context, PACKAGE_NAME));
+
+        AppDetailsCache.Details details = AppDetailsCache.load(context, PACKAGE_NAME).blockingGet();
+        assertNotNull(details);
+        assertEquals("Example", details.app.name);
+        assertEquals(VERSIONS, details.apks.size());
+
+        assertSame(details, AppDetailsCache.getIfCached(context, PACKAGE_NAME));
+        assertSame(details, AppDetailsCache.load(context, PACKAGE_NAME).blockingGet());
+
+        assertNull(AppDetailsCache.load(context, "org.example.missing").blockingGet());
+    }
+
+    @Test
+    public void testInvalidatedOnChange() {
+        AppDetailsCache.load(context, PACKAGE_NAME).blockingGet();
+        assertNotNull(AppDetailsCache.getIfCached(context, PACKAGE_NAME));
+
+        Assert.insertApk(context, PACKAGE_NAME, VERSIONS + 1);
+        assertNull(AppDetailsCache.getIfCached(context, PACKAGE_NAME));
+        assertEquals(VERSIONS + 1, AppDetailsCache.load(context, PACKAGE_NAME).blockingGet().apks.size());
+
+        AppDetailsCache.remove(PACKAGE_NAME);
+        assertNull(AppDetailsCache.getIfCached(context, PACKAGE_NAME));
+    }
+
+    /**
+     * What {@link AppDetailsActivity} has to wait for before it can show an app
+     * with many versions, once loading it from the database and once after
+     * it was {@link AppDetailsCache#prefetch(android.content.Context, String) prefetched}.
+     */
+    @Test
+    public void benchmarkLoad() {
+        AppDetailsCache.load(context, PACKAGE_NAME).blockingGet(); // warm up
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            AppDetailsCache.clear();
+            AppDetailsCache.load(context, PACKAGE_NAME).blockingGet();
+        }
+        long loadNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            assertNotNull(AppDetailsCache.getIfCached(context, PACKAGE_NAME));
+        }
+        long cachedNanos = System.nanoTime() - start;
+
+        System.out.println("Loading an app with " + VERSIONS + " versions took " + loadNanos / RUNS / 1000
+                + "µs from the database, " + cachedNanos / RUNS / 1000 + "µs when prefetched");
+    }
+}
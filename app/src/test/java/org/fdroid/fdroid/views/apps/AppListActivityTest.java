@@ -0,0 +1,48 @@
+package org.fdroid.fdroid.views.apps;
+
+import org.fdroid.fdroid.data.AppProvider;
+import org.fdroid.fdroid.data.Schema.AppMetadataTable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppListActivityTest {
+
+    @Test
+    public void testIsRefinement() {
+        assertTrue(AppListActivity.isRefinement(null, "fire"));
+        assertTrue(AppListActivity.isRefinement("", "fire"));
+        assertTrue(AppListActivity.isRefinement("fir", "fire"));
+        assertTrue(AppListActivity.isRefinement("fire", "firefox"));
+        assertTrue(AppListActivity.isRefinement("fire", "fire fox"));
+        assertTrue(AppListActivity.isRefinement("fire fox", "firefox fox"));
+        assertTrue(AppListActivity.isRefinement("fire ", "fire"));
+
+        assertFalse(AppListActivity.isRefinement("fire", "fir"));
+        assertFalse(AppListActivity.isRefinement("fire", ""));
+        assertFalse(AppListActivity.isRefinement("fire", null));
+        assertFalse(AppListActivity.isRefinement("fire fox", "fire"));
+        assertFalse(AppListActivity.isRefinement("fire", "water"));
+    }
+
+    @Test
+    public void testNarrowedOnlyUntilContentChanges() {
+        AppSearchLoader loader = new AppSearchLoader(ApplicationProvider.getApplicationContext(),
+                AppProvider.getSearchUri("fire", null), AppMetadataTable.Cols.ALL, null, null, null, 10);
+        loader.narrowTo(new String[]{"org.example.fire", "org.example.firefox"});
+        assertTrue(loader.getSelection().contains("IN (?,?)"));
+        assertArrayEquals(new String[]{"org.example.fire", "org.example.firefox"}, loader.getSelectionArgs());
+
+        loader.onContentChanged();
+        assertNull(loader.getSelection());
+        assertNull(loader.getSelectionArgs());
+    }
+}
@@ -0,0 +1,85 @@
+package org.fdroid.fdroid.views.apps;
+
+import android.database.MatrixCursor;
+
+import org.fdroid.fdroid.data.Schema.AppMetadataTable.Cols;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppListCursorTest {
+
+    private static AppListCursor createCursor(String... packageNamesAndNames) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{Cols.Package.PACKAGE_NAME, Cols.NAME, Cols.DESCRIPTION});
+        for (int i = 0; i < packageNamesAndNames.length; i += 2) {
+            cursor.addRow(new Object[]{packageNamesAndNames[i], packageNamesAndNames[i + 1], "description " + i});
+        }
+        return new AppListCursor(cursor);
+    }
+
+    @Test
+    public void testSameContent() {
+        AppListCursor cursor = createCursor("org.example.a", "A", "org.example.b", "B");
+        assertFalse(cursor.hasSameContent(null));
+        assertTrue(cursor.hasSameContent(createCursor("org.example.a", "A", "org.example.b", "B")));
+        assertFalse(cursor.hasSameContent(createCursor("org.example.a", "A", "org.example.b", "Bee")));
+        assertFalse(cursor.hasSameContent(createCursor("org.example.b", "B", "org.example.a", "A")));
+        assertEquals(-1, cursor.getPosition());
+    }
+
+    @Test
+    public void testColumnsNotShownAreIgnored() {
+        MatrixCursor other = new MatrixCursor(new String[]{Cols.Package.PACKAGE_NAME, Cols.NAME, Cols.DESCRIPTION});
+        other.addRow(new Object[]{"org.example.a", "A", "changed"});
+        assertTrue(createCursor("org.example.a", "A").hasSameContent(new AppListCursor(other)));
+    }
+
+    @Test
+    public void testDiff() {
+        AppListCursor previous = createCursor("org.example.a", "A", "org.example.b", "B", "org.example.c", "C");
+        AppListCursor cursor = createCursor("org.example.a", "A", "org.example.c", "Cee", "org.example.d", "D");
+        assertNull(cursor.getDiff(previous));
+        cursor.calculateDiff(previous);
+        assertNull(cursor.getDiff(null));
+        assertNull("only for the cursor it was compared with", cursor.getDiff(createCursor("org.example.a", "A")));
+
+        final List<String> updates = new ArrayList<>();
+        cursor.getDiff(previous).dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                updates.add("inserted " + count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                updates.add("removed " + count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                updates.add("moved");
+            }
+
+            @Override
+            public void onChanged(int position, int count, @Nullable Object payload) {
+                updates.add("changed " + count);
+            }
+        });
+        assertEquals(3, updates.size());
+        assertTrue(updates.contains("inserted 1"));
+        assertTrue(updates.contains("changed 1"));
+        assertTrue(updates.contains("removed 1"));
+    }
+}
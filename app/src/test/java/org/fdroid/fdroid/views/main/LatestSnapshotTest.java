@@ -0,0 +1,89 @@
+package org.fdroid.fdroid.views.main;
+
+import android.app.Application;
+import android.content.ContentValues;
+import android.preference.PreferenceManager;
+
+import org.fdroid.fdroid.Preferences;
+import org.fdroid.fdroid.data.AppProviderTest;
+import org.fdroid.fdroid.data.DBHelper;
+import org.fdroid.fdroid.data.FDroidProviderTest;
+import org.fdroid.fdroid.data.Repo;
+import org.fdroid.fdroid.data.RepoProviderTest;
+import org.fdroid.fdroid.data.Schema.AppMetadataTable.Cols;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@Config(application = Application.class)
+@RunWith(RobolectricTestRunner.class)
+public class LatestSnapshotTest extends FDroidProviderTest {
+
+    private Repo repo;
+
+    @Before
+    public void setup() {
+        Preferences.setupForTests(context);
+        repo = RepoProviderTest.insertRepo(context, "http://www.example.com/fdroid/repo", "", "", "Test Repo");
+    }
+
+    @After
+    public void teardown() {
+        DBHelper.clearDbHelperSingleton();
+    }
+
+    private void insertApp(String packageName, long latestRank, String antiFeatures) {
+        ContentValues values = new ContentValues();
+        values.put(Cols.LATEST_RANK, latestRank);
+        values.put(Cols.ICON, packageName + ".png");
+        values.put(Cols.LAST_UPDATED, "2020-06-01");
+        values.put(Cols.ANTI_FEATURES, antiFeatures);
+        AppProviderTest.insertApp(contentResolver, context, packageName, "App " + latestRank, values, repo.getId());
+    }
+
+    @Test
+    public void testWriteAndRead() {
+        setShownAntiFeatures("Ads");
+        assertNull(LatestSnapshot.read(context));
+
+        for (int i = 0; i < LatestSnapshot.MAX_APPS + 5; i++) {
+            insertApp("com.example.app" + i, i, null);
+        }
+        insertApp("com.example.tracking", 1000, "Tracking");
+        LatestSnapshot.write(context);
+
+        List<LatestSnapshot.Entry> entries = LatestSnapshot.read(context);
+        assertNotNull(entries);
+        assertEquals(LatestSnapshot.MAX_APPS, entries.size());
+        int rank = LatestSnapshot.MAX_APPS + 4;
+        for (LatestSnapshot.Entry entry : entries) {
+            assertEquals("com.example.app" + rank, entry.app.packageName);
+            assertEquals("App " + rank, entry.app.name);
+            assertEquals(repo.getId(), entry.app.repoId);
+            assertNotNull(entry.app.lastUpdated);
+            assertTrue(entry.iconUrl, entry.iconUrl.endsWith("/com.example.app" + rank + ".png"));
+            rank--;
+        }
+
+        // the Tracking app would have to be shown first now
+        setShownAntiFeatures("Tracking");
+        assertNull(LatestSnapshot.read(context));
+    }
+
+    private void setShownAntiFeatures(String antiFeature) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putStringSet(Preferences.PREF_SHOW_ANTI_FEATURES, Collections.singleton(antiFeature))
+                .commit();
+    }
+}
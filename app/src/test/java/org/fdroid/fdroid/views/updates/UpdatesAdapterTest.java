@@ -0,0 +1,92 @@
+package org.fdroid.fdroid.views.updates;
+
+import org.fdroid.fdroid.data.App;
+import org.fdroid.fdroid.views.updates.items.AppUpdateData;
+import org.fdroid.fdroid.views.updates.items.KnownVulnApp;
+import org.fdroid.fdroid.views.updates.items.UpdateableApp;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class UpdatesAdapterTest {
+
+    private static App createApp(String packageName) {
+        App app = new App();
+        app.packageName = packageName;
+        app.name = packageName;
+        return app;
+    }
+
+    private static List<String> diff(List<AppUpdateData> oldItems, List<AppUpdateData> newItems) {
+        final List<String> updates = new ArrayList<>();
+        UpdatesAdapter.calculateDiff(oldItems, newItems).dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                updates.add("inserted " + position + " " + count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                updates.add("removed " + position + " " + count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                updates.add("moved");
+            }
+
+            @Override
+            public void onChanged(int position, int count, @Nullable Object payload) {
+                updates.add("changed " + position + " " + count);
+            }
+        });
+        return updates;
+    }
+
+    @Test
+    public void testUnchangedItemsAreKept() {
+        UpdateableApp a = new UpdateableApp(null, createApp("org.example.a"));
+        UpdateableApp b = new UpdateableApp(null, createApp("org.example.b"));
+        KnownVulnApp c = new KnownVulnApp(null, createApp("org.example.c"));
+
+        List<String> updates = diff(Arrays.<AppUpdateData>asList(a, c), Arrays.<AppUpdateData>asList(a, b, c));
+        assertEquals(1, updates.size());
+        assertEquals("inserted 1 1", updates.get(0));
+
+        assertTrue(diff(Arrays.<AppUpdateData>asList(a, b, c), Arrays.<AppUpdateData>asList(a, b, c)).isEmpty());
+    }
+
+    @Test
+    public void testReloadedItemsAreChanged() {
+        UpdateableApp a = new UpdateableApp(null, createApp("org.example.a"));
+        UpdateableApp b = new UpdateableApp(null, createApp("org.example.b"));
+        UpdateableApp reloadedB = new UpdateableApp(null, createApp("org.example.b"));
+
+        List<String> updates = diff(Arrays.<AppUpdateData>asList(a, b), Arrays.<AppUpdateData>asList(a, reloadedB));
+        assertEquals(1, updates.size());
+        assertEquals("changed 1 1", updates.get(0));
+    }
+
+    @Test
+    public void testSamePackageInDifferentSections() {
+        UpdateableApp updateable = new UpdateableApp(null, createApp("org.example.a"));
+        KnownVulnApp knownVuln = new KnownVulnApp(null, createApp("org.example.a"));
+
+        List<String> updates = diff(Arrays.<AppUpdateData>asList(updateable),
+                Arrays.<AppUpdateData>asList(knownVuln));
+        assertEquals(2, updates.size());
+        assertTrue(updates.contains("inserted 0 1"));
+        assertTrue(updates.get(0).startsWith("removed") || updates.get(1).startsWith("removed"));
+    }
+}
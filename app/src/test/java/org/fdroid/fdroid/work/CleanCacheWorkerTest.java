@@ -6,6 +6,7 @@ import org.fdroid.fdroid.BuildConfig;
 import org.fdroid.fdroid.Preferences;
 import org.fdroid.fdroid.nearby.LocalRepoManager;
 import org.fdroid.fdroid.shadows.ShadowLog;
+import org.fdroid.fdroid.views.main.LatestSnapshot;
 import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
@@ -15,6 +16,7 @@ import org.robolectric.RobolectricTestRunner;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 
 import androidx.test.core.app.ApplicationProvider;
 
@@ -69,6 +71,16 @@ public class CleanCacheWorkerTest {
         }
     }
 
+    @Test
+    public void testDeleteOldInstallerFilesKeepsLatestSnapshot() throws IOException {
+        File snapshot = LatestSnapshot.getFile(CONTEXT);
+        snapshot.getParentFile().mkdirs();
+        assertTrue(snapshot.createNewFile());
+        assertTrue(snapshot.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+        CleanCacheWorker.deleteOldInstallerFiles(CONTEXT);
+        assertTrue(snapshot.exists());
+    }
+
     /**
      * Pure smoke check, Robolectric does not support file times fully.
      */
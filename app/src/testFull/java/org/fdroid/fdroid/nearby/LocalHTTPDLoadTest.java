@@ -0,0 +1,121 @@
+package org.fdroid.fdroid.nearby;
+
+import android.content.Context;
+import android.net.Uri;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.net.util.SubnetUtils;
+import org.fdroid.fdroid.FDroidApp;
+import org.fdroid.fdroid.Preferences;
+import org.fdroid.fdroid.TestUtils;
+import org.fdroid.fdroid.Utils;
+import org.fdroid.fdroid.data.DBHelper;
+import org.fdroid.fdroid.data.RepoProvider;
+import org.fdroid.fdroid.net.Downloader;
+import org.fdroid.fdroid.net.DownloaderFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLog;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drive {@link LocalHTTPD} with many concurrent {@link Downloader}s, like a
+ * whole classroom swapping from a single device.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LocalHTTPDLoadTest {
+
+    private static final int CLIENTS = 24;
+    private static final int FILE_SIZE = 2 * 1024 * 1024;
+
+    private final int port = 38724;
+    private final String baseUrl = "http://127.0.0.1:" + port;
+
+    private Context context;
+    private LocalHTTPD localHttpd;
+    private File apk;
+
+    @Before
+    public void setUp() throws Exception {
+        ShadowLog.stream = System.out;
+        context = ApplicationProvider.getApplicationContext();
+        Preferences.setupForTests(context);
+        TestUtils.registerContentProvider(RepoProvider.getAuthority(), RepoProvider.class);
+        FDroidApp.subnetInfo = new SubnetUtils("127.0.0.0/8").getInfo();
+
+        assertFalse(Utils.isServerSocketInUse(port));
+        File webRoot = context.getFilesDir();
+        FileUtils.deleteDirectory(webRoot);
+        assertTrue(webRoot.mkdir());
+        byte[] data = new byte[FILE_SIZE];
+        new Random().nextBytes(data);
+        apk = new File(webRoot, "test.apk");
+        FileUtils.writeByteArrayToFile(apk, data);
+
+        localHttpd = new LocalHTTPD(context, "127.0.0.1", port, webRoot, false);
+        localHttpd.start();
+        do {
+            Thread.sleep(100);
+        } while (!Utils.isServerSocketInUse(port));
+    }
+
+    @After
+    public void tearDown() {
+        localHttpd.stop();
+        DBHelper.clearDbHelperSingleton();
+    }
+
+    @Test
+    public void testConcurrentDownloads() throws Exception {
+        final String sha256 = Utils.getFileHexDigest(apk, "sha256");
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<File>> futures = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < CLIENTS; i++) {
+            final File destFile = new File(context.getCacheDir(), "dl-" + i);
+            futures.add(executor.submit(new Callable<File>() {
+                @Override
+                public File call() throws Exception {
+                    Downloader downloader = DownloaderFactory.create(context,
+                            Uri.parse(baseUrl + "/test.apk"), destFile);
+                    downloader.setTimeout(Downloader.LONGEST_TIMEOUT);
+                    downloader.download();
+                    return destFile;
+                }
+            }));
+        }
+        for (Future<File> future : futures) {
+            File file = future.get(2, TimeUnit.MINUTES);
+            assertEquals(FILE_SIZE, file.length());
+            assertEquals(sha256, Utils.getFileHexDigest(file, "sha256"));
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        executor.shutdown();
+
+        LocalHTTPDStats stats = localHttpd.getStats();
+        System.out.println(CLIENTS + " clients downloaded " + stats.getBytesSent() + " bytes in "
+                + elapsed + "ms");
+        assertEquals((long) CLIENTS * FILE_SIZE, stats.getBytesSent());
+        // each download does a HEAD then a GET
+        assertEquals(Integer.valueOf(2 * CLIENTS), stats.getRequestCounts().get("/test.apk"));
+        assertEquals(0, stats.getWaitingConnections());
+    }
+}
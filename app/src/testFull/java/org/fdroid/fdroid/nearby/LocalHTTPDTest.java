@@ -55,6 +55,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
+import java.net.Socket;
 import java.net.URL;
 
 import androidx.test.core.app.ApplicationProvider;
@@ -415,6 +416,74 @@ public class LocalHTTPDTest {
         }
     }
 
+    @Test
+    public void testRangeHeaderWithSuffixLength() throws IOException {
+        HttpURLConnection connection = null;
+        try {
+            connection = getNoKeepAliveConnection(baseUrl + "/testdir/test.html");
+            connection.addRequestProperty("range", "bytes=-20");
+            String responseString = IOUtils.toString(connection.getInputStream(), "UTF-8");
+            Assert.assertThat("Only the last bytes of the file should be served", responseString,
+                    not(containsString("<head>")));
+            Assert.assertEquals("20", connection.getHeaderField("Content-Length"));
+            Assert.assertEquals("bytes 64-83/84", connection.getHeaderField("Content-Range"));
+            Assert.assertEquals(206, connection.getResponseCode());
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    @Test
+    public void testRangeHeaderWithEndPastFileLength() throws IOException {
+        HttpURLConnection connection = null;
+        try {
+            connection = getNoKeepAliveConnection(baseUrl + "/testdir/test.html");
+            connection.addRequestProperty("range", "bytes=80-1000");
+            String responseString = IOUtils.toString(connection.getInputStream(), "UTF-8");
+            Assert.assertEquals(4, responseString.length());
+            Assert.assertEquals("bytes 80-83/84", connection.getHeaderField("Content-Range"));
+            Assert.assertEquals(206, connection.getResponseCode());
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    @Test
+    public void testIfNoneMatchWithETag() throws IOException {
+        HttpURLConnection connection = null;
+        String etag;
+        try {
+            connection = getNoKeepAliveConnection(baseUrl + "/testdir/test.html");
+            assertEquals(200, connection.getResponseCode());
+            etag = connection.getHeaderField(HttpDownloader.HEADER_FIELD_ETAG);
+            assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        try {
+            connection = getNoKeepAliveConnection(baseUrl + "/testdir/test.html");
+            connection.setRequestProperty("if-none-match", "\"nomatch\", W/" + etag);
+            assertEquals(304, connection.getResponseCode());
+        } finally {
+            connection.disconnect();
+        }
+
+        try {
+            connection = getNoKeepAliveConnection(baseUrl + "/testdir/test.html");
+            connection.setRequestProperty("if-none-match", "\"nomatch\"");
+            assertEquals(200, connection.getResponseCode());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
     @Test
     public void testIfNoneMatchHeader() throws IOException {
         HttpURLConnection connection = null;
@@ -453,6 +522,26 @@ public class LocalHTTPDTest {
         }
     }
 
+    /**
+     * The connections are served by a few workers, so none may be held by
+     * a client that keeps it open.
+     */
+    @Test
+    public void testConnectionsAreNotKeptOpen() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/testdir/test.html").openConnection();
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("close", connection.getHeaderField("Connection"));
+        connection.disconnect();
+
+        Socket socket = new Socket("localhost", port);
+        try {
+            socket.setSoTimeout(LocalHTTPD.SOCKET_READ_TIMEOUT_MILLIS * 5);
+            assertEquals("idle connection closed by the server", -1, socket.getInputStream().read());
+        } finally {
+            socket.close();
+        }
+    }
+
     private HttpURLConnection getNoKeepAliveConnection(String urlString) throws IOException {
         URL url = new URL(urlString);
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
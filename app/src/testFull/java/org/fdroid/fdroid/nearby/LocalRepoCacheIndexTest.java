@@ -0,0 +1,43 @@
+package org.fdroid.fdroid.nearby;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class LocalRepoCacheIndexTest {
+
+    @Test
+    public void testHashesSurviveRestart() {
+        Context context = ApplicationProvider.getApplicationContext();
+        File file = new File(context.getCacheDir(), "swap-apps.bin");
+
+        LocalRepoCacheIndex index = new LocalRepoCacheIndex(file);
+        index.put("org.example.app_1_1000", "sha256", "abc");
+        index.put("org.example.old_1_1000", "sha256", "def");
+        index.flush();
+
+        index = new LocalRepoCacheIndex(file);
+        LocalRepoCacheIndex.Entry entry = index.get("org.example.app_1_1000");
+        assertNotNull(entry);
+        assertEquals("sha256", entry.hashType);
+        assertEquals("abc", entry.hash);
+
+        index.trim(key -> !key.startsWith("org.example.old_"));
+        index.flush();
+
+        index = new LocalRepoCacheIndex(file);
+        assertNotNull(index.get("org.example.app_1_1000"));
+        assertNull(index.get("org.example.old_1_1000"));
+    }
+}